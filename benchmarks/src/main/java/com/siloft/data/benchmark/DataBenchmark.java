@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data.benchmark;
+
+import com.siloft.data.UserData;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of constructing, loading, saving, and resetting user
+ * data. The data classes are generated per trial from the parameters, and
+ * their files are kept in a temporary directory deleted after the trial.
+ *
+ * @author Sander Veldhuis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataBenchmark {
+
+    /** The number of fields of the data class. */
+    @Param({ "10", "100", "1000" })
+    public int fieldCount;
+
+    /** The field type mix of the data class. */
+    @Param({ "int", "double", "string", "mixed" })
+    public String typeMix;
+
+    /** The length of the default value of <code>String</code> fields. */
+    @Param({ "16", "256" })
+    public int stringLength;
+
+    /** The number of unknown fields in the data file. */
+    @Param({ "0", "100" })
+    public int unknownFieldCount;
+
+    /** The temporary directory of the data files. */
+    private File directory;
+
+    /** The constructor of the generated data class. */
+    private Constructor<?> constructor;
+
+    /** The loaded data to benchmark. */
+    private UserData data;
+
+    /**
+     * Generate the data class and save its file with unknown fields in a
+     * temporary directory.
+     *
+     * @throws Exception
+     *             if the setup failed
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("siloft-data-benchmark")
+                .toFile();
+        constructor = DataClassGenerator
+                .generate(fieldCount, typeMix, stringLength).getConstructor();
+
+        data = newData();
+        data.setStorage(new DirectoryDataStorage(directory));
+        data.load();
+        for (int i = 0; i < unknownFieldCount; i++) {
+            data.setUnknownField("unknown" + i, "value" + i);
+        }
+        data.save();
+    }
+
+    /**
+     * Delete the temporary directory with the files of the data.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Benchmark constructing data, including field validation.
+     *
+     * @return the data
+     *
+     * @throws Exception
+     *             if constructing failed
+     */
+    @Benchmark
+    public UserData construct() throws Exception {
+        return newData();
+    }
+
+    /**
+     * Benchmark loading the data file.
+     *
+     * @return the data
+     *
+     * @throws IOException
+     *             if loading failed
+     */
+    @Benchmark
+    public UserData load() throws IOException {
+        data.load();
+        return data;
+    }
+
+    /**
+     * Benchmark saving the data file.
+     *
+     * @return the data
+     *
+     * @throws IOException
+     *             if saving failed
+     */
+    @Benchmark
+    public UserData save() throws IOException {
+        data.save();
+        return data;
+    }
+
+    /**
+     * Benchmark setting all fields to their default values.
+     *
+     * @return the data
+     */
+    @Benchmark
+    public UserData setDefaults() {
+        data.setDefaults();
+        return data;
+    }
+
+    /**
+     * Construct a new instance of the generated data class.
+     *
+     * @return the data
+     *
+     * @throws Exception
+     *             if constructing failed
+     */
+    private UserData newData() throws Exception {
+        return (UserData) constructor.newInstance();
+    }
+}
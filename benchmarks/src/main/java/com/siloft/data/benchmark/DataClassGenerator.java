@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * This class generates user data classes with a configurable number of fields
+ * and type mix, compiling them in memory. It requires a JDK at runtime.
+ *
+ * @author Sander Veldhuis
+ */
+final class DataClassGenerator {
+
+    /** The organisation name of all generated data. */
+    static final String ORGANISATION = "siloft";
+
+    /** The program name of all generated data. */
+    static final String PROGRAM = "siloft-data-benchmarks";
+
+    /** The field types used by the <code>mixed</code> type mix. */
+    private static final String[] MIXED_TYPES = { "byte", "short", "int",
+            "long", "float", "double", "boolean", "String" };
+
+    /** The counter making generated class names unique. */
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /**
+     * Prevents instantiation.
+     */
+    private DataClassGenerator() {
+    }
+
+    /**
+     * Generate and load a user data class.
+     *
+     * @param fieldCount
+     *            the number of fields
+     * @param typeMix
+     *            the type mix, one of <code>int</code>, <code>double</code>,
+     *            <code>string</code>, or <code>mixed</code>
+     * @param stringLength
+     *            the length of the default value of <code>String</code>
+     *            fields
+     *
+     * @return the generated class
+     *
+     * @exception IllegalStateException
+     *                if compiling the class failed
+     */
+    static Class<?> generate(int fieldCount, String typeMix,
+            int stringLength) {
+        String name = "GeneratedData" + COUNTER.incrementAndGet();
+        StringBuilder source = new StringBuilder();
+        source.append("public class ").append(name)
+                .append(" extends com.siloft.data.UserData {\n");
+        source.append("    public ").append(name).append("() {\n");
+        source.append("        super(\"").append(ORGANISATION).append("\", \"")
+                .append(PROGRAM).append("\");\n");
+        source.append("    }\n");
+        for (int i = 0; i < fieldCount; i++) {
+            String type = typeOf(typeMix, i);
+            source.append("    public ").append(type).append(" field")
+                    .append(i).append(" = ").append(valueOf(type, i, stringLength))
+                    .append(";\n");
+        }
+        source.append("}\n");
+
+        return compile(name, source.toString());
+    }
+
+    /**
+     * Returns the type of the field at the specified index.
+     *
+     * @param typeMix
+     *            the type mix
+     * @param index
+     *            the field index
+     *
+     * @return the type name
+     */
+    private static String typeOf(String typeMix, int index) {
+        switch (typeMix) {
+        case "int":
+            return "int";
+        case "double":
+            return "double";
+        case "string":
+            return "String";
+        case "mixed":
+            return MIXED_TYPES[index % MIXED_TYPES.length];
+        default:
+            throw new IllegalArgumentException("Unknown type mix: " + typeMix);
+        }
+    }
+
+    /**
+     * Returns the default value source of a field.
+     *
+     * @param type
+     *            the type name
+     * @param index
+     *            the field index
+     * @param stringLength
+     *            the length of <code>String</code> values
+     *
+     * @return the value source
+     */
+    private static String valueOf(String type, int index, int stringLength) {
+        switch (type) {
+        case "byte":
+            return "(byte) " + (index % 128);
+        case "short":
+            return "(short) " + index;
+        case "int":
+            return Integer.toString(index * 31);
+        case "long":
+            return (index * 1000003L) + "L";
+        case "float":
+            return (index + 0.25f) + "f";
+        case "double":
+            return (index / 7.0d) + "d";
+        case "boolean":
+            return Boolean.toString(index % 2 == 0);
+        default:
+            StringBuilder value = new StringBuilder("\"");
+            for (int i = 0; i < stringLength; i++) {
+                value.append((char) ('a' + (index + i) % 26));
+            }
+            return value.append('"').toString();
+        }
+    }
+
+    /**
+     * Compile and load a class from source in memory.
+     *
+     * @param name
+     *            the class name
+     * @param source
+     *            the class source
+     *
+     * @return the loaded class
+     *
+     * @exception IllegalStateException
+     *                if compiling the class failed
+     */
+    private static Class<?> compile(String name, String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("A JDK is required");
+        }
+
+        Map<String, ByteArrayOutputStream> classes =
+                new HashMap<String, ByteArrayOutputStream>();
+        StandardJavaFileManager standardManager =
+                compiler.getStandardFileManager(null, null, null);
+        JavaFileManager fileManager =
+                new ForwardingJavaFileManager<JavaFileManager>(
+                        standardManager) {
+                    @Override
+                    public JavaFileObject getJavaFileForOutput(
+                            Location location, String className,
+                            JavaFileObject.Kind kind, FileObject sibling) {
+                        ByteArrayOutputStream bytes =
+                                new ByteArrayOutputStream();
+                        classes.put(className, bytes);
+                        return new SimpleJavaFileObject(
+                                URI.create("mem:///" + className
+                                        + kind.extension),
+                                kind) {
+                            @Override
+                            public OutputStream openOutputStream() {
+                                return bytes;
+                            }
+                        };
+                    }
+                };
+
+        JavaFileObject unit = new SimpleJavaFileObject(
+                URI.create("string:///" + name + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreErrors) {
+                return source;
+            }
+        };
+
+        boolean compiled = compiler.getTask(null, fileManager, null,
+                Arrays.asList("-classpath",
+                        System.getProperty("java.class.path")
+                                + File.pathSeparator),
+                null, Collections.singletonList(unit)).call();
+        if (!compiled) {
+            throw new IllegalStateException("Compiling " + name + " failed");
+        }
+
+        ClassLoader loader =
+                new ClassLoader(DataClassGenerator.class.getClassLoader()) {
+                    @Override
+                    protected Class<?> findClass(String className)
+                            throws ClassNotFoundException {
+                        ByteArrayOutputStream bytes = classes.get(className);
+                        if (bytes == null) {
+                            throw new ClassNotFoundException(className);
+                        }
+                        byte[] code = bytes.toByteArray();
+                        return defineClass(className, code, 0, code.length);
+                    }
+                };
+        try {
+            return loader.loadClass(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
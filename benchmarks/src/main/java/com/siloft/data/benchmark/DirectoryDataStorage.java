@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data.benchmark;
+
+import com.siloft.data.DataStorage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * This class stores the files of data in a directory of choice instead of
+ * their own directory, delegating to the file system. Files are relocated by
+ * name, so the data files, backups, and lock files of a benchmark stay in a
+ * temporary directory.
+ *
+ * @author Sander Veldhuis
+ */
+final class DirectoryDataStorage implements DataStorage {
+
+    /** The directory holding the files. */
+    private final File directory;
+
+    /**
+     * Constructs a new storage in a directory.
+     *
+     * @param directory
+     *            the directory holding the files
+     */
+    DirectoryDataStorage(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public InputStream open(File file) throws IOException {
+        return FILE_SYSTEM.open(relocate(file));
+    }
+
+    @Override
+    public byte[] read(File file) throws IOException {
+        return FILE_SYSTEM.read(relocate(file));
+    }
+
+    @Override
+    public WritableByteChannel write(File file) throws IOException {
+        return FILE_SYSTEM.write(relocate(file));
+    }
+
+    @Override
+    public void rename(File source, File target) throws IOException {
+        FILE_SYSTEM.rename(relocate(source), relocate(target));
+    }
+
+    @Override
+    public void link(File source, File target) throws IOException {
+        FILE_SYSTEM.link(relocate(source), relocate(target));
+    }
+
+    @Override
+    public BasicFileAttributes stat(File file) throws IOException {
+        return FILE_SYSTEM.stat(relocate(file));
+    }
+
+    @Override
+    public Closeable lock(File file, boolean shared) throws IOException {
+        return FILE_SYSTEM.lock(relocate(file), shared);
+    }
+
+    /**
+     * Returns the file in the directory of this storage.
+     *
+     * @param file
+     *            the file
+     *
+     * @return the relocated file
+     */
+    private File relocate(File file) {
+        return new File(directory, file.getName());
+    }
+}
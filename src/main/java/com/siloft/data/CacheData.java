@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * This class represents a persistent cache of text values by key, bounded by
+ * a budget of entries and bytes. The cache uses the same file format and
+ * paths as <code>UserData</code> and <code>ProgramData</code>, with a file
+ * name chosen at runtime.
+ * <p>
+ * Once the budget is exceeded, the least recently used entries are evicted,
+ * so loading and saving cost stay bounded however long the cache is used.
+ * Entries may expire after a time to live; expired entries are never returned
+ * and are not saved. The expiry time is saved with each value, so it holds
+ * across restarts.
+ *
+ * @author Sander Veldhuis
+ */
+public final class CacheData extends Data {
+
+    /**
+     * Constructs a new cache data.
+     *
+     * @param path
+     *            the path of the data
+     * @param name
+     *            the file name of the data
+     * @param maxEntries
+     *            the maximum number of entries
+     * @param maxBytes
+     *            the maximum number of bytes of all entries as saved
+     *
+     * @exception IllegalArgumentException
+     *                if a maximum is not positive
+     */
+    private CacheData(String path, String name, int maxEntries,
+            long maxBytes) {
+        super(path, name, new CacheStore(maxEntries, maxBytes));
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Budget should be positive");
+        }
+    }
+
+    /**
+     * Returns a new cache data in the user data section of the current
+     * system.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     * @param name
+     *            the file name of the data
+     * @param maxEntries
+     *            the maximum number of entries
+     * @param maxBytes
+     *            the maximum number of bytes of all entries as saved, lines
+     *            in UTF-8 including their expiry times
+     *
+     * @return the cache data
+     *
+     * @exception IllegalArgumentException
+     *                if a maximum is not positive
+     */
+    public static CacheData user(String organisation, String program,
+            String name, int maxEntries, long maxBytes) {
+        return new CacheData(UserData.pathOf(organisation, program), name,
+                maxEntries, maxBytes);
+    }
+
+    /**
+     * Returns a new cache data in the program data section of the current
+     * system.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     * @param name
+     *            the file name of the data
+     * @param maxEntries
+     *            the maximum number of entries
+     * @param maxBytes
+     *            the maximum number of bytes of all entries as saved, lines
+     *            in UTF-8 including their expiry times
+     *
+     * @return the cache data
+     *
+     * @exception IllegalArgumentException
+     *                if a maximum is not positive
+     */
+    public static CacheData program(String organisation, String program,
+            String name, int maxEntries, long maxBytes) {
+        return new CacheData(ProgramData.pathOf(organisation, program), name,
+                maxEntries, maxBytes);
+    }
+
+    /**
+     * Loads the cache from the related file, dropping expired entries and
+     * evicting entries beyond the budget.
+     *
+     * @throws IOException
+     *             if loading the data failed
+     */
+    @Override
+    public void load() throws IOException {
+        super.load();
+        store().purge(System.currentTimeMillis());
+    }
+
+    /**
+     * Saves the live entries of the cache to the related file.
+     *
+     * @throws IOException
+     *             if saving the data failed
+     */
+    @Override
+    public void save() throws IOException {
+        store().purge(System.currentTimeMillis());
+        super.save();
+    }
+
+    /**
+     * Returns the value of an entry and marks it as recently used.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the value, or <code>null</code> if absent or expired
+     */
+    public String get(String key) {
+        long now = System.currentTimeMillis();
+        String value = CacheStore.decode(store().use(key), now);
+        if (value == null) {
+            store().remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * Put an entry which does not expire.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    public void put(String key, String value) {
+        store().putUsed(key, CacheStore.encode(value, 0));
+    }
+
+    /**
+     * Put an entry which expires after a time to live.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @param timeToLive
+     *            the time to live in milliseconds
+     */
+    public void put(String key, String value, long timeToLive) {
+        long expiry = System.currentTimeMillis() + Math.max(timeToLive, 1);
+        store().putUsed(key, CacheStore.encode(value, expiry));
+    }
+
+    /**
+     * Remove an entry.
+     *
+     * @param key
+     *            the key
+     *
+     * @return <code>true</code> if it was present and live, or
+     *         <code>false</code> otherwise
+     */
+    public boolean remove(String key) {
+        String saved = store().remove(key);
+        return CacheStore.decode(saved, System.currentTimeMillis()) != null;
+    }
+
+    /**
+     * Returns the keys of all entries, from the least to the most recently
+     * used, including entries which expired but were not removed yet.
+     *
+     * @return the keys
+     */
+    public Set<String> keys() {
+        return store().keySet();
+    }
+
+    /**
+     * Returns the number of entries, including entries which expired but were
+     * not removed yet.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return store().size();
+    }
+
+    /**
+     * Returns the number of bytes of all entries as saved.
+     *
+     * @return the number of bytes
+     */
+    public long bytes() {
+        return store().bytes();
+    }
+
+    /**
+     * Returns the store holding the entries of this data. The store is the
+     * unknown data map, as this class declares no fields.
+     *
+     * @return the store
+     */
+    private CacheStore store() {
+        return (CacheStore) getUnknownFields();
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class represents a bounded map of cache entries, evicting the least
+ * recently used entries once it exceeds its budget of entries or bytes. Each
+ * value is kept as saved: the expiry time in milliseconds since the epoch, or
+ * <code>0</code> if it does not expire, a <code>|</code>, and the value.
+ * <p>
+ * Iteration runs from the least to the most recently used entry, so saving
+ * and loading again retains the order of use. Only {@link #use(String)} and
+ * {@link #putUsed(String, String)} mark an entry used: the map operations
+ * used while loading, merging, and notifying listeners keep the order, and
+ * putting a new entry adds it as most recently used.
+ *
+ * @author Sander Veldhuis
+ */
+final class CacheStore extends AbstractMap<String, String> {
+
+    /** The separator between the expiry time and the value. */
+    static final char SEPARATOR = '|';
+
+    /** The entries in order of use. */
+    private final LinkedHashMap<String, String> entries =
+            new LinkedHashMap<String, String>();
+
+    /** The maximum number of entries. */
+    private final int maxEntries;
+
+    /** The maximum number of bytes of all entries. */
+    private final long maxBytes;
+
+    /** The number of bytes of all entries. */
+    private long bytes;
+
+    /** The entry set view, or <code>null</code> if not created yet. */
+    private Set<Map.Entry<String, String>> entrySet;
+
+    /**
+     * Constructs a new cache store.
+     *
+     * @param maxEntries
+     *            the maximum number of entries
+     * @param maxBytes
+     *            the maximum number of bytes of all entries, as lines saved
+     *            in UTF-8
+     */
+    CacheStore(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public String get(Object key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+
+        String previous = entries.put(key, value);
+        bytes += sizeOf(key, value) - sizeOf(key, previous);
+        evict();
+        return previous;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!entries.containsKey(key)) {
+            return null;
+        }
+        String previous = entries.remove(key);
+        bytes -= sizeOf((String) key, previous);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Returns the value of an entry as saved, and marks it as most recently
+     * used.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the value as saved, or <code>null</code> if absent
+     */
+    String use(String key) {
+        String value = entries.remove(key);
+        if (value != null) {
+            entries.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Put an entry as most recently used, evicting the least recently used
+     * entries beyond the budget.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value as saved
+     *
+     * @return the previous value as saved, or <code>null</code> if absent
+     */
+    String putUsed(String key, String value) {
+        String previous = entries.remove(key);
+        entries.put(key, value);
+        bytes += sizeOf(key, value) - sizeOf(key, previous);
+        evict();
+        return previous;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+
+                @Override
+                public void clear() {
+                    CacheStore.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Remove the least recently used entries while beyond the budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, String>> eldest =
+                entries.entrySet().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            Map.Entry<String, String> entry = eldest.next();
+            bytes -= sizeOf(entry.getKey(), entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of all entries.
+     *
+     * @return the number of bytes
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Remove all entries which expired.
+     *
+     * @param now
+     *            the current time in milliseconds since the epoch
+     *
+     * @return the number of removed entries
+     */
+    int purge(long now) {
+        int removed = 0;
+        Iterator<Map.Entry<String, String>> iterator =
+                entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (isExpired(entry.getValue(), now)) {
+                bytes -= sizeOf(entry.getKey(), entry.getValue());
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the value of an entry as saved.
+     *
+     * @param value
+     *            the value
+     * @param expiry
+     *            the expiry time in milliseconds since the epoch, or
+     *            <code>0</code> if it does not expire
+     *
+     * @return the value as saved
+     */
+    static String encode(String value, long expiry) {
+        return expiry + String.valueOf(SEPARATOR) + value;
+    }
+
+    /**
+     * Returns the value of an entry, unless it expired.
+     *
+     * @param saved
+     *            the value as saved, or <code>null</code>
+     * @param now
+     *            the current time in milliseconds since the epoch
+     *
+     * @return the value, or <code>null</code> if absent, expired, or not
+     *         valid
+     */
+    static String decode(String saved, long now) {
+        if (saved == null || isExpired(saved, now)) {
+            return null;
+        }
+        return saved.substring(saved.indexOf(SEPARATOR) + 1);
+    }
+
+    /**
+     * Indicates whether an entry expired, or is not valid.
+     *
+     * @param saved
+     *            the value as saved
+     * @param now
+     *            the current time in milliseconds since the epoch
+     *
+     * @return <code>true</code> if expired or not valid, or
+     *         <code>false</code> otherwise
+     */
+    private static boolean isExpired(String saved, long now) {
+        int separator = saved.indexOf(SEPARATOR);
+        if (separator <= 0) {
+            return true;
+        }
+        try {
+            long expiry = Long.parseLong(saved.substring(0, separator));
+            return expiry != 0 && expiry <= now;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the line of an entry as saved in UTF-8,
+     * including the separator and the line end.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value, or <code>null</code> if absent
+     *
+     * @return the number of bytes
+     */
+    private static long sizeOf(String key, String value) {
+        if (value == null) {
+            return 0;
+        }
+        return utf8Length(key) + 1 + utf8Length(value) + 1;
+    }
+
+    /**
+     * Returns the length of text in UTF-8.
+     *
+     * @param text
+     *            the text
+     *
+     * @return the length in bytes
+     */
+    private static long utf8Length(String text) {
+        long length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * This class represents an iterator over the entries, keeping the number
+     * of bytes when entries are removed or changed through it.
+     */
+    private final class EntryIterator
+            implements Iterator<Map.Entry<String, String>> {
+
+        /** The iterator of the entries. */
+        private final Iterator<Map.Entry<String, String>> iterator =
+                entries.entrySet().iterator();
+
+        /** The last returned entry, or <code>null</code>. */
+        private Map.Entry<String, String> last;
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            last = iterator.next();
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            bytes -= sizeOf(last.getKey(), last.getValue());
+            iterator.remove();
+            last = null;
+        }
+    }
+
+    /**
+     * This class represents an entry, keeping the number of bytes when its
+     * value is changed.
+     */
+    private final class Entry implements Map.Entry<String, String> {
+
+        /** The entry of the entries. */
+        private final Map.Entry<String, String> entry;
+
+        /**
+         * Constructs a new entry.
+         *
+         * @param entry
+         *            the entry of the entries
+         */
+        Entry(Map.Entry<String, String> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public String getValue() {
+            return entry.getValue();
+        }
+
+        @Override
+        public String setValue(String value) {
+            bytes += sizeOf(entry.getKey(), value)
+                    - sizeOf(entry.getKey(), entry.getValue());
+            return entry.setValue(value);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            return entry.equals(object);
+        }
+
+        @Override
+        public int hashCode() {
+            return entry.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return entry.toString();
+        }
+    }
+}
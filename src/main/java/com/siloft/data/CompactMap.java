@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * This class represents a compact map of <code>String</code> keys to
+ * <code>String</code> values. Keys and values are kept in parallel arrays in
+ * insertion order, and are found through an open-addressing index of
+ * <code>int</code> slots. Unlike a <code>HashMap</code>, no object is
+ * allocated per entry.
+ * <p>
+ * Keys must not be <code>null</code>; values may be.
+ *
+ * @author Sander Veldhuis
+ */
+final class CompactMap extends AbstractMap<String, String> {
+
+    /** The initial number of slots. */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** The keys by slot, or <code>null</code> if removed. */
+    private String[] keys;
+
+    /** The values by slot. */
+    private String[] values;
+
+    /** The index of slot numbers plus one by key hash, or zero if empty. */
+    private int[] index;
+
+    /** The number of used slots, including removed slots. */
+    private int count;
+
+    /** The number of present keys. */
+    private int size;
+
+    /** The number of structural modifications. */
+    private int modifications;
+
+    /** The entry set view, or <code>null</code> if not created yet. */
+    private Set<Map.Entry<String, String>> entrySet;
+
+    /**
+     * Constructs a new empty compact map.
+     */
+    CompactMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new compact map holding the entries of a map.
+     *
+     * @param map
+     *            the map
+     */
+    CompactMap(Map<String, String> map) {
+        this(Math.max(INITIAL_CAPACITY, map.size()));
+        map.forEach(this::put);
+    }
+
+    /**
+     * Constructs a new empty compact map.
+     *
+     * @param capacity
+     *            the initial number of slots
+     */
+    private CompactMap(int capacity) {
+        keys = new String[capacity];
+        values = new String[capacity];
+        index = new int[indexCapacity(capacity)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && slotOf((String) key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = slotOf((String) key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    @Override
+    public String put(String key, String value) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            String previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+
+        if (count == keys.length) {
+            if (count - size >= count / 2) {
+                compact();
+            } else {
+                resize(keys.length * 2);
+            }
+        }
+        slot = count++;
+        keys[slot] = key;
+        values[slot] = value;
+        insert(key, slot);
+        size++;
+        modifications++;
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int position = positionOf((String) key);
+        if (position < 0) {
+            return null;
+        }
+        int slot = index[position] - 1;
+        String previous = values[slot];
+        removeSlot(slot, position);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, count, null);
+        Arrays.fill(values, 0, count, null);
+        Arrays.fill(index, 0);
+        count = 0;
+        size = 0;
+        modifications++;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        int expected = modifications;
+        for (int slot = 0; slot < count; slot++) {
+            if (keys[slot] != null) {
+                action.accept(keys[slot], values[slot]);
+            }
+        }
+        if (modifications != expected) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void clear() {
+                    CompactMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Returns the slot of a key.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the slot, or -1 if the key is absent
+     */
+    private int slotOf(String key) {
+        int position = positionOf(key);
+        return position < 0 ? -1 : index[position] - 1;
+    }
+
+    /**
+     * Returns the index position of a key.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the index position, or -1 if the key is absent
+     */
+    private int positionOf(String key) {
+        int mask = index.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            int entry = index[i];
+            if (entry == 0) {
+                return -1;
+            }
+            String candidate = keys[entry - 1];
+            if (candidate == key || candidate.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Add a slot to the index.
+     *
+     * @param key
+     *            the key of the slot
+     * @param slot
+     *            the slot
+     */
+    private void insert(String key, int slot) {
+        int mask = index.length - 1;
+        int i = hash(key) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+    }
+
+    /**
+     * Remove a slot, shifting back the index entries following it so that
+     * no tombstones remain in the index.
+     *
+     * @param slot
+     *            the slot
+     * @param position
+     *            the index position of the slot
+     */
+    private void removeSlot(int slot, int position) {
+        int mask = index.length - 1;
+        int hole = position;
+        for (int i = (hole + 1) & mask; index[i] != 0; i = (i + 1) & mask) {
+            int home = hash(keys[index[i] - 1]) & mask;
+            boolean reachable = hole <= i ? hole < home && home <= i
+                    : hole < home || home <= i;
+            if (!reachable) {
+                index[hole] = index[i];
+                hole = i;
+            }
+        }
+        index[hole] = 0;
+
+        keys[slot] = null;
+        values[slot] = null;
+        size--;
+        modifications++;
+    }
+
+    /**
+     * Drop all removed slots, keeping the order of the present keys.
+     */
+    private void compact() {
+        int target = 0;
+        for (int slot = 0; slot < count; slot++) {
+            if (keys[slot] != null) {
+                keys[target] = keys[slot];
+                values[target] = values[slot];
+                target++;
+            }
+        }
+        Arrays.fill(keys, target, count, null);
+        Arrays.fill(values, target, count, null);
+        count = target;
+        reindex();
+    }
+
+    /**
+     * Resize the slot arrays and the index.
+     *
+     * @param capacity
+     *            the new number of slots
+     */
+    private void resize(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        index = new int[indexCapacity(capacity)];
+        reindex();
+    }
+
+    /**
+     * Rebuild the index from the used slots.
+     */
+    private void reindex() {
+        Arrays.fill(index, 0);
+        for (int slot = 0; slot < count; slot++) {
+            if (keys[slot] != null) {
+                insert(keys[slot], slot);
+            }
+        }
+    }
+
+    /**
+     * Returns the index capacity for a number of slots, keeping the index at
+     * most half full.
+     *
+     * @param capacity
+     *            the number of slots
+     *
+     * @return the index capacity, a power of two
+     */
+    private static int indexCapacity(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    /**
+     * Returns the spread hash of a key.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the hash
+     */
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * This class represents an entry writing its value through to the map.
+     *
+     * @author Sander Veldhuis
+     */
+    private final class Entry extends AbstractMap.SimpleEntry<String, String> {
+
+        /** The serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The slot of the entry. */
+        private final int slot;
+
+        /**
+         * Constructs a new entry.
+         *
+         * @param slot
+         *            the slot of the entry
+         */
+        Entry(int slot) {
+            super(keys[slot], values[slot]);
+            this.slot = slot;
+        }
+
+        @Override
+        public String setValue(String value) {
+            if (keys[slot] == getKey()) {
+                values[slot] = value;
+            }
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * This class represents an iterator over the present entries in slot
+     * order.
+     *
+     * @author Sander Veldhuis
+     */
+    private final class EntryIterator
+            implements Iterator<Map.Entry<String, String>> {
+
+        /** The next slot to inspect. */
+        private int next;
+
+        /** The slot last returned, or -1. */
+        private int last = -1;
+
+        /** The expected number of structural modifications. */
+        private int expected = modifications;
+
+        @Override
+        public boolean hasNext() {
+            while (next < count && keys[next] == null) {
+                next++;
+            }
+            return next < count;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (modifications != expected) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0 || keys[last] == null) {
+                throw new IllegalStateException();
+            }
+            if (modifications != expected) {
+                throw new ConcurrentModificationException();
+            }
+            removeSlot(last, positionOf(keys[last]));
+            expected = modifications;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+/**
+ * This enumeration represents the policies for saving data when the file was
+ * saved by another instance or process since it was loaded.
+ *
+ * @author Sander Veldhuis
+ */
+public enum ConflictPolicy {
+
+    /** Overwrite the file, discarding the changes saved in between. */
+    OVERWRITE,
+
+    /** Fail with a {@link DataConflictException}. */
+    FAIL,
+
+    /**
+     * Merge field by field against the values when loaded. Fields and unknown
+     * fields changed in this data are saved; all others take the value saved
+     * in between. When both changed a field, this data takes precedence.
+     */
+    MERGE
+}
@@ -22,18 +22,27 @@
 
 package com.siloft.data;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
 
 /**
  * This class represents data for loading and saving data in the current system.
@@ -53,6 +62,17 @@ import java.util.Map;
  * <p>
  * To define fields in the data use the following parameter definition:
  * <code>public [TYPE] [NAME];</code>
+ * <p>
+ * Every saved file ends with a CRC-32 checksum trailer, and the previously
+ * saved file is retained as a backup. When the checksum of a file does not
+ * match on load, the backup is loaded instead. Files without headers, as
+ * saved by earlier versions, are loaded without verification; a file with
+ * headers but without trailer was cut off and is treated as corrupt.
+ * <p>
+ * Loading holds a shared lock and saving an exclusive lock on the file, also
+ * between processes. Every save increments the generation stamped in the
+ * file, which allows detecting files saved concurrently by another instance
+ * or process according to the {@link ConflictPolicy}.
  *
  * @author Sander Veldhuis
  */
@@ -82,8 +102,26 @@ class Data {
     /** The name of the <code>String</code> type. */
     private static final String STRING_TYPE = "java.lang.String";
 
-    /** The default data key-value pairs. */
-    private final Map<String, Object> defaultData;
+    /** The prefix of the generation header line. */
+    static final String GENERATION_PREFIX = "#generation:";
+
+    /** The prefix of the checksum trailer line. */
+    private static final String CHECKSUM_PREFIX = "#crc32:";
+
+    /** The prefix of the schema fingerprint header line. */
+    private static final String SCHEMA_PREFIX = "#schema:";
+
+    /** The file name suffix of the last saved generation. */
+    static final String BACKUP_SUFFIX = ".bak";
+
+    /** The file name suffix of a file being saved. */
+    static final String TEMP_SUFFIX = ".tmp";
+
+    /** The character set used for the checksum trailer. */
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /** The default values, shared with other instances when equal. */
+    private DataSchema.Values defaults;
 
     /** The unknown data key-value pairs. */
     private final Map<String, String> unknownData;
@@ -91,9 +129,64 @@ class Data {
     /** The file for the data. */
     private final File file;
 
+    /** The schema of the data class. */
+    private final DataSchema schema;
+
+    /** Indicates whether large files are parsed in parallel chunks. */
+    private boolean isParallelLoad;
+
+    /** Indicates whether short values are shared through the string pool. */
+    private boolean isValuePooling;
+
     /** Indicates whether the data is loaded. */
     private boolean isLoaded;
 
+    /** Indicates whether the data is only read, never saved or locked. */
+    private boolean isReadOnly;
+
+    /** The unmodifiable unknown data once frozen, or <code>null</code>. */
+    private Map<String, String> frozenUnknownData;
+
+    /** The storage of the file. */
+    private DataStorage storage = DataStorage.FILE_SYSTEM;
+
+    /** The feed receiving the saved changes, or <code>null</code>. */
+    private DataFeed feed;
+
+    /** The metrics receiving load and save measurements. */
+    private DataMetrics metrics = DataMetrics.NONE;
+
+    /** The policy for files saved since they were loaded. */
+    private ConflictPolicy conflictPolicy = ConflictPolicy.OVERWRITE;
+
+    /** The generation of the file when last loaded or saved, or -1. */
+    private long generation = -1;
+
+    /** The problems found while loading the data. */
+    private DataDiagnostics diagnostics = DataDiagnostics.NONE;
+
+    /** The field values when last loaded or saved, used for merging. */
+    private String[] baseValues;
+
+    /** The unknown data when last loaded or saved, used for merging. */
+    private Map<String, String> baseUnknownData;
+
+    /** The listeners receiving changes of this data. */
+    private final List<DataListener> listeners =
+            new CopyOnWriteArrayList<DataListener>();
+
+    /** The primitive field values before a change, as raw bits. */
+    private long[] snapshotBits;
+
+    /** The <code>String</code> field values before a change. */
+    private Object[] snapshotReferences;
+
+    /** Indicates whether changes are tracked for the listeners. */
+    private boolean isTracking;
+
+    /** The unknown fields changed while tracking. */
+    private Set<String> changedUnknownFields = Collections.emptySet();
+
     /**
      * Constructs a new data.
      *
@@ -104,10 +197,31 @@ class Data {
      *                if any of the fields is not valid
      */
     protected Data(String path) {
-        defaultData = new HashMap<String, Object>();
-        unknownData = new HashMap<String, String>();
-        file = new File(path, this.getClass().getSimpleName());
+        this(path, null, null);
+    }
+
+    /**
+     * Constructs a new data stored under the specified name.
+     *
+     * @param path
+     *            the path of the data
+     * @param name
+     *            the file name of the data, or <code>null</code> to use the
+     *            simple class name
+     * @param unknownData
+     *            the map holding the unknown data, or <code>null</code> to
+     *            use a compact map on the heap
+     *
+     * @exception IllegalArgumentException
+     *                if any of the fields is not valid
+     */
+    Data(String path, String name, Map<String, String> unknownData) {
+        this.unknownData =
+                unknownData == null ? new CompactMap() : unknownData;
+        file = new File(path,
+                name == null ? this.getClass().getSimpleName() : name);
         validateFields();
+        schema = DataSchema.of(getClass());
     }
 
     /**
@@ -115,58 +229,71 @@ class Data {
      *
      * @throws IOException
      *             if loading the data failed
+     * @exception IllegalStateException
+     *                if the data is frozen
      */
     public void load() throws IOException {
+        checkNotFrozen();
+        long start = System.nanoTime();
+        Object event = DataEvents.beginLoad();
+        boolean reload = isLoaded;
         storeDefaults();
 
-        if (!file.isFile()) {
-            save();
-        }
-
-        FileInputStream inputStream = new FileInputStream(file);
-        InputStreamReader inputReader =
-                new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-        BufferedReader bufferedReader = new BufferedReader(inputReader);
-
-        String line;
-        while ((line = bufferedReader.readLine()) != null) {
-            String[] option = line.split("=", 2);
-            if (option.length < 2) {
-                continue;
+        ByteBuffer buffer;
+        try {
+            if (!isReadOnly && !storage.exists(file)) {
+                save();
             }
+            buffer = read();
+        } catch (IOException e) {
+            metrics.loadFailed(getClass(), System.nanoTime() - start);
+            throw e;
+        }
+        boolean tracked = snapshot();
+        byte[] content = buffer.array();
+        int length = buffer.limit();
 
-            try {
-                Field field = getClass().getDeclaredField(option[0]);
-                String typeName = field.getGenericType().getTypeName();
-                if (typeName.equals(BYTE_TYPE)) {
-                    field.setByte(this, Byte.parseByte(option[1]));
-                } else if (typeName.equals(SHORT_TYPE)) {
-                    field.setShort(this, Short.parseShort(option[1]));
-                } else if (typeName.equals(INT_TYPE)) {
-                    field.setInt(this, Integer.parseInt(option[1]));
-                } else if (typeName.equals(LONG_TYPE)) {
-                    field.setLong(this, Long.parseLong(option[1]));
-                } else if (typeName.equals(FLOAT_TYPE)) {
-                    field.setFloat(this, Float.parseFloat(option[1]));
-                } else if (typeName.equals(DOUBLE_TYPE)) {
-                    field.setDouble(this, Double.parseDouble(option[1]));
-                } else if (typeName.equals(BOOLEAN_TYPE)) {
-                    field.setBoolean(this, Boolean.parseBoolean(option[1]));
-                } else {
-                    field.set(this, option[1].replace("\\n", "\n"));
-                }
-            } catch (NoSuchFieldException e) {
-                unknownData.put(option[0], option[1]);
-            } catch (Exception e) {
-                // Ignore
+        int fields = 0;
+        int unknownFields = 0;
+        int parseFailures = 0;
+        boolean positional = hasSchema(content, length, schema);
+        List<DataEntries> parsed = DataEntries.parse(content, length, schema,
+                isParallelLoad, isValuePooling, positional);
+        for (DataEntries entries : parsed) {
+            entries.apply(this, schema, true);
+            fields += entries.fields();
+            unknownFields += entries.unknownFields();
+        }
+        List<DataDiagnostics.Problem> problems = DataEntries.problems(parsed,
+                content);
+        for (DataDiagnostics.Problem problem : problems) {
+            if (problem.getKind() != DataDiagnostics.Kind.DUPLICATE_KEY) {
+                DataEvents.parseError(getClass(), file, problem.getLine());
+                parseFailures++;
             }
         }
+        diagnostics = problems.isEmpty() ? DataDiagnostics.NONE
+                : new DataDiagnostics(problems);
+        removeUnlisted(parsed, unknownFields - unknownDuplicates(problems));
 
-        bufferedReader.close();
-        inputReader.close();
-        inputStream.close();
+        loaded(generationOf(content, length));
+        if (isReadOnly) {
+            frozenUnknownData = Collections.unmodifiableMap(unknownData);
+        }
+        if (tracked) {
+            fireChanges();
+        }
 
-        isLoaded = true;
+        DataEvents.commitLoad(event, getClass(), file, content.length, fields,
+                unknownFields, parseFailures);
+        long nanos = System.nanoTime() - start;
+        if (reload) {
+            metrics.reloaded(getClass(), nanos, content.length, fields,
+                    unknownFields, parseFailures);
+        } else {
+            metrics.loaded(getClass(), nanos, content.length, fields,
+                    unknownFields, parseFailures);
+        }
     }
 
     /**
@@ -174,96 +301,35 @@ class Data {
      *
      * @throws IOException
      *             if saving the data failed
+     * @exception IllegalStateException
+     *                if the data is read-only
      */
     public void save() throws IOException {
-        storeDefaults();
-
-        file.getParentFile().mkdirs();
-
-        FileWriter fileWriter = new FileWriter(file);
-        BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-
-        for (Field field : getClass().getDeclaredFields()) {
-            if (field.isSynthetic()) {
-                continue;
-            }
-
-            try {
-                String name = field.getName();
-                String typeName = field.getGenericType().getTypeName();
-
-                if (typeName.equals(BYTE_TYPE)) {
-                    bufferedWriter.write(name + "=" + field.getByte(this));
-                } else if (typeName.equals(SHORT_TYPE)) {
-                    bufferedWriter.write(name + "=" + field.getShort(this));
-                } else if (typeName.equals(INT_TYPE)) {
-                    bufferedWriter.write(name + "=" + field.getInt(this));
-                } else if (typeName.equals(LONG_TYPE)) {
-                    bufferedWriter.write(name + "=" + field.getLong(this));
-                } else if (typeName.equals(FLOAT_TYPE)) {
-                    bufferedWriter.write(name + "=" + field.getFloat(this));
-                } else if (typeName.equals(DOUBLE_TYPE)) {
-                    bufferedWriter.write(name + "=" + field.getDouble(this));
-                } else if (typeName.equals(BOOLEAN_TYPE)) {
-                    bufferedWriter.write(name + "=" + field.getBoolean(this));
-                } else {
-                    bufferedWriter.write(name + "=" + field.get(this));
-                }
-                bufferedWriter.newLine();
-            } catch (Exception e) {
-                // Should not happen
-            }
+        if (isReadOnly) {
+            throw new IllegalStateException("Data is read-only");
         }
+        long start = System.nanoTime();
+        Object event = DataEvents.beginSave();
 
-        unknownData.forEach((name, value) -> {
-            try {
-                bufferedWriter.write(name + "=" + value);
-                bufferedWriter.newLine();
-            } catch (Exception e) {
-                // Should not happen
-            }
-        });
-
-        bufferedWriter.close();
-        fileWriter.close();
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (Closeable lock = storage.lock(file, false)) {
+            long stamp = prepareSave();
+            long bytes = write(storage.write(temp), stamp);
+            replace(temp);
+            saved(event, start, stamp, bytes);
+        }
     }
 
     /**
      * Set all data to the default values.
+     *
+     * @exception IllegalStateException
+     *                if the data is frozen
      */
     public void setDefaults() {
+        checkNotFrozen();
         storeDefaults();
-
-        for (Field field : getClass().getDeclaredFields()) {
-            if (field.isSynthetic()) {
-                continue;
-            }
-
-            try {
-                String name = field.getName();
-                String typeName = field.getGenericType().getTypeName();
-
-                if (typeName.equals(BYTE_TYPE)) {
-                    field.setByte(this, (byte) defaultData.get(name));
-                } else if (typeName.equals(SHORT_TYPE)) {
-                    field.setShort(this, (short) defaultData.get(name));
-                } else if (typeName.equals(INT_TYPE)) {
-                    field.setInt(this, (int) defaultData.get(name));
-                } else if (typeName.equals(LONG_TYPE)) {
-                    field.setLong(this, (long) defaultData.get(name));
-                } else if (typeName.equals(FLOAT_TYPE)) {
-                    field.setFloat(this, (float) defaultData.get(name));
-                } else if (typeName.equals(DOUBLE_TYPE)) {
-                    field.setDouble(this, (double) defaultData.get(name));
-                } else if (typeName.equals(BOOLEAN_TYPE)) {
-                    field.setBoolean(this, (boolean) defaultData.get(name));
-                } else {
-                    field.set(this, defaultData.get(name));
-                }
-            } catch (Exception e) {
-                // Should not happen
-            }
-        }
+        schema.restore(this, defaults);
     }
 
     /**
@@ -271,8 +337,12 @@ class Data {
      *
      * @param fields
      *            the unknown fields
+     *
+     * @exception IllegalStateException
+     *                if the data is frozen
      */
     public void setUnknownFields(Map<String, String> fields) {
+        checkNotFrozen();
         unknownData.clear();
         unknownData.putAll(fields);
     }
@@ -284,11 +354,167 @@ class Data {
      *            the unknown field name
      * @param value
      *            the unknown field value
+     *
+     * @exception IllegalStateException
+     *                if the data is frozen
      */
     public void setUnknownField(String name, String value) {
+        checkNotFrozen();
         unknownData.put(name, value);
     }
 
+    /**
+     * Set the storage of the file of this data. The storage must be set
+     * before loading or saving.
+     *
+     * @param storage
+     *            the storage, or <code>null</code> for the file system
+     */
+    public void setStorage(DataStorage storage) {
+        this.storage = storage != null ? storage : DataStorage.FILE_SYSTEM;
+    }
+
+    /**
+     * Returns the storage of the file of this data.
+     *
+     * @return the storage
+     */
+    public DataStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Set the change feed to which the changes of this data are appended when
+     * saved. The feed must be set before loading or saving. The first change
+     * appended holds all values, as does any change saved over a file which
+     * was saved by others since this data was loaded or saved.
+     *
+     * @param feed
+     *            the feed, or <code>null</code> for none
+     */
+    public void setFeed(DataFeed feed) {
+        this.feed = feed;
+    }
+
+    /**
+     * Returns the change feed to which the changes of this data are appended.
+     *
+     * @return the feed, or <code>null</code> if none
+     */
+    public DataFeed getFeed() {
+        return feed;
+    }
+
+    /**
+     * Set the metrics receiving load and save measurements of this data.
+     *
+     * @param metrics
+     *            the metrics, or <code>null</code> for none
+     */
+    public void setMetrics(DataMetrics metrics) {
+        this.metrics = metrics != null ? metrics : DataMetrics.NONE;
+    }
+
+    /**
+     * Set the policy for saving when the file was saved by another instance or
+     * process since it was loaded. For merging, the policy must be set before
+     * loading.
+     *
+     * @param policy
+     *            the conflict policy
+     */
+    public void setConflictPolicy(ConflictPolicy policy) {
+        conflictPolicy = policy;
+    }
+
+    /**
+     * Returns the policy for saving when the file was saved by another
+     * instance or process since it was loaded.
+     *
+     * @return the conflict policy
+     */
+    public ConflictPolicy getConflictPolicy() {
+        return conflictPolicy;
+    }
+
+    /**
+     * Returns the generation of the file when this data was last loaded or
+     * saved. The generation is incremented by every save.
+     *
+     * @return the generation, or <code>-1</code> if neither loaded nor saved
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Set whether large files are parsed in parallel chunks on load. The
+     * chunks are parsed on the common fork-join pool and applied in file
+     * order, so later duplicate keys still take precedence.
+     *
+     * @param parallel
+     *            <code>true</code> to parse in parallel, or
+     *            <code>false</code> otherwise
+     */
+    public void setParallelLoad(boolean parallel) {
+        isParallelLoad = parallel;
+    }
+
+    /**
+     * Indicates whether large files are parsed in parallel chunks on load.
+     *
+     * @return <code>true</code> if parsed in parallel, or <code>false</code>
+     *         otherwise
+     */
+    public boolean isParallelLoad() {
+        return isParallelLoad;
+    }
+
+    /**
+     * Set whether unknown field names and short loaded values are shared with
+     * other data instances through a bounded, weak string pool. Pooling saves
+     * memory when many instances hold equal names and values, at the cost of
+     * a pool lookup per name and value on load.
+     *
+     * @param valuePooling
+     *            <code>true</code> to pool values, or <code>false</code>
+     *            otherwise
+     */
+    public void setValuePooling(boolean valuePooling) {
+        isValuePooling = valuePooling;
+    }
+
+    /**
+     * Indicates whether short loaded values are shared with other data
+     * instances through a string pool.
+     *
+     * @return <code>true</code> if pooled, or <code>false</code> otherwise
+     */
+    public boolean isValuePooling() {
+        return isValuePooling;
+    }
+
+    /**
+     * Add a listener receiving the changes of this data caused by loading it,
+     * or by merging changes saved concurrently.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void addListener(DataListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener receiving the changes of this data.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void removeListener(DataListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Returns the file of this data.
      *
@@ -308,12 +534,23 @@ class Data {
     }
 
     /**
-     * Returns the unknown fields of this data.
+     * Returns the backup file of this data, holding the previously saved
+     * generation.
+     *
+     * @return the backup file
+     */
+    public File getBackupFile() {
+        return new File(file.getPath() + BACKUP_SUFFIX);
+    }
+
+    /**
+     * Returns the unknown fields of this data. Once frozen, the unknown fields
+     * cannot be modified.
      *
      * @return the unknown fields
      */
     public Map<String, String> getUnknownFields() {
-        return unknownData;
+        return frozenUnknownData != null ? frozenUnknownData : unknownData;
     }
 
     /**
@@ -328,6 +565,65 @@ class Data {
         return unknownData.get(name);
     }
 
+    /**
+     * Set whether this data is only read. Read-only data is loaded without
+     * locking and without creating a missing file, in which case the defaults
+     * are kept. Once loaded, read-only data is frozen: it cannot be loaded or
+     * saved again, and its unknown fields cannot be modified.
+     *
+     * @param readOnly
+     *            <code>true</code> for read-only data, or <code>false</code>
+     *            otherwise
+     *
+     * @exception IllegalStateException
+     *                if the data is loaded
+     */
+    void setReadOnly(boolean readOnly) {
+        if (isLoaded) {
+            throw new IllegalStateException("Data is loaded");
+        }
+        isReadOnly = readOnly;
+    }
+
+    /**
+     * Indicates whether this data is only read.
+     *
+     * @return <code>true</code> if read-only, or <code>false</code> otherwise
+     */
+    boolean isReadOnly() {
+        return isReadOnly;
+    }
+
+    /**
+     * Indicates whether this data is frozen, as read-only data is once loaded.
+     *
+     * @return <code>true</code> if frozen, or <code>false</code> otherwise
+     */
+    public boolean isFrozen() {
+        return frozenUnknownData != null;
+    }
+
+    /**
+     * Returns the problems found when this data was loaded last. Lines which
+     * could not be parsed were skipped, and of fields listed more than once
+     * the last value was taken.
+     *
+     * @return the diagnostics, empty if not loaded yet
+     */
+    public DataDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Set the problems found while loading this data.
+     *
+     * @param diagnostics
+     *            the diagnostics
+     */
+    void setDiagnostics(DataDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
     /**
      * Indicates whether this data is loaded.
      *
@@ -338,42 +634,759 @@ class Data {
     }
 
     /**
-     * Store all data default values.
+     * Prepare saving the data while holding the exclusive lock on its file.
+     * A conflict with a file saved since this data was loaded or saved is
+     * resolved according to the conflict policy.
+     *
+     * @return the generation to stamp
+     *
+     * @throws IOException
+     *             if reading the file failed
+     * @throws DataConflictException
+     *             if the file was saved since and the policy is to fail
+     * @exception IllegalStateException
+     *                if the data is read-only
      */
-    private void storeDefaults() {
-        if (isLoaded) {
-            return;
+    long prepareSave() throws IOException {
+        if (isReadOnly) {
+            throw new IllegalStateException("Data is read-only");
         }
+        storeDefaults();
 
-        for (Field field : getClass().getDeclaredFields()) {
-            if (field.isSynthetic()) {
-                continue;
+        long current = readGeneration();
+        if (generation >= 0 && current != generation) {
+            if (conflictPolicy == ConflictPolicy.FAIL) {
+                throw new DataConflictException(file, generation, current);
+            } else if (conflictPolicy == ConflictPolicy.MERGE) {
+                boolean tracked = snapshot();
+                merge(current);
+                if (tracked) {
+                    fireChanges();
+                }
+            }
+        }
+        return current + 1;
+    }
+
+    /**
+     * Replace the file of this data by the specified content, written
+     * through a temporary file, while holding the exclusive lock on its
+     * file.
+     *
+     * @param content
+     *            the content
+     *
+     * @throws IOException
+     *             if writing or replacing the file failed
+     */
+    void install(byte[] content) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (WritableByteChannel channel = storage.write(temp)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            force(channel);
+        }
+        replace(temp);
+    }
+
+    /**
+     * Mark this data as saved to its file. The changes are appended to the
+     * feed last, so the data counts as saved even if appending fails.
+     *
+     * @param event
+     *            the save event
+     * @param start
+     *            the start time of saving in nanoseconds
+     * @param stamp
+     *            the generation of the saved file
+     * @param bytes
+     *            the number of bytes written
+     *
+     * @throws IOException
+     *             if appending the changes to the feed failed
+     */
+    void saved(Object event, long start, long stamp, long bytes)
+            throws IOException {
+        boolean complete = false;
+        Map<String, String> changes = null;
+        if (feed != null) {
+            complete = baseValues == null || generation != stamp - 1;
+            changes = changes(complete);
+        }
+        generation = stamp;
+        captureBase();
+
+        DataEvents.commitSave(event, getClass(), file, bytes, schema.size(),
+                unknownData.size());
+        metrics.saved(getClass(), System.nanoTime() - start, bytes,
+                schema.size(), unknownData.size());
+
+        if (changes != null) {
+            feed.append(file, stamp, complete, changes);
+        }
+    }
+
+    /**
+     * Write the data as UTF-8, stamped with a generation and the schema
+     * fingerprint, and ending with a checksum trailer.
+     *
+     * @param channel
+     *            the channel to write, closed when written
+     * @param stamp
+     *            the generation to stamp
+     *
+     * @return the number of bytes written
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    long write(WritableByteChannel channel, long stamp) throws IOException {
+        try (DataWriter writer = new DataWriter(channel)) {
+            writer.ascii(GENERATION_PREFIX);
+            writer.value(stamp);
+            writer.newLine();
+            writer.ascii(SCHEMA_PREFIX);
+            writer.hex(schema.fingerprint(), 16);
+            writer.newLine();
+
+            for (int slot = 0; slot < schema.size(); slot++) {
+                writeField(writer, slot);
+            }
+
+            for (Map.Entry<String, String> entry : unknownData.entrySet()) {
+                writer.entry(entry.getKey(), entry.getValue());
+            }
+
+            long bytes = writer.checksum(CHECKSUM_PREFIX);
+            force(channel);
+            return bytes;
+        }
+    }
+
+    /**
+     * Read the content of the file of this data. Read-only data is read
+     * without locking, as files are replaced atomically on save, and a
+     * missing file is read as empty.
+     *
+     * @return the content, limited to exclude the checksum trailer
+     *
+     * @throws IOException
+     *             if reading failed or the file is corrupt
+     */
+    private ByteBuffer read() throws IOException {
+        if (isReadOnly) {
+            if (!storage.exists(file)) {
+                return ByteBuffer.allocate(0);
+            }
+            return readVerified(storage, file);
+        }
+
+        try (Closeable lock = storage.lock(file, true)) {
+            return readVerified(storage, file);
+        }
+    }
+
+    /**
+     * Ensure this data is not frozen.
+     *
+     * @exception IllegalStateException
+     *                if the data is frozen
+     */
+    private void checkNotFrozen() {
+        if (frozenUnknownData != null) {
+            throw new IllegalStateException("Data is frozen");
+        }
+    }
+
+    /**
+     * Replace the file of this data by a newly written file, retaining the
+     * current file as backup. A current file which is corrupt is dropped, so
+     * the backup keeps the last good generation.
+     *
+     * @param source
+     *            the newly written file
+     *
+     * @throws IOException
+     *             if replacing the file failed
+     */
+    private void replace(File source) throws IOException {
+        if (storage.exists(file) && verify(storage.read(file)) >= 0) {
+            storage.link(file, getBackupFile());
+        }
+        storage.rename(source, file);
+    }
+
+    /**
+     * Force the content written to a channel to disk if it is a file
+     * channel, so the file it replaces is never found empty after a crash.
+     *
+     * @param channel
+     *            the channel
+     *
+     * @throws IOException
+     *             if forcing failed
+     */
+    private static void force(WritableByteChannel channel) throws IOException {
+        if (channel instanceof FileChannel) {
+            ((FileChannel) channel).force(true);
+        }
+    }
+
+    /**
+     * Read the content of a data file, or of its backup if the checksum of the
+     * file does not match.
+     *
+     * @param storage
+     *            the storage of the file
+     * @param file
+     *            the data file
+     *
+     * @return the content, limited to exclude the checksum trailer
+     *
+     * @throws IOException
+     *             if reading failed or both files are corrupt
+     */
+    static ByteBuffer readVerified(DataStorage storage, File file)
+            throws IOException {
+        byte[] content = storage.read(file);
+        int length = verify(content);
+        if (length < 0) {
+            File backup = new File(file.getPath() + BACKUP_SUFFIX);
+            if (storage.exists(backup)) {
+                content = storage.read(backup);
+                length = verify(content);
+            }
+            if (length < 0) {
+                throw new IOException("Data file is corrupt: " + file);
             }
+        }
+        return ByteBuffer.wrap(content, 0, length);
+    }
 
-            try {
-                String name = field.getName();
-                String typeName = field.getGenericType().getTypeName();
-
-                if (typeName.equals(BYTE_TYPE)) {
-                    defaultData.put(name, field.getByte(this));
-                } else if (typeName.equals(SHORT_TYPE)) {
-                    defaultData.put(name, field.getShort(this));
-                } else if (typeName.equals(INT_TYPE)) {
-                    defaultData.put(name, field.getInt(this));
-                } else if (typeName.equals(LONG_TYPE)) {
-                    defaultData.put(name, field.getLong(this));
-                } else if (typeName.equals(FLOAT_TYPE)) {
-                    defaultData.put(name, field.getFloat(this));
-                } else if (typeName.equals(DOUBLE_TYPE)) {
-                    defaultData.put(name, field.getDouble(this));
-                } else if (typeName.equals(BOOLEAN_TYPE)) {
-                    defaultData.put(name, field.getBoolean(this));
+    /**
+     * Merge the changes saved to the file since this data was loaded or saved
+     * into this data. Per field and unknown field, a value changed in this
+     * data takes precedence; otherwise the value of the file is taken.
+     *
+     * @param current
+     *            the generation of the file
+     *
+     * @throws IOException
+     *             if reading the file failed, or no base values were captured
+     */
+    private void merge(long current) throws IOException {
+        if (baseValues == null) {
+            throw new DataConflictException(file, generation, current);
+        }
+
+        ByteBuffer buffer = readVerified(storage, file);
+        Map<String, String> saved = new HashMap<String, String>();
+        DataEntries.parse(buffer.array(), 0, buffer.limit(), null, false,
+                false)
+                .putUnknown(saved);
+
+        DataEntries theirs = new DataEntries();
+        for (int slot = 0; slot < schema.size(); slot++) {
+            String name = schema.name(slot);
+            String value = saved.remove(name);
+            if (value != null && !value.equals(baseValues[slot])
+                    && baseValues[slot].equals(valueOf(slot))) {
+                theirs.parse(name, value, schema);
+            }
+        }
+        theirs.apply(this, schema, false);
+
+        Set<String> names = new HashSet<String>(saved.keySet());
+        names.addAll(baseUnknownData.keySet());
+        for (String name : names) {
+            String base = baseUnknownData.get(name);
+            if (Objects.equals(base, unknownData.get(name))) {
+                String value = saved.get(name);
+                if (value != null) {
+                    putUnknownField(name, value);
                 } else {
-                    defaultData.put(name, field.get(this));
+                    removeUnknownField(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark this data as loaded from a file.
+     *
+     * @param stamp
+     *            the generation of the loaded file
+     */
+    void loaded(long stamp) {
+        generation = stamp;
+        isLoaded = true;
+        captureBase();
+    }
+
+    /**
+     * Take a snapshot of all field values and start tracking the changed
+     * unknown fields, if there are listeners. The snapshot arrays are reused,
+     * and unknown fields are compared as they are put or removed, so nothing
+     * is allocated for unchanged values.
+     *
+     * @return <code>true</code> if taken, or <code>false</code> otherwise
+     */
+    boolean snapshot() {
+        if (listeners.isEmpty()) {
+            return false;
+        }
+
+        if (snapshotBits == null) {
+            snapshotBits = new long[schema.size()];
+            snapshotReferences = new Object[schema.size()];
+        }
+        schema.snapshot(this, snapshotBits, snapshotReferences);
+        isTracking = true;
+        return true;
+    }
+
+    /**
+     * Put an unknown field value, tracking the change if it differs.
+     *
+     * @param name
+     *            the unknown field name
+     * @param value
+     *            the unknown field value
+     */
+    void putUnknownField(String name, String value) {
+        String previous = unknownData.put(name, value);
+        if (isTracking && !value.equals(previous)) {
+            unknownChanged(name);
+        }
+    }
+
+    /**
+     * Remove the unknown fields which are not listed in the entries of a
+     * file, tracking the removals. The names are only collected if the data
+     * holds more unknown fields than listed.
+     *
+     * @param parsed
+     *            the entries of the file
+     * @param listed
+     *            the number of distinct unknown fields listed
+     */
+    void removeUnlisted(List<DataEntries> parsed, int listed) {
+        if (unknownData.size() <= listed) {
+            return;
+        }
+
+        Set<String> names = new HashSet<String>(listed * 2);
+        for (DataEntries entries : parsed) {
+            entries.addUnknownNames(names);
+        }
+        List<String> unlisted = new ArrayList<String>();
+        for (String name : unknownData.keySet()) {
+            if (!names.contains(name)) {
+                unlisted.add(name);
+            }
+        }
+        for (String name : unlisted) {
+            removeUnknownField(name);
+        }
+    }
+
+    /**
+     * Returns the number of unknown fields listed more than once.
+     *
+     * @param problems
+     *            the problems found while loading
+     *
+     * @return the number of duplicate unknown fields
+     */
+    int unknownDuplicates(List<DataDiagnostics.Problem> problems) {
+        int duplicates = 0;
+        for (DataDiagnostics.Problem problem : problems) {
+            if (problem.getKind() == DataDiagnostics.Kind.DUPLICATE_KEY
+                    && schema.slotOf(problem.getName()) < 0) {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Remove an unknown field, tracking the change if it was present.
+     *
+     * @param name
+     *            the unknown field name
+     */
+    private void removeUnknownField(String name) {
+        if (unknownData.remove(name) != null && isTracking) {
+            unknownChanged(name);
+        }
+    }
+
+    /**
+     * Track a changed unknown field.
+     *
+     * @param name
+     *            the unknown field name
+     */
+    private void unknownChanged(String name) {
+        if (changedUnknownFields.isEmpty()) {
+            changedUnknownFields = new LinkedHashSet<String>();
+        }
+        changedUnknownFields.add(name);
+    }
+
+    /**
+     * Notify the listeners of all field values which differ from the
+     * snapshot, and of all tracked unknown fields, and stop tracking.
+     */
+    void fireChanges() {
+        Set<String> fields = Collections.emptySet();
+        for (int slot = 0; slot < schema.size(); slot++) {
+            if (schema.differs(this, slot, snapshotBits,
+                    snapshotReferences)) {
+                if (fields.isEmpty()) {
+                    fields = new LinkedHashSet<String>();
+                }
+                fields.add(schema.name(slot));
+            }
+        }
+
+        Set<String> unknownFields = changedUnknownFields;
+        changedUnknownFields = Collections.emptySet();
+        isTracking = false;
+
+        if (!fields.isEmpty() || !unknownFields.isEmpty()) {
+            for (DataListener listener : listeners) {
+                listener.dataChanged(Collections.unmodifiableSet(fields),
+                        Collections.unmodifiableSet(unknownFields));
+            }
+        }
+    }
+
+    /**
+     * Write the line of a field to save. Primitive values are encoded
+     * without creating strings, floating point values as shortest decimal.
+     *
+     * @param writer
+     *            the writer of the file
+     * @param slot
+     *            the slot of the field
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void writeField(DataWriter writer, int slot) throws IOException {
+        Field field = schema.field(slot);
+        try {
+            switch (schema.type(slot)) {
+            case DataSchema.BYTE:
+            case DataSchema.SHORT:
+            case DataSchema.INT:
+            case DataSchema.LONG:
+                long number = field.getLong(this);
+                writer.name(schema.name(slot));
+                writer.value(number);
+                break;
+            case DataSchema.FLOAT:
+                float single = field.getFloat(this);
+                writer.name(schema.name(slot));
+                writer.value(single);
+                break;
+            case DataSchema.DOUBLE:
+                double real = field.getDouble(this);
+                writer.name(schema.name(slot));
+                writer.value(real);
+                break;
+            case DataSchema.BOOLEAN:
+                boolean flag = field.getBoolean(this);
+                writer.name(schema.name(slot));
+                writer.value(flag);
+                break;
+            default:
+                String value = valueOf(slot);
+                writer.name(schema.name(slot));
+                writer.text(value);
+            }
+            writer.newLine();
+        } catch (IllegalAccessException e) {
+            // Should not happen
+        }
+    }
+
+    /**
+     * Returns the schema of this data.
+     *
+     * @return the schema
+     */
+    DataSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Returns the metrics receiving load and save measurements of this data.
+     *
+     * @return the metrics
+     */
+    DataMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the field values changed since the base values, or all.
+     *
+     * @param complete
+     *            <code>true</code> for all values, or <code>false</code> for
+     *            the changed values
+     *
+     * @return the values, <code>null</code> for removed unknown fields
+     */
+    private Map<String, String> changes(boolean complete) {
+        Map<String, String> changes = new CompactMap();
+        for (int slot = 0; slot < schema.size(); slot++) {
+            String value = valueOf(slot);
+            if (complete || !Objects.equals(value, baseValues[slot])) {
+                changes.put(schema.name(slot), value);
+            }
+        }
+        for (Map.Entry<String, String> entry : unknownData.entrySet()) {
+            if (complete || !Objects.equals(entry.getValue(),
+                    baseUnknownData.get(entry.getKey()))) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!complete) {
+            for (String name : baseUnknownData.keySet()) {
+                if (!unknownData.containsKey(name)) {
+                    changes.put(name, null);
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Capture the current values as base for merging or the change feed, if
+     * either is used.
+     */
+    private void captureBase() {
+        if (conflictPolicy != ConflictPolicy.MERGE && feed == null) {
+            baseValues = null;
+            baseUnknownData = null;
+            return;
+        }
+
+        baseValues = new String[schema.size()];
+        for (int slot = 0; slot < baseValues.length; slot++) {
+            baseValues[slot] = valueOf(slot);
+        }
+        baseUnknownData = new CompactMap(unknownData);
+    }
+
+    /**
+     * Returns the value of a field as saved.
+     *
+     * @param slot
+     *            the slot of the field
+     *
+     * @return the value
+     */
+    String valueOf(int slot) {
+        try {
+            Field field = schema.field(slot);
+            switch (schema.type(slot)) {
+            case DataSchema.FLOAT:
+                return DecimalCodec.toString(field.getFloat(this));
+            case DataSchema.DOUBLE:
+                return DecimalCodec.toString(field.getDouble(this));
+            default:
+                return String.valueOf(field.get(this));
+            }
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the generation stamped in the file of this data.
+     *
+     * @return the generation, or <code>0</code> if the file does not exist
+     *         or is not stamped
+     *
+     * @throws IOException
+     *             if reading the file failed
+     */
+    private long readGeneration() throws IOException {
+        if (!storage.exists(file)) {
+            return 0;
+        }
+
+        byte[] header = new byte[GENERATION_PREFIX.length() + 20];
+        int length = 0;
+        try (InputStream inputStream = storage.open(file)) {
+            int read;
+            while (length < header.length && (read = inputStream.read(header,
+                    length, header.length - length)) > 0) {
+                length += read;
+            }
+        }
+        return generationOf(header, length);
+    }
+
+    /**
+     * Returns the generation stamped in the header of a file content.
+     *
+     * @param content
+     *            the file content
+     * @param length
+     *            the length of the content
+     *
+     * @return the generation, or <code>0</code> if not stamped
+     */
+    static long generationOf(byte[] content, int length) {
+        int prefix = GENERATION_PREFIX.length();
+        if (length < prefix || !new String(content, 0, prefix, ASCII)
+                .equals(GENERATION_PREFIX)) {
+            return 0;
+        }
+
+        long value = 0;
+        for (int i = prefix; i < length && content[i] >= '0'
+                && content[i] <= '9'; i++) {
+            value = value * 10 + (content[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Indicates whether the header of a file content holds the fingerprint of
+     * a schema, so its fields are likely listed in slot order.
+     *
+     * @param content
+     *            the file content
+     * @param length
+     *            the length of the content
+     * @param schema
+     *            the schema
+     *
+     * @return <code>true</code> if the fingerprint matches, or
+     *         <code>false</code> otherwise
+     */
+    static boolean hasSchema(byte[] content, int length, DataSchema schema) {
+        int start = 0;
+        while (start < length && content[start] == '#') {
+            int end = start;
+            while (end < length && content[end] != '\n') {
+                end++;
+            }
+            int prefix = SCHEMA_PREFIX.length();
+            if (end - start == prefix + 16 && new String(content, start,
+                    prefix, ASCII).equals(SCHEMA_PREFIX)) {
+                long value = 0;
+                for (int i = start + prefix; i < end; i++) {
+                    int digit = Character.digit(content[i], 16);
+                    if (digit < 0) {
+                        return false;
+                    }
+                    value = value << 4 | digit;
                 }
-            } catch (Exception e) {
-                // Should not happen
+                return value == schema.fingerprint();
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Verify the checksum trailer of the specified file content. The content is
+     * scanned once; no field is parsed. Content without trailer is only
+     * accepted as saved by earlier versions, which never wrote empty files
+     * nor lines starting with <code>#</code> first. Empty content, content
+     * with a generation or schema header, and content cut off within its
+     * first comment line are corrupt.
+     *
+     * @param content
+     *            the file content
+     *
+     * @return the length of the content without trailer, or <code>-1</code>
+     *         if the checksum does not match or the trailer is missing
+     */
+    private static int verify(byte[] content) {
+        int end = content.length;
+        while (end > 0
+                && (content[end - 1] == '\n' || content[end - 1] == '\r')) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && content[start - 1] != '\n'
+                && content[start - 1] != '\r') {
+            start--;
+        }
+
+        String line = new String(content, start, end - start, ASCII);
+        if (!line.startsWith(CHECKSUM_PREFIX)) {
+            return content.length == 0 || hasHeader(content) ? -1
+                    : content.length;
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(content, 0, start);
+        try {
+            long expected = Long.parseLong(
+                    line.substring(CHECKSUM_PREFIX.length()), 16);
+            return expected == checksum.getValue() ? start : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Indicates whether a file content starts with a generation or schema
+     * header, as written by every save, or with a comment line which is not
+     * terminated and may be a header cut off.
+     *
+     * @param content
+     *            the file content
+     *
+     * @return <code>true</code> if a header is found, or <code>false</code>
+     *         otherwise
+     */
+    private static boolean hasHeader(byte[] content) {
+        int start = 0;
+        while (start < content.length && content[start] == '#') {
+            int end = start;
+            while (end < content.length && content[end] != '\n') {
+                end++;
+            }
+            if (end == content.length) {
+                return true;
+            }
+            String line = new String(content, start, end - start, ASCII);
+            if (line.startsWith(GENERATION_PREFIX)
+                    || line.startsWith(SCHEMA_PREFIX)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Store all data default values.
+     */
+    void storeDefaults() {
+        if (isLoaded) {
+            return;
+        }
+
+        DataSchema.Values shared = schema.defaults(this);
+        if (schema.matches(this, shared)) {
+            defaults = shared;
+        } else {
+            if (defaults == null || defaults == shared) {
+                defaults = new DataSchema.Values(schema.size());
             }
+            schema.snapshot(this, defaults.bits, defaults.references);
         }
     }
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class represents a change of data read from a change feed. It holds
+ * the field values saved with a generation of a data file, either all of
+ * them or only those changed since the previous generation.
+ *
+ * @author Sander Veldhuis
+ */
+public final class DataChange {
+
+    /** The sequence number in the feed. */
+    private final long sequence;
+
+    /** The offset in the feed following the change. */
+    private final long offset;
+
+    /** The data file. */
+    private final File file;
+
+    /** The generation of the data file. */
+    private final long generation;
+
+    /** Indicates whether all field values are included. */
+    private final boolean isComplete;
+
+    /** The field values, <code>null</code> for removed unknown fields. */
+    private final Map<String, String> values;
+
+    /**
+     * Constructs a new change.
+     *
+     * @param sequence
+     *            the sequence number in the feed
+     * @param offset
+     *            the offset in the feed following the change
+     * @param file
+     *            the data file
+     * @param generation
+     *            the generation of the data file
+     * @param complete
+     *            <code>true</code> if all field values are included, or
+     *            <code>false</code> if only the changed values
+     * @param values
+     *            the field values
+     */
+    DataChange(long sequence, long offset, File file, long generation,
+            boolean complete, Map<String, String> values) {
+        this.sequence = sequence;
+        this.offset = offset;
+        this.file = file;
+        this.generation = generation;
+        isComplete = complete;
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Returns the sequence number of this change in the feed. Sequence
+     * numbers start at <code>1</code> and increase by one per change.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the offset in the feed following this change, from which
+     * tailing can be resumed.
+     *
+     * @return the offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the data file which was saved.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the generation of the data file which was saved.
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Indicates whether all field values are included. If so, unknown fields
+     * not included were removed; otherwise only the values changed since the
+     * previous generation are included.
+     *
+     * @return <code>true</code> if complete, or <code>false</code> otherwise
+     */
+    public boolean isComplete() {
+        return isComplete;
+    }
+
+    /**
+     * Returns the field values in file order. A <code>null</code> value
+     * denotes a removed unknown field.
+     *
+     * @return the unmodifiable field values
+     */
+    public Map<String, String> getValues() {
+        return values;
+    }
+}
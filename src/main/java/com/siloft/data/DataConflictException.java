@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This exception is thrown when saving data fails because the file was saved
+ * by another instance or process since it was loaded.
+ *
+ * @author Sander Veldhuis
+ */
+public class DataConflictException extends IOException {
+
+    /** The serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The generation of the file when it was loaded. */
+    private final long expectedGeneration;
+
+    /** The generation of the file when it was saved. */
+    private final long actualGeneration;
+
+    /**
+     * Constructs a new data conflict exception.
+     *
+     * @param file
+     *            the data file
+     * @param expectedGeneration
+     *            the generation of the file when it was loaded
+     * @param actualGeneration
+     *            the generation of the file when it was saved
+     */
+    public DataConflictException(File file, long expectedGeneration,
+            long actualGeneration) {
+        super("Data file was saved concurrently: " + file + " (generation "
+                + actualGeneration + ", expected " + expectedGeneration + ")");
+        this.expectedGeneration = expectedGeneration;
+        this.actualGeneration = actualGeneration;
+    }
+
+    /**
+     * Returns the generation of the file when it was loaded.
+     *
+     * @return the expected generation
+     */
+    public long getExpectedGeneration() {
+        return expectedGeneration;
+    }
+
+    /**
+     * Returns the generation of the file when it was saved.
+     *
+     * @return the actual generation
+     */
+    public long getActualGeneration() {
+        return actualGeneration;
+    }
+}
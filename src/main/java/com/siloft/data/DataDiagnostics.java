@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents the problems found while loading data: lines which
+ * could not be parsed, values out of range of their field type, and fields
+ * listed more than once. Problem lines are skipped on load, and of fields
+ * listed more than once the last value is taken.
+ *
+ * @author Sander Veldhuis
+ */
+public final class DataDiagnostics {
+
+    /**
+     * This enumeration represents the kinds of problems.
+     */
+    public enum Kind {
+
+        /** A line which is not a comment and holds no field. */
+        MALFORMED_LINE,
+
+        /** A field value which is not valid for the field type. */
+        UNPARSABLE_VALUE,
+
+        /** A number which is out of range of the field type. */
+        OUT_OF_RANGE,
+
+        /** A field listed before in the same file. */
+        DUPLICATE_KEY
+    }
+
+    /**
+     * This class represents a single problem.
+     */
+    public static final class Problem {
+
+        /** The kind of problem. */
+        private final Kind kind;
+
+        /** The field name, or <code>null</code>. */
+        private final String name;
+
+        /** The line. */
+        private final String line;
+
+        /** The line number, or 0 if not read from a file. */
+        private final int lineNumber;
+
+        /**
+         * Constructs a new problem.
+         *
+         * @param kind
+         *            the kind of problem
+         * @param name
+         *            the field name, or <code>null</code> for a malformed
+         *            line
+         * @param line
+         *            the line
+         * @param lineNumber
+         *            the line number, or 0 if not read from a file
+         */
+        Problem(Kind kind, String name, String line, int lineNumber) {
+            this.kind = kind;
+            this.name = name;
+            this.line = line;
+            this.lineNumber = lineNumber;
+        }
+
+        /**
+         * Returns the kind of problem.
+         *
+         * @return the kind
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the field name.
+         *
+         * @return the field name, or <code>null</code> for a malformed line
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the line, as listed in the file.
+         *
+         * @return the line
+         */
+        public String getLine() {
+            return line;
+        }
+
+        /**
+         * Returns the number of the line in the file, counting from 1.
+         *
+         * @return the line number, or 0 if not read from a file, such as a
+         *         value of the environment layer
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ": " + line;
+        }
+    }
+
+    /** The diagnostics without problems. */
+    static final DataDiagnostics NONE =
+            new DataDiagnostics(Collections.<Problem>emptyList());
+
+    /** The problems in file order. */
+    private final List<Problem> problems;
+
+    /**
+     * Constructs new diagnostics.
+     *
+     * @param problems
+     *            the problems in file order
+     */
+    DataDiagnostics(List<Problem> problems) {
+        this.problems = Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * Returns all problems, in file order.
+     *
+     * @return the problems
+     */
+    public List<Problem> getProblems() {
+        return problems;
+    }
+
+    /**
+     * Returns the problems of a kind, in file order.
+     *
+     * @param kind
+     *            the kind of problems
+     *
+     * @return the problems
+     */
+    public List<Problem> getProblems(Kind kind) {
+        List<Problem> found = new ArrayList<Problem>();
+        for (Problem problem : problems) {
+            if (problem.kind == kind) {
+                found.add(problem);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Indicates whether no problems were found.
+     *
+     * @return <code>true</code> if none were found, or <code>false</code>
+     *         otherwise
+     */
+    public boolean isEmpty() {
+        return problems.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return problems.toString();
+    }
+}
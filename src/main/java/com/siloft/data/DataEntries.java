@@ -0,0 +1,853 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class represents the entries parsed from a range of lines of a data
+ * file. Field values are parsed against the schema of the data class and
+ * kept in primitive form until they are applied, so ranges can be parsed
+ * concurrently and applied in file order afterwards.
+ *
+ * @author Sander Veldhuis
+ */
+final class DataEntries {
+
+    /** The minimum number of bytes per chunk when parsing in parallel. */
+    static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    /** The character set of data files. */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The slots of the parsed field values. */
+    private int[] slots = new int[16];
+
+    /** The parsed primitive field values, as raw bits. */
+    private long[] values = new long[16];
+
+    /** The parsed <code>String</code> field values. */
+    private String[] strings = new String[16];
+
+    /** The number of parsed field values. */
+    private int count;
+
+    /** The unknown field values by name, in order of first listing. */
+    private final CompactMap unknown = new CompactMap();
+
+    /** The number of unknown fields, including duplicates. */
+    private int unknownCount;
+
+    /** The problems of the parsed lines. */
+    private List<DataDiagnostics.Problem> problems = Collections.emptyList();
+
+    /** The number of lines parsed. */
+    private int lines;
+
+    /**
+     * The line number of the first listing of each slot, or zero if not
+     * listed. Kept after parsing only for chunks, or <code>null</code>.
+     */
+    private int[] listed;
+
+    /**
+     * The line number of the first listing of each unknown field, in order
+     * of first listing, or <code>null</code> if not parsed as a chunk.
+     */
+    private int[] unknownLines;
+
+    /** The start of the parsed range in the file content. */
+    private int from;
+
+    /** The end of the parsed range in the file content. */
+    private int to;
+
+    /** The last parsed primitive value, as raw bits. */
+    private long parsed;
+
+    /**
+     * Indicates whether unknown field names and short values are shared
+     * through the string pool.
+     */
+    private final boolean isValuePooling;
+
+    /** The slot expected on the next line, or -1 to look up each name. */
+    private int expected = -1;
+
+    /**
+     * Constructs new empty entries, not pooling names and values.
+     */
+    DataEntries() {
+        this(false);
+    }
+
+    /**
+     * Constructs new empty entries.
+     *
+     * @param valuePooling
+     *            <code>true</code> to share unknown field names and short
+     *            values through the string pool, or <code>false</code>
+     *            otherwise
+     */
+    DataEntries(boolean valuePooling) {
+        isValuePooling = valuePooling;
+    }
+
+    /**
+     * Parse the lines of a file content, in parallel chunks if requested and
+     * worthwhile.
+     *
+     * @param content
+     *            the file content
+     * @param length
+     *            the length of the content to parse
+     * @param schema
+     *            the schema of the data class
+     * @param parallel
+     *            <code>true</code> to parse chunks in parallel
+     * @param valuePooling
+     *            <code>true</code> to share unknown field names and short
+     *            values through the string pool
+     * @param positional
+     *            <code>true</code> if the fields are likely listed in slot
+     *            order
+     *
+     * @return the entries per chunk, in file order
+     */
+    static List<DataEntries> parse(byte[] content, int length,
+            DataSchema schema, boolean parallel, boolean valuePooling,
+            boolean positional) {
+        int chunks = parallel ? Math.min(
+                ForkJoinPool.getCommonPoolParallelism() * 4,
+                length / MIN_CHUNK_SIZE) : 1;
+        if (chunks <= 1) {
+            return Collections.singletonList(parse(content, 0, length, schema,
+                    valuePooling, positional, false));
+        }
+
+        List<ForkJoinTask<DataEntries>> tasks =
+                new ArrayList<ForkJoinTask<DataEntries>>(chunks);
+        int from = 0;
+        for (int i = 1; i <= chunks && from < length; i++) {
+            int to = i == chunks ? length : (int) ((long) length * i / chunks);
+            while (to < length && content[to - 1] != '\n') {
+                to++;
+            }
+            if (to > from) {
+                int start = from;
+                int end = to;
+                boolean first = from == 0 && positional;
+                tasks.add(ForkJoinPool.commonPool()
+                        .submit(() -> parse(content, start, end, schema,
+                                valuePooling, first, true)));
+            }
+            from = to;
+        }
+
+        List<DataEntries> entries = new ArrayList<DataEntries>(tasks.size());
+        for (ForkJoinTask<DataEntries> task : tasks) {
+            entries.add(task.join());
+        }
+        return entries;
+    }
+
+    /**
+     * Parse the lines of a range of a file content. The range must start and
+     * end at line boundaries. Without schema, all fields are parsed as unknown
+     * fields.
+     * <p>
+     * When positional, each line is first compared with the name of the next
+     * slot, which avoids looking up the name. At the first line listing
+     * another field, parsing falls back to looking up each name.
+     * <p>
+     * A field listed before in the range is added to the problems.
+     *
+     * @param content
+     *            the file content
+     * @param from
+     *            the start of the range
+     * @param to
+     *            the end of the range
+     * @param schema
+     *            the schema of the data class, or <code>null</code>
+     * @param valuePooling
+     *            <code>true</code> to share unknown field names and short
+     *            values through the string pool
+     * @param positional
+     *            <code>true</code> if the fields are likely listed in slot
+     *            order from the start of the range
+     *
+     * @return the entries
+     */
+    static DataEntries parse(byte[] content, int from, int to,
+            DataSchema schema, boolean valuePooling, boolean positional) {
+        return parse(content, from, to, schema, valuePooling, positional,
+                false);
+    }
+
+    /**
+     * Parse the lines of a range of a file content.
+     *
+     * @param content
+     *            the file content
+     * @param from
+     *            the start of the range
+     * @param to
+     *            the end of the range
+     * @param schema
+     *            the schema of the data class, or <code>null</code>
+     * @param valuePooling
+     *            <code>true</code> to share unknown field names and short
+     *            values through the string pool
+     * @param positional
+     *            <code>true</code> if the fields are likely listed in slot
+     *            order from the start of the range
+     * @param chunk
+     *            <code>true</code> if the range is one of several chunks,
+     *            so the line number of the first listing of each field is
+     *            kept
+     *
+     * @return the entries
+     */
+    private static DataEntries parse(byte[] content, int from, int to,
+            DataSchema schema, boolean valuePooling, boolean positional,
+            boolean chunk) {
+        DataEntries entries = new DataEntries(valuePooling);
+        if (positional && schema != null) {
+            entries.expected = 0;
+        }
+        if (schema != null) {
+            entries.listed = new int[schema.size()];
+        }
+        if (chunk) {
+            entries.unknownLines = new int[4];
+        }
+        entries.from = from;
+        entries.to = to;
+        String text = new String(content, from, to - from, UTF_8);
+
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            int end = start;
+            char c = 0;
+            while (end < length && (c = text.charAt(end)) != '\n'
+                    && c != '\r') {
+                end++;
+            }
+            entries.lines++;
+            entries.parseLine(text, start, end, schema);
+            start = end + 1;
+            if (c == '\r' && start < length && text.charAt(start) == '\n') {
+                start++;
+            }
+        }
+        if (!chunk) {
+            entries.listed = null;
+        }
+        return entries;
+    }
+
+    /**
+     * Apply the entries to a data instance.
+     *
+     * @param target
+     *            the data instance
+     * @param schema
+     *            the schema of the data class
+     * @param unknownFields
+     *            <code>true</code> to apply the unknown fields, or
+     *            <code>false</code> to skip them
+     */
+    void apply(Data target, DataSchema schema, boolean unknownFields) {
+        for (int i = 0; i < count; i++) {
+            Field field = schema.field(slots[i]);
+            long value = values[i];
+            try {
+                switch (schema.type(slots[i])) {
+                case DataSchema.BYTE:
+                    field.setByte(target, (byte) value);
+                    break;
+                case DataSchema.SHORT:
+                    field.setShort(target, (short) value);
+                    break;
+                case DataSchema.INT:
+                    field.setInt(target, (int) value);
+                    break;
+                case DataSchema.LONG:
+                    field.setLong(target, value);
+                    break;
+                case DataSchema.FLOAT:
+                    field.setFloat(target, Float.intBitsToFloat((int) value));
+                    break;
+                case DataSchema.DOUBLE:
+                    field.setDouble(target, Double.longBitsToDouble(value));
+                    break;
+                case DataSchema.BOOLEAN:
+                    field.setBoolean(target, value != 0);
+                    break;
+                default:
+                    field.set(target, strings[i]);
+                }
+            } catch (IllegalAccessException e) {
+                // Should not happen
+            }
+        }
+
+        if (unknownFields) {
+            unknown.forEach(target::putUnknownField);
+        }
+    }
+
+    /**
+     * Put the unknown fields into a map. The last value listed of each field
+     * is kept, so entries put in file order let later duplicates take
+     * precedence.
+     *
+     * @param target
+     *            the map
+     */
+    void putUnknown(Map<String, String> target) {
+        target.putAll(unknown);
+    }
+
+    /**
+     * Add the names of the unknown fields to a set.
+     *
+     * @param names
+     *            the set
+     */
+    void addUnknownNames(Set<String> names) {
+        names.addAll(unknown.keySet());
+    }
+
+    /**
+     * Returns the slot of a parsed field value.
+     *
+     * @param index
+     *            the index of the field value, in file order
+     *
+     * @return the slot
+     */
+    int slotAt(int index) {
+        return slots[index];
+    }
+
+    /**
+     * Returns the number of parsed field values.
+     *
+     * @return the number of field values
+     */
+    int fields() {
+        return count;
+    }
+
+    /**
+     * Returns the number of unknown fields, including duplicates.
+     *
+     * @return the number of unknown fields
+     */
+    int unknownFields() {
+        return unknownCount;
+    }
+
+    /**
+     * Returns the problems of lines which could not be parsed, and of fields
+     * listed before in the same range. Line numbers count from the start of
+     * the range.
+     *
+     * @return the problems, in file order
+     */
+    List<DataDiagnostics.Problem> problems() {
+        return problems;
+    }
+
+    /**
+     * Returns the problems of the entries parsed from a file, including the
+     * fields listed before in another chunk. The lines of those fields are
+     * only read from the content once found.
+     *
+     * @param entries
+     *            the entries parsed from a file, in file order
+     * @param content
+     *            the file content
+     *
+     * @return the problems, in file order
+     */
+    static List<DataDiagnostics.Problem> problems(List<DataEntries> entries,
+            byte[] content) {
+        if (entries.size() == 1) {
+            return new ArrayList<DataDiagnostics.Problem>(
+                    entries.get(0).problems);
+        }
+
+        List<DataDiagnostics.Problem> found =
+                new ArrayList<DataDiagnostics.Problem>();
+        boolean[] slots = null;
+        Set<String> names = new HashSet<String>();
+        int offset = 0;
+        for (DataEntries part : entries) {
+            if (slots == null && part.listed != null) {
+                slots = new boolean[part.listed.length];
+            }
+            int[] duplicates = part.duplicates(slots, names);
+
+            int i = 0;
+            int j = 0;
+            int position = part.from;
+            int line = 1;
+            while (i < part.problems.size() || j < duplicates.length) {
+                if (j == duplicates.length || i < part.problems.size()
+                        && part.problems.get(i).getLineNumber()
+                                < duplicates[j]) {
+                    DataDiagnostics.Problem problem = part.problems.get(i++);
+                    found.add(new DataDiagnostics.Problem(problem.getKind(),
+                            problem.getName(), problem.getLine(),
+                            problem.getLineNumber() + offset));
+                } else {
+                    int number = duplicates[j++];
+                    for (; line < number; line++) {
+                        position = nextLine(content, position, part.to);
+                    }
+                    int end = position;
+                    while (end < part.to && content[end] != '\n'
+                            && content[end] != '\r') {
+                        end++;
+                    }
+                    String text = new String(content, position,
+                            end - position, UTF_8);
+                    found.add(new DataDiagnostics.Problem(
+                            DataDiagnostics.Kind.DUPLICATE_KEY,
+                            text.substring(0, text.indexOf('=')), text,
+                            number + offset));
+                }
+            }
+            offset += part.lines;
+        }
+        return found;
+    }
+
+    /**
+     * Returns the line numbers of the fields first listed in this chunk which
+     * were listed before in another chunk, and marks the other fields as
+     * listed.
+     *
+     * @param slots
+     *            the slots listed in the chunks before, or <code>null</code>
+     *            without schema
+     * @param names
+     *            the unknown fields listed in the chunks before
+     *
+     * @return the line numbers, in file order
+     */
+    private int[] duplicates(boolean[] slots, Set<String> names) {
+        int size = listed != null ? listed.length : 0;
+        int[] numbers = new int[size + unknown.size()];
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (listed[slot] != 0) {
+                if (slots[slot]) {
+                    numbers[count++] = listed[slot];
+                } else {
+                    slots[slot] = true;
+                }
+            }
+        }
+        int index = 0;
+        for (String name : unknown.keySet()) {
+            if (!names.add(name)) {
+                numbers[count++] = unknownLines[index];
+            }
+            index++;
+        }
+
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Returns the start of the line following a line.
+     *
+     * @param content
+     *            the file content
+     * @param position
+     *            the start of the line
+     * @param to
+     *            the end of the range holding the line
+     *
+     * @return the start of the next line
+     */
+    private static int nextLine(byte[] content, int position, int to) {
+        while (position < to && content[position] != '\n'
+                && content[position] != '\r') {
+            position++;
+        }
+        if (position < to && content[position++] == '\r' && position < to
+                && content[position] == '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Parse a single line.
+     *
+     * @param text
+     *            the text holding the line
+     * @param start
+     *            the start of the line
+     * @param end
+     *            the end of the line
+     * @param schema
+     *            the schema of the data class
+     */
+    private void parseLine(String text, int start, int end,
+            DataSchema schema) {
+        if (expected >= 0) {
+            if (expected < schema.size()) {
+                String name = schema.name(expected);
+                int separator = start + name.length();
+                if (separator < end && text.charAt(separator) == '='
+                        && text.regionMatches(start, name, 0, name.length())) {
+                    int slot = expected++;
+                    if (parseValue(slot, name,
+                            text.substring(separator + 1, end), schema)) {
+                        list(slot, name, text, start, end);
+                    }
+                    return;
+                }
+            }
+            if (start == end || text.charAt(start) != '#'
+                    || text.lastIndexOf('=', end - 1) >= start) {
+                expected = -1;
+            }
+        }
+
+        int separator = text.indexOf('=', start);
+        if (separator < 0 || separator >= end) {
+            if (start < end && text.charAt(start) != '#') {
+                fail(DataDiagnostics.Kind.MALFORMED_LINE, null,
+                        text.substring(start, end));
+            }
+            return;
+        }
+
+        String name = text.substring(start, separator);
+        String value = text.substring(separator + 1, end);
+        int slot = schema != null ? schema.slotOf(name) : -1;
+        if (slot < 0) {
+            listUnknown(name, value, text, start, end);
+        } else if (parseValue(slot, name, value, schema)) {
+            list(slot, name, text, start, end);
+        }
+    }
+
+    /**
+     * Record that a line listed a field, adding a problem if the field was
+     * listed before in the range.
+     *
+     * @param slot
+     *            the slot of the field
+     * @param name
+     *            the field name
+     * @param text
+     *            the text holding the line
+     * @param start
+     *            the start of the line
+     * @param end
+     *            the end of the line
+     */
+    private void list(int slot, String name, String text, int start,
+            int end) {
+        if (listed[slot] != 0) {
+            fail(DataDiagnostics.Kind.DUPLICATE_KEY, name,
+                    text.substring(start, end));
+        } else {
+            listed[slot] = lines;
+        }
+    }
+
+    /**
+     * Add an unknown field listed by a line, adding a problem if the field
+     * was listed before in the range.
+     *
+     * @param name
+     *            the field name
+     * @param value
+     *            the field value
+     * @param text
+     *            the text holding the line
+     * @param start
+     *            the start of the line
+     * @param end
+     *            the end of the line
+     */
+    private void listUnknown(String name, String value, String text,
+            int start, int end) {
+        if (addUnknown(name, value)) {
+            fail(DataDiagnostics.Kind.DUPLICATE_KEY, name,
+                    text.substring(start, end));
+        } else if (unknownLines != null) {
+            int index = unknown.size() - 1;
+            if (index == unknownLines.length) {
+                unknownLines = Arrays.copyOf(unknownLines, index * 2);
+            }
+            unknownLines[index] = lines;
+        }
+    }
+
+    /**
+     * Parse a single field. A value which is not valid is added to the
+     * problems.
+     *
+     * @param name
+     *            the field name
+     * @param value
+     *            the field value
+     * @param schema
+     *            the schema of the data class, or <code>null</code>
+     *
+     * @return <code>true</code> if parsed, or <code>false</code> if the value
+     *         is not valid
+     */
+    boolean parse(String name, String value, DataSchema schema) {
+        int slot = schema != null ? schema.slotOf(name) : -1;
+        if (slot < 0) {
+            addUnknown(name, value);
+            return true;
+        }
+        return parseValue(slot, name, value, schema);
+    }
+
+    /**
+     * Parse a single field value without throwing exceptions. A value which
+     * is not valid is added to the problems.
+     *
+     * @param slot
+     *            the slot of the field
+     * @param name
+     *            the field name
+     * @param value
+     *            the field value
+     * @param schema
+     *            the schema of the data class
+     *
+     * @return <code>true</code> if parsed, or <code>false</code> if the value
+     *         is not valid
+     */
+    private boolean parseValue(int slot, String name, String value,
+            DataSchema schema) {
+        DataDiagnostics.Kind problem = null;
+        switch (schema.type(slot)) {
+        case DataSchema.BYTE:
+            problem = parseInteger(value, Byte.MIN_VALUE, Byte.MAX_VALUE);
+            break;
+        case DataSchema.SHORT:
+            problem = parseInteger(value, Short.MIN_VALUE, Short.MAX_VALUE);
+            break;
+        case DataSchema.INT:
+            problem = parseInteger(value, Integer.MIN_VALUE,
+                    Integer.MAX_VALUE);
+            break;
+        case DataSchema.LONG:
+            problem = parseInteger(value, Long.MIN_VALUE, Long.MAX_VALUE);
+            break;
+        case DataSchema.FLOAT:
+            if (!DecimalCodec.isNumber(value)) {
+                problem = DataDiagnostics.Kind.UNPARSABLE_VALUE;
+            } else {
+                float single = DecimalCodec.parseFloat(value);
+                if (Float.isInfinite(single) && !value.contains("Infinity")) {
+                    problem = DataDiagnostics.Kind.OUT_OF_RANGE;
+                }
+                parsed = Float.floatToRawIntBits(single);
+            }
+            break;
+        case DataSchema.DOUBLE:
+            if (!DecimalCodec.isNumber(value)) {
+                problem = DataDiagnostics.Kind.UNPARSABLE_VALUE;
+            } else {
+                double real = DecimalCodec.parseDouble(value);
+                if (Double.isInfinite(real) && !value.contains("Infinity")) {
+                    problem = DataDiagnostics.Kind.OUT_OF_RANGE;
+                }
+                parsed = Double.doubleToRawLongBits(real);
+            }
+            break;
+        case DataSchema.BOOLEAN:
+            if (value.equalsIgnoreCase("true")) {
+                parsed = 1;
+            } else if (value.equalsIgnoreCase("false")) {
+                parsed = 0;
+            } else {
+                problem = DataDiagnostics.Kind.UNPARSABLE_VALUE;
+            }
+            break;
+        default:
+            add(slot, 0, pooled(value.replace("\\n", "\n")));
+            return true;
+        }
+
+        if (problem != null) {
+            fail(problem, name, name + '=' + value);
+            return false;
+        }
+        add(slot, parsed, null);
+        return true;
+    }
+
+    /**
+     * Parse a decimal integer without throwing exceptions, accepting the same
+     * text as <code>Long.parseLong</code>. The value is kept as the last
+     * parsed primitive value.
+     *
+     * @param text
+     *            the text
+     * @param min
+     *            the minimum value of the field type
+     * @param max
+     *            the maximum value of the field type
+     *
+     * @return the kind of problem, or <code>null</code> if parsed
+     */
+    private DataDiagnostics.Kind parseInteger(String text, long min,
+            long max) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+        if (i == length) {
+            return DataDiagnostics.Kind.UNPARSABLE_VALUE;
+        }
+
+        // Accumulate negatively, as the negative range is the larger one
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        boolean overflow = false;
+        for (; i < length; i++) {
+            int digit = Character.digit(text.charAt(i), 10);
+            if (digit < 0) {
+                return DataDiagnostics.Kind.UNPARSABLE_VALUE;
+            }
+            if (result < limit / 10 || result * 10 < limit + digit) {
+                overflow = true;
+            } else {
+                result = result * 10 - digit;
+            }
+        }
+
+        if (overflow) {
+            return DataDiagnostics.Kind.OUT_OF_RANGE;
+        }
+        result = negative ? result : -result;
+        if (result < min || result > max) {
+            return DataDiagnostics.Kind.OUT_OF_RANGE;
+        }
+        parsed = result;
+        return null;
+    }
+
+    /**
+     * Add a parsed field value.
+     *
+     * @param slot
+     *            the slot of the field
+     * @param value
+     *            the primitive value as raw bits
+     * @param string
+     *            the <code>String</code> value, or <code>null</code>
+     */
+    private void add(int slot, long value, String string) {
+        if (count == slots.length) {
+            slots = Arrays.copyOf(slots, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+            strings = Arrays.copyOf(strings, count * 2);
+        }
+        slots[count] = slot;
+        values[count] = value;
+        strings[count] = string;
+        count++;
+    }
+
+    /**
+     * Add an unknown field. A field added before takes the new value.
+     *
+     * @param name
+     *            the field name
+     * @param value
+     *            the field value
+     *
+     * @return <code>true</code> if the field was added before, or
+     *         <code>false</code> otherwise
+     */
+    private boolean addUnknown(String name, String value) {
+        unknownCount++;
+        String key = isValuePooling ? StringPool.SHARED.canonical(name) : name;
+        return unknown.put(key, pooled(value)) != null;
+    }
+
+    /**
+     * Returns the canonical instance of a value if values are pooled and the
+     * value is short.
+     *
+     * @param value
+     *            the value
+     *
+     * @return the canonical instance, or the value itself
+     */
+    private String pooled(String value) {
+        return isValuePooling && value.length() <= StringPool.MAX_VALUE_LENGTH
+                ? StringPool.SHARED.canonical(value) : value;
+    }
+
+    /**
+     * Add a problem of the line being parsed.
+     *
+     * @param kind
+     *            the kind of problem
+     * @param name
+     *            the field name, or <code>null</code> for a malformed line
+     * @param line
+     *            the line
+     */
+    private void fail(DataDiagnostics.Kind kind, String name, String line) {
+        if (problems.isEmpty()) {
+            problems = new ArrayList<DataDiagnostics.Problem>();
+        }
+        problems.add(new DataDiagnostics.Problem(kind, name, line, lines));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.File;
+
+/**
+ * This class emits diagnostic events of loading and saving data. This
+ * implementation does nothing; on Java 11 and higher it is replaced by an
+ * implementation emitting Java Flight Recorder events.
+ *
+ * @author Sander Veldhuis
+ */
+final class DataEvents {
+
+    /**
+     * Prevents instantiation.
+     */
+    private DataEvents() {
+    }
+
+    /**
+     * Begin a load event.
+     *
+     * @return the event, or <code>null</code> if not recording
+     */
+    static Object beginLoad() {
+        return null;
+    }
+
+    /**
+     * Commit a load event.
+     *
+     * @param event
+     *            the event returned by {@link #beginLoad()}
+     * @param type
+     *            the class of the data
+     * @param file
+     *            the file of the data
+     * @param bytes
+     *            the number of bytes read
+     * @param fields
+     *            the number of fields read
+     * @param unknownFields
+     *            the number of unknown fields read
+     * @param parseFailures
+     *            the number of lines which could not be parsed
+     */
+    static void commitLoad(Object event, Class<?> type, File file, long bytes,
+            int fields, int unknownFields, int parseFailures) {
+    }
+
+    /**
+     * Begin a save event.
+     *
+     * @return the event, or <code>null</code> if not recording
+     */
+    static Object beginSave() {
+        return null;
+    }
+
+    /**
+     * Commit a save event.
+     *
+     * @param event
+     *            the event returned by {@link #beginSave()}
+     * @param type
+     *            the class of the data
+     * @param file
+     *            the file of the data
+     * @param bytes
+     *            the number of bytes written
+     * @param fields
+     *            the number of fields written
+     * @param unknownFields
+     *            the number of unknown fields written
+     */
+    static void commitSave(Object event, Class<?> type, File file, long bytes,
+            int fields, int unknownFields) {
+    }
+
+    /**
+     * Emit a parse error event.
+     *
+     * @param type
+     *            the class of the data
+     * @param file
+     *            the file of the data
+     * @param line
+     *            the line which could not be parsed
+     */
+    static void parseError(Class<?> type, File file, String line) {
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents an ordered change feed, a local log file to which the
+ * changes of data are appended as they are saved. Any number of processes may
+ * append to the same feed, each opening it once, and each change gets the next
+ * sequence number. Other processes tail the feed with a
+ * {@link DataFeedReader}.
+ * <p>
+ * Each change is a record of a length, a body, and a checksum of the body. The
+ * body holds the sequence number, the generation of the data file, whether
+ * all values are included, the path of the data file, and the field values.
+ * All numbers are big-endian and all text is UTF-8.
+ *
+ * @author Sander Veldhuis
+ */
+public final class DataFeed implements Closeable {
+
+    /** The character set of all text. */
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The flag of a record holding all values. */
+    static final int COMPLETE = 1;
+
+    /** The file of the feed. */
+    private final File file;
+
+    /** The channel of the feed. */
+    private final FileChannel channel;
+
+    /** The end of the last known record. */
+    private long end;
+
+    /** The sequence number of the last known record. */
+    private long sequence;
+
+    /**
+     * Constructs a new feed, opening or creating its file.
+     *
+     * @param file
+     *            the file of the feed
+     *
+     * @throws IOException
+     *             if opening the file failed
+     */
+    public DataFeed(File file) throws IOException {
+        this.file = file;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Returns the file of this feed.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Close the feed.
+     *
+     * @throws IOException
+     *             if closing failed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Append a change to the feed.
+     *
+     * @param dataFile
+     *            the data file
+     * @param generation
+     *            the generation of the data file
+     * @param complete
+     *            <code>true</code> if all field values are included, or
+     *            <code>false</code> if only the changed values
+     * @param values
+     *            the field values, <code>null</code> for removed unknown
+     *            fields
+     *
+     * @return the sequence number of the change
+     *
+     * @throws IOException
+     *             if appending failed
+     */
+    synchronized long append(File dataFile, long generation, boolean complete,
+            Map<String, String> values) throws IOException {
+        try (FileLock lock = channel.lock()) {
+            long size = channel.size();
+            if (size != end) {
+                scan(size);
+            }
+
+            byte[] record = encode(sequence + 1, generation, complete,
+                    dataFile.getAbsolutePath(), values);
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            long position = end;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            end = position;
+            return ++sequence;
+        }
+    }
+
+    /**
+     * Scan the records appended by others since the last known record,
+     * truncating an incomplete record left by a failed writer.
+     *
+     * @param size
+     *            the size of the feed
+     *
+     * @throws IOException
+     *             if reading or truncating failed
+     */
+    private void scan(long size) throws IOException {
+        if (size < end) {
+            end = 0;
+            sequence = 0;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while (end < size) {
+            ((Buffer) header).clear();
+            read(header, end);
+            int length = header.getInt(0);
+            if (length < 8 || end + 8 + length > size) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(length + 4);
+            read(body, end + 4);
+            CRC32 checksum = new CRC32();
+            checksum.update(body.array(), 0, length);
+            if (body.getInt(length) != (int) checksum.getValue()) {
+                break;
+            }
+            sequence = body.getLong(0);
+            end += 8 + length;
+        }
+        if (end < size) {
+            channel.truncate(end);
+        }
+    }
+
+    /**
+     * Read bytes from the feed until the buffer is full or the end is
+     * reached.
+     *
+     * @param buffer
+     *            the buffer
+     * @param position
+     *            the position in the feed
+     *
+     * @throws IOException
+     *             if reading failed
+     */
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Encode a record.
+     *
+     * @param sequence
+     *            the sequence number
+     * @param generation
+     *            the generation of the data file
+     * @param complete
+     *            <code>true</code> if all field values are included
+     * @param path
+     *            the path of the data file
+     * @param values
+     *            the field values
+     *
+     * @return the record
+     */
+    private static byte[] encode(long sequence, long generation,
+            boolean complete, String path, Map<String, String> values) {
+        byte[] pathBytes = path.getBytes(UTF8);
+        byte[][] names = new byte[values.size()][];
+        byte[][] texts = new byte[values.size()][];
+        int length = 8 + 8 + 1 + 4 + pathBytes.length + 4;
+        int count = 0;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            names[count] = entry.getKey().getBytes(UTF8);
+            texts[count] = entry.getValue() == null ? null
+                    : entry.getValue().getBytes(UTF8);
+            length += 4 + names[count].length + 4
+                    + (texts[count] == null ? 0 : texts[count].length);
+            count++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length + 4);
+        buffer.putInt(length);
+        buffer.putLong(sequence);
+        buffer.putLong(generation);
+        buffer.put((byte) (complete ? COMPLETE : 0));
+        buffer.putInt(pathBytes.length);
+        buffer.put(pathBytes);
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(names[i].length);
+            buffer.put(names[i]);
+            if (texts[i] == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(texts[i].length);
+                buffer.put(texts[i]);
+            }
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 4, length);
+        buffer.putInt((int) checksum.getValue());
+        return buffer.array();
+    }
+}
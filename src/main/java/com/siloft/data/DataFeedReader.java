@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents a reader tailing a change feed from an offset. The
+ * unread part of the feed is mapped into memory, and mapped again only once
+ * the feed has grown beyond it. A reader is used by one thread.
+ *
+ * @author Sander Veldhuis
+ */
+public final class DataFeedReader implements Closeable {
+
+    /** The channel of the feed. */
+    private final FileChannel channel;
+
+    /** The mapped part of the feed, or <code>null</code>. */
+    private MappedByteBuffer mapped;
+
+    /** The offset of the mapped part in the feed. */
+    private long mappedOffset;
+
+    /** The offset of the next change. */
+    private long offset;
+
+    /**
+     * Constructs a new reader tailing a feed from its start.
+     *
+     * @param file
+     *            the file of the feed
+     *
+     * @throws IOException
+     *             if opening the file failed
+     */
+    public DataFeedReader(File file) throws IOException {
+        this(file, 0);
+    }
+
+    /**
+     * Constructs a new reader tailing a feed from an offset, as returned by
+     * {@link #getOffset()} or {@link DataChange#getOffset()} earlier.
+     *
+     * @param file
+     *            the file of the feed
+     * @param offset
+     *            the offset of the next change
+     *
+     * @throws IOException
+     *             if opening the file failed
+     */
+    public DataFeedReader(File file, long offset) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the offset of the next change.
+     *
+     * @return the offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the next change, if it was appended already.
+     *
+     * @return the change, or <code>null</code> if there is none yet
+     *
+     * @throws IOException
+     *             if reading the feed failed
+     */
+    public DataChange poll() throws IOException {
+        ByteBuffer buffer = map();
+        if (buffer == null) {
+            return null;
+        }
+
+        int start = (int) (offset - mappedOffset);
+        if (buffer.limit() - start < 4) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        if (length < 8 || buffer.limit() - start - 8 < length) {
+            return null;
+        }
+
+        byte[] body = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        ((Buffer) slice).position(start + 4);
+        slice.get(body);
+        CRC32 checksum = new CRC32();
+        checksum.update(body, 0, length);
+        if (slice.getInt() != (int) checksum.getValue()) {
+            return null;
+        }
+
+        DataChange change = decode(ByteBuffer.wrap(body),
+                offset + 8 + length);
+        offset = change.getOffset();
+        return change;
+    }
+
+    /**
+     * Close the reader.
+     *
+     * @throws IOException
+     *             if closing failed
+     */
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    /**
+     * Map the feed from the offset of the next change, if it grew beyond the
+     * mapped part or was truncated.
+     *
+     * @return the mapped part, or <code>null</code> if the feed holds no
+     *         bytes beyond the offset
+     *
+     * @throws IOException
+     *             if mapping failed
+     */
+    private ByteBuffer map() throws IOException {
+        long size = channel.size();
+        long mappedEnd = mapped == null ? -1 : mappedOffset + mapped.limit();
+        if (size != mappedEnd || offset < mappedOffset) {
+            mapped = null;
+            if (size <= offset) {
+                return null;
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(size - offset, Integer.MAX_VALUE));
+            mappedOffset = offset;
+        }
+        return mapped;
+    }
+
+    /**
+     * Decode the body of a record.
+     *
+     * @param body
+     *            the body
+     * @param end
+     *            the offset in the feed following the record
+     *
+     * @return the change
+     */
+    private static DataChange decode(ByteBuffer body, long end) {
+        long sequence = body.getLong();
+        long generation = body.getLong();
+        boolean complete = (body.get() & DataFeed.COMPLETE) != 0;
+        String path = text(body, body.getInt());
+        int count = body.getInt();
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (int i = 0; i < count; i++) {
+            String name = text(body, body.getInt());
+            int length = body.getInt();
+            values.put(name, length < 0 ? null : text(body, length));
+        }
+        return new DataChange(sequence, end, new File(path), generation,
+                complete, values);
+    }
+
+    /**
+     * Decode UTF-8 text at the position of a buffer, advancing it.
+     *
+     * @param buffer
+     *            the buffer
+     * @param length
+     *            the length of the text in bytes
+     *
+     * @return the text
+     */
+    private static String text(ByteBuffer buffer, int length) {
+        String text = new String(buffer.array(), buffer.position(), length,
+                DataFeed.UTF8);
+        ((Buffer) buffer).position(buffer.position() + length);
+        return text;
+    }
+}
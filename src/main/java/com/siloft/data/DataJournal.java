@@ -0,0 +1,586 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents an intent journal for committing several data
+ * atomically. A transaction first appends the new content of all its files to
+ * the journal as one record and forces it to disk, then replaces the files.
+ * Transactions committed concurrently by different threads share a single
+ * force of the journal (group commit).
+ * <p>
+ * When opened, the journal replays the records of transactions of which not
+ * all files were replaced, as after a crash. Whenever no transaction is in
+ * progress, and when closed, the replaced files are forced to disk and the
+ * journal is emptied, so completed transactions are never replayed. Only the
+ * records of transactions which failed while replacing their files are kept,
+ * to be replayed when the journal is opened again.
+ * <p>
+ * The journal itself is kept in the file system, while the files of the data
+ * are replaced in the {@link DataStorage} of the journal. Only data of that
+ * storage can be committed through the journal.
+ *
+ * @author Sander Veldhuis
+ */
+public final class DataJournal implements Closeable {
+
+    /**
+     * This class represents a record waiting to be appended to the journal.
+     */
+    private static final class Pending {
+
+        /** The record. */
+        private final byte[] record;
+
+        /** Indicates whether the record was appended or failed. */
+        private boolean isDone;
+
+        /** The failure, or <code>null</code> if appended. */
+        private IOException failure;
+
+        /**
+         * Constructs a new pending record.
+         *
+         * @param record
+         *            the record
+         */
+        Pending(byte[] record) {
+            this.record = record;
+        }
+    }
+
+    /** The magic number starting each record. */
+    private static final int MAGIC = 0x53445458;
+
+    /** The character set of the file paths. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The file of the journal. */
+    private final File file;
+
+    /** The channel of the journal. */
+    private final FileChannel channel;
+
+    /** The lock on the journal, held while open. */
+    private final FileLock journalLock;
+
+    /** The storage of the files of the data. */
+    private final DataStorage storage;
+
+    /** The records waiting to be appended. */
+    private final List<Pending> queue = new ArrayList<Pending>();
+
+    /** The files replaced since the journal was last emptied. */
+    private final Set<File> replaced = new LinkedHashSet<File>();
+
+    /** Indicates whether a thread is appending records. */
+    private boolean isAppending;
+
+    /** The number of transactions appended but not yet completed. */
+    private int inProgress;
+
+    /** The records of transactions which failed after they were appended. */
+    private final List<byte[]> failed = new ArrayList<byte[]>();
+
+    /**
+     * Constructs a new journal, opening or creating its file and replaying
+     * the transactions which were not completed. A journal can be open once
+     * at a time.
+     *
+     * @param file
+     *            the file of the journal
+     *
+     * @throws IOException
+     *             if the journal is in use, or opening or replaying failed
+     */
+    public DataJournal(File file) throws IOException {
+        this(file, DataStorage.FILE_SYSTEM);
+    }
+
+    /**
+     * Constructs a new journal for data kept in a storage, opening or
+     * creating its file and replaying the transactions which were not
+     * completed into the storage.
+     *
+     * @param file
+     *            the file of the journal
+     * @param storage
+     *            the storage of the files of the data, or <code>null</code>
+     *            for the file system
+     *
+     * @throws IOException
+     *             if the journal is in use, or opening or replaying failed
+     */
+    public DataJournal(File file, DataStorage storage) throws IOException {
+        this.file = file;
+        this.storage = storage == null ? DataStorage.FILE_SYSTEM : storage;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            journalLock = channel.tryLock();
+            if (journalLock == null) {
+                throw new IOException("Journal is in use: " + file);
+            }
+            replay();
+        } catch (OverlappingFileLockException e) {
+            channel.close();
+            throw new IOException("Journal is in use: " + file, e);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Begin a new transaction in this journal.
+     *
+     * @return the transaction
+     */
+    public DataTransaction begin() {
+        return new DataTransaction(this);
+    }
+
+    /**
+     * Returns the file of this journal.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the storage of the files of the data committed through this
+     * journal.
+     *
+     * @return the storage
+     */
+    public DataStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Close the journal.
+     *
+     * @throws IOException
+     *             if closing failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (this) {
+                if (inProgress == 0 && !isAppending && channel.size() > 0) {
+                    checkpoint();
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Release the lock on the journal and close its channel.
+     *
+     * @throws IOException
+     *             if closing failed
+     */
+    private void release() throws IOException {
+        try {
+            journalLock.release();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Append a record of new file contents and force it to disk, together
+     * with the records of concurrent transactions. The transaction must be
+     * completed afterwards, whether it succeeded or not.
+     *
+     * @param files
+     *            the files
+     * @param stamps
+     *            the generations stamped in the new contents
+     * @param contents
+     *            the new contents
+     *
+     * @return the record, to pass on completion
+     *
+     * @throws IOException
+     *             if appending or forcing failed
+     */
+    byte[] append(File[] files, long[] stamps, byte[][] contents)
+            throws IOException {
+        Pending pending = new Pending(encode(files, stamps, contents));
+        List<Pending> batch;
+        boolean interrupted = false;
+        synchronized (this) {
+            queue.add(pending);
+            while (isAppending && !pending.isDone) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (pending.isDone) {
+                batch = null;
+            } else {
+                isAppending = true;
+                batch = new ArrayList<Pending>(queue);
+                queue.clear();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (batch != null) {
+            IOException failure = write(batch);
+            synchronized (this) {
+                for (Pending appended : batch) {
+                    appended.isDone = true;
+                    appended.failure = failure;
+                    if (failure == null) {
+                        inProgress++;
+                    }
+                }
+                isAppending = false;
+                notifyAll();
+            }
+        }
+        if (pending.failure != null) {
+            throw pending.failure;
+        }
+        return pending.record;
+    }
+
+    /**
+     * Complete a transaction appended to the journal, emptying the journal if
+     * no transaction is in progress anymore. The record of a transaction
+     * which failed is kept in the journal.
+     *
+     * @param record
+     *            the record returned by {@link #append}
+     * @param files
+     *            the files of the transaction
+     * @param succeeded
+     *            <code>true</code> if all files were replaced, or
+     *            <code>false</code> otherwise
+     *
+     * @throws IOException
+     *             if emptying the journal failed
+     */
+    synchronized void complete(byte[] record, File[] files,
+            boolean succeeded) throws IOException {
+        inProgress--;
+        for (File replacedFile : files) {
+            replaced.add(replacedFile.getAbsoluteFile());
+        }
+        if (!succeeded) {
+            failed.add(record);
+        }
+        if (inProgress == 0 && !isAppending) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Write a batch of records at the end of the journal and force it to
+     * disk. On failure, the journal is truncated to its previous size.
+     *
+     * @param batch
+     *            the records
+     *
+     * @return the failure, or <code>null</code> if written
+     */
+    private IOException write(List<Pending> batch) {
+        long size = -1;
+        try {
+            size = channel.size();
+            long position = size;
+            for (Pending pending : batch) {
+                ByteBuffer buffer = ByteBuffer.wrap(pending.record);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            channel.force(false);
+            return null;
+        } catch (IOException e) {
+            if (size >= 0) {
+                try {
+                    channel.truncate(size);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            return e;
+        }
+    }
+
+    /**
+     * Force all replaced files to disk and empty the journal, keeping only the
+     * records of failed transactions. Files are only forced when kept in the
+     * file system.
+     *
+     * @throws IOException
+     *             if forcing or emptying failed
+     */
+    private void checkpoint() throws IOException {
+        if (storage == DataStorage.FILE_SYSTEM) {
+            Set<File> directories = new LinkedHashSet<File>();
+            for (File replacedFile : replaced) {
+                force(replacedFile);
+                directories.add(replacedFile.getParentFile());
+            }
+            for (File directory : directories) {
+                force(directory);
+            }
+        }
+        replaced.clear();
+        channel.truncate(0);
+        long position = 0;
+        for (byte[] record : failed) {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Replay all complete records of the journal, replacing each file of which
+     * the content differs in the storage unless it holds a later generation.
+     * The journal is emptied afterwards.
+     *
+     * @throws IOException
+     *             if replaying failed
+     */
+    private void replay() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal is too large: " + file);
+        }
+
+        ByteBuffer journal = ByteBuffer.allocate((int) size);
+        while (journal.hasRemaining()
+                && channel.read(journal, journal.position()) >= 0) {
+            // Read until full
+        }
+        byte[] content = journal.array();
+
+        Map<File, byte[]> latest = new LinkedHashMap<File, byte[]>();
+        Map<File, Long> stamps = new LinkedHashMap<File, Long>();
+        int position = 0;
+        while (position < content.length) {
+            int end = decode(content, position, latest, stamps);
+            if (end < 0) {
+                break;
+            }
+            position = end;
+        }
+
+        for (Map.Entry<File, byte[]> entry : latest.entrySet()) {
+            File target = entry.getKey();
+            try (Closeable lock = storage.lock(target, false)) {
+                if (restore(target, entry.getValue(), stamps.get(target))) {
+                    replaced.add(target);
+                }
+            }
+        }
+        checkpoint();
+    }
+
+    /**
+     * Replace a file in the storage by the content of a record, unless it
+     * already holds that content or a later generation.
+     *
+     * @param target
+     *            the file
+     * @param content
+     *            the content of the record
+     * @param stamp
+     *            the generation of the record
+     *
+     * @return <code>true</code> if replaced, or <code>false</code> otherwise
+     *
+     * @throws IOException
+     *             if reading or replacing the file failed
+     */
+    private boolean restore(File target, byte[] content, long stamp)
+            throws IOException {
+        if (storage.exists(target)) {
+            byte[] current = storage.read(target);
+            if (Arrays.equals(current, content)
+                    || Data.generationOf(current, current.length) > stamp) {
+                return false;
+            }
+        }
+
+        File temp = new File(target.getPath() + Data.TEMP_SUFFIX);
+        try (WritableByteChannel output = storage.write(temp)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                output.write(buffer);
+            }
+        }
+        storage.rename(temp, target);
+        return true;
+    }
+
+    /**
+     * Encode a record.
+     *
+     * @param files
+     *            the files
+     * @param stamps
+     *            the generations stamped in the new contents
+     * @param contents
+     *            the new contents
+     *
+     * @return the record
+     */
+    private static byte[] encode(File[] files, long[] stamps,
+            byte[][] contents) {
+        byte[][] paths = new byte[files.length][];
+        int length = 8;
+        for (int i = 0; i < files.length; i++) {
+            paths[i] = files[i].getAbsolutePath().getBytes(UTF8);
+            length += 4 + paths[i].length + 8 + 4 + contents[i].length;
+        }
+        length += 8;
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(MAGIC);
+        buffer.putInt(files.length);
+        for (int i = 0; i < files.length; i++) {
+            buffer.putInt(paths[i].length);
+            buffer.put(paths[i]);
+            buffer.putLong(stamps[i]);
+            buffer.putInt(contents[i].length);
+            buffer.put(contents[i]);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, length - 8);
+        buffer.putLong(checksum.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Decode a record, keeping the latest content and generation per file.
+     *
+     * @param content
+     *            the content of the journal
+     * @param start
+     *            the start of the record
+     * @param latest
+     *            the latest content per file
+     * @param stamps
+     *            the latest generation per file
+     *
+     * @return the end of the record, or <code>-1</code> if the record is
+     *         incomplete or corrupt
+     */
+    private static int decode(byte[] content, int start,
+            Map<File, byte[]> latest, Map<File, Long> stamps) {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        ((Buffer) buffer).position(start);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                return -1;
+            }
+            int count = buffer.getInt();
+            if (count < 0) {
+                return -1;
+            }
+            File[] files = new File[Math.min(count, buffer.remaining())];
+            long[] fileStamps = new long[files.length];
+            byte[][] contents = new byte[files.length][];
+            for (int i = 0; i < count; i++) {
+                byte[] path = new byte[buffer.getInt()];
+                buffer.get(path);
+                fileStamps[i] = buffer.getLong();
+                contents[i] = new byte[buffer.getInt()];
+                buffer.get(contents[i]);
+                files[i] = new File(new String(path, UTF8));
+            }
+
+            CRC32 checksum = new CRC32();
+            checksum.update(content, start, buffer.position() - start);
+            if (buffer.getLong() != checksum.getValue()) {
+                return -1;
+            }
+            for (int i = 0; i < count; i++) {
+                latest.put(files[i], contents[i]);
+                stamps.put(files[i], fileStamps[i]);
+            }
+            return buffer.position();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Force a file or directory to disk, where supported.
+     *
+     * @param target
+     *            the file or directory
+     */
+    private static void force(File target) {
+        try (FileChannel forced = FileChannel.open(target.toPath(),
+                StandardOpenOption.READ)) {
+            forced.force(true);
+        } catch (IOException e) {
+            // Not supported, or replaced since
+        }
+    }
+}
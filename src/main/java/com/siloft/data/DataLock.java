@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class represents a lock on a data file, coordinating access between
+ * threads and processes. Between processes a shared or exclusive lock is held
+ * on a lock file next to the data file. Within a process, file locks cannot
+ * overlap, so access to the same file is coordinated by an in-process
+ * read-write lock first, and the threads holding a shared lock share a
+ * single shared file lock. Locks on different data files never contend.
+ *
+ * @author Sander Veldhuis
+ */
+final class DataLock implements Closeable {
+
+    /**
+     * This class represents the in-process lock of a lock file, kept while
+     * referenced.
+     */
+    private static final class Entry {
+
+        /** The in-process lock. */
+        private final ReentrantReadWriteLock lock =
+                new ReentrantReadWriteLock();
+
+        /** The number of locks referencing this entry. */
+        private int references;
+
+        /** The number of shared locks holding the shared file lock. */
+        private int readers;
+
+        /** The channel of the shared file lock, or <code>null</code>. */
+        private FileChannel channel;
+
+        /** The shared file lock, or <code>null</code>. */
+        private FileLock fileLock;
+
+        /**
+         * Acquire the shared file lock, unless already held by another
+         * shared lock of this process.
+         *
+         * @param lockFile
+         *            the lock file
+         *
+         * @throws IOException
+         *             if acquiring the lock failed
+         */
+        private synchronized void acquireShared(File lockFile)
+                throws IOException {
+            if (readers == 0) {
+                channel = open(lockFile);
+                try {
+                    fileLock = channel.lock(0, Long.MAX_VALUE, true);
+                } catch (IOException | RuntimeException e) {
+                    channel.close();
+                    channel = null;
+                    throw e;
+                }
+            }
+            readers++;
+        }
+
+        /**
+         * Release the shared file lock when no other shared lock of this
+         * process holds it.
+         *
+         * @throws IOException
+         *             if releasing the lock failed
+         */
+        private synchronized void releaseShared() throws IOException {
+            if (--readers == 0) {
+                try {
+                    fileLock.release();
+                    channel.close();
+                } finally {
+                    fileLock = null;
+                    channel = null;
+                }
+            }
+        }
+    }
+
+    /** The file name suffix of the lock file. */
+    static final String LOCK_SUFFIX = ".lock";
+
+    /** The in-process locks per lock file path, while referenced. */
+    private static final ConcurrentMap<String, Entry> LOCKS =
+            new ConcurrentHashMap<String, Entry>();
+
+    /** The path of the lock file. */
+    private final String path;
+
+    /** The in-process lock entry. */
+    private final Entry entry;
+
+    /** The held in-process lock. */
+    private final Lock lock;
+
+    /** The channel of the exclusive file lock, or <code>null</code>. */
+    private final FileChannel channel;
+
+    /** The exclusive file lock, or <code>null</code> if shared. */
+    private final FileLock fileLock;
+
+    /**
+     * Constructs a new data lock, blocking until the lock is acquired.
+     *
+     * @param file
+     *            the data file
+     * @param shared
+     *            <code>true</code> for a shared lock, or <code>false</code>
+     *            for an exclusive lock
+     *
+     * @throws IOException
+     *             if acquiring the lock failed
+     */
+    private DataLock(File file, boolean shared) throws IOException {
+        File lockFile = new File(file.getPath() + LOCK_SUFFIX);
+        path = lockFile.getAbsolutePath();
+        entry = LOCKS.compute(path, (key, current) -> {
+            Entry referenced = current == null ? new Entry() : current;
+            referenced.references++;
+            return referenced;
+        });
+        lock = shared ? entry.lock.readLock() : entry.lock.writeLock();
+        try {
+            lock.lock();
+            try {
+                if (shared) {
+                    entry.acquireShared(lockFile);
+                    channel = null;
+                    fileLock = null;
+                } else {
+                    channel = open(lockFile);
+                    try {
+                        fileLock = channel.lock(0, Long.MAX_VALUE, false);
+                    } catch (IOException | RuntimeException e) {
+                        channel.close();
+                        throw e;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                lock.unlock();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            dereference();
+            throw e;
+        }
+    }
+
+    /**
+     * Acquire a shared lock on a data file, as used for reading.
+     *
+     * @param file
+     *            the data file
+     *
+     * @return the lock
+     *
+     * @throws IOException
+     *             if acquiring the lock failed
+     */
+    static DataLock shared(File file) throws IOException {
+        return new DataLock(file, true);
+    }
+
+    /**
+     * Acquire an exclusive lock on a data file, as used for writing.
+     *
+     * @param file
+     *            the data file
+     *
+     * @return the lock
+     *
+     * @throws IOException
+     *             if acquiring the lock failed
+     */
+    static DataLock exclusive(File file) throws IOException {
+        return new DataLock(file, false);
+    }
+
+    /**
+     * Release the lock.
+     *
+     * @throws IOException
+     *             if releasing the lock failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (fileLock == null) {
+                entry.releaseShared();
+            } else {
+                fileLock.release();
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+            dereference();
+        }
+    }
+
+    /**
+     * Drop the reference to the in-process lock entry, removing the entry
+     * when no lock references it anymore.
+     */
+    private void dereference() {
+        LOCKS.computeIfPresent(path,
+                (key, current) -> --current.references == 0 ? null : current);
+    }
+
+    /**
+     * Open the channel of a lock file, creating the file if needed.
+     *
+     * @param lockFile
+     *            the lock file
+     *
+     * @return the channel
+     *
+     * @throws IOException
+     *             if opening the file failed
+     */
+    private static FileChannel open(File lockFile) throws IOException {
+        return FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class represents a fixed-width layout of the primitive fields of a
+ * data, mapped into memory from a file next to the data file. Each primitive
+ * field has a fixed offset in the mapping, so saving a changed field is a
+ * single store of its raw bits into memory rather than rewriting the data
+ * file. <code>String</code> fields and unknown fields are not part of the
+ * layout, and are saved with the data as before.
+ * <p>
+ * Stored fields are kept by the operating system once stored, even if the
+ * program ends abruptly, and are written to the device by {@link #force()}.
+ * The layout starts with the schema fingerprint and the generation of the
+ * data file it was synchronized with: a data file saved since holds all
+ * field values, so loading then synchronizes the mapping from the data
+ * instead. The layout uses the native byte order, and a mapping not
+ * matching the schema or byte order is synchronized from the data when
+ * opened.
+ * <p>
+ * Typical use is to load the data and then the mapping, store frequently
+ * changed fields through the mapping, and save the data as usual now and
+ * then. A mapping is used by one thread at a time, like its data.
+ * <p>
+ * The file of a mapping is written in place, so it is not part of
+ * {@link DataSnapshots}: a snapshot holds the fields as last saved with the
+ * data. Restoring a snapshot deletes the file of the mapping, and the mapping
+ * is synchronized from the restored data file when opened again.
+ *
+ * @author Sander Veldhuis
+ */
+public final class DataMapping implements Closeable {
+
+    /** The suffix of the file holding the mapping. */
+    static final String MAP_SUFFIX = ".map";
+
+    /** The offset of the schema fingerprint. */
+    private static final int FINGERPRINT_OFFSET = 0;
+
+    /** The offset of the generation of the synchronized data file. */
+    private static final int GENERATION_OFFSET = 8;
+
+    /** The size of the header preceding the fields. */
+    private static final int HEADER_SIZE = 16;
+
+    /** The data of the mapping. */
+    private final Data data;
+
+    /** The schema of the data. */
+    private final DataSchema schema;
+
+    /** The offsets per slot, or <code>-1</code> for non-primitive fields. */
+    private final int[] offsets;
+
+    /** The file of the mapping. */
+    private final File file;
+
+    /** The channel of the file. */
+    private final FileChannel channel;
+
+    /** The mapped layout. */
+    private final MappedByteBuffer mapped;
+
+    /**
+     * Constructs a new mapping of the primitive fields of a data, creating
+     * its file if it does not exist yet.
+     *
+     * @param data
+     *            the data
+     *
+     * @throws IOException
+     *             if opening or mapping the file failed
+     * @exception IllegalArgumentException
+     *                if the data is not stored in the file system
+     */
+    public DataMapping(Data data) throws IOException {
+        if (data.getStorage() != DataStorage.FILE_SYSTEM) {
+            throw new IllegalArgumentException(
+                    "Data should be stored in the file system");
+        }
+        this.data = data;
+        schema = data.getSchema();
+
+        offsets = new int[schema.size()];
+        int size = HEADER_SIZE;
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (schema.type(slot) == DataSchema.STRING) {
+                offsets[slot] = -1;
+            } else {
+                offsets[slot] = size;
+                size += 8;
+            }
+        }
+
+        file = new File(data.getFile().getPath() + MAP_SUFFIX);
+        data.getDirectory().mkdirs();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean valid = channel.size() == size;
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.order(ByteOrder.nativeOrder());
+            if (!valid || mapped.getLong(FINGERPRINT_OFFSET) != schema
+                    .fingerprint()) {
+                synchronize();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Load the primitive fields of the data from the mapping. If the data
+     * file was saved since the mapping was synchronized, the mapping is
+     * synchronized from the data instead.
+     *
+     * @return <code>true</code> if the fields were loaded, or
+     *         <code>false</code> if the mapping was synchronized instead
+     */
+    public boolean load() {
+        if (mapped.getLong(GENERATION_OFFSET) < data.getGeneration()) {
+            synchronize();
+            return false;
+        }
+
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (offsets[slot] >= 0) {
+                schema.setBits(data, slot, mapped.getLong(offsets[slot]));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Save all changed primitive fields of the data to the mapping.
+     *
+     * @return the number of fields stored
+     *
+     * @exception IllegalStateException
+     *                if the data is read-only
+     */
+    public int save() {
+        checkWritable();
+        if (mapped.getLong(GENERATION_OFFSET) < data.getGeneration()) {
+            return synchronize();
+        }
+
+        int stored = 0;
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (offsets[slot] >= 0) {
+                long bits = schema.bits(data, slot);
+                if (mapped.getLong(offsets[slot]) != bits) {
+                    mapped.putLong(offsets[slot], bits);
+                    stored++;
+                }
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Save one primitive field of the data to the mapping.
+     *
+     * @param name
+     *            the field name
+     *
+     * @exception IllegalArgumentException
+     *                if there is no such primitive field
+     * @exception IllegalStateException
+     *                if the data is read-only
+     */
+    public void save(String name) {
+        int slot = schema.slotOf(name);
+        if (slot < 0 || offsets[slot] < 0) {
+            throw new IllegalArgumentException(
+                    "No primitive field " + name);
+        }
+        checkWritable();
+        if (mapped.getLong(GENERATION_OFFSET) < data.getGeneration()) {
+            synchronize();
+        } else {
+            mapped.putLong(offsets[slot], schema.bits(data, slot));
+        }
+    }
+
+    /**
+     * Write all stored fields to the device holding the file.
+     */
+    public void force() {
+        mapped.force();
+    }
+
+    /**
+     * Returns the file of the mapping.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Close the mapping. Stored fields are kept by the operating system.
+     *
+     * @throws IOException
+     *             if closing failed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Store all primitive fields of the data, stamped with the schema
+     * fingerprint and the generation of the data file.
+     *
+     * @return the number of fields stored
+     */
+    private int synchronize() {
+        int stored = 0;
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (offsets[slot] >= 0) {
+                mapped.putLong(offsets[slot], schema.bits(data, slot));
+                stored++;
+            }
+        }
+        mapped.putLong(GENERATION_OFFSET, data.getGeneration());
+        mapped.putLong(FINGERPRINT_OFFSET, schema.fingerprint());
+        return stored;
+    }
+
+    /**
+     * Ensure the data may be saved.
+     *
+     * @exception IllegalStateException
+     *                if the data is read-only
+     */
+    private void checkWritable() {
+        if (data.isReadOnly()) {
+            throw new IllegalStateException("Data is read-only");
+        }
+    }
+}
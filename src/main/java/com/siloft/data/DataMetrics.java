@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+/**
+ * This interface receives metrics of loading and saving data. All methods are
+ * invoked on the thread performing the operation and should return quickly.
+ * The default implementations do nothing, so an implementation only needs to
+ * override the methods of interest.
+ *
+ * @author Sander Veldhuis
+ */
+public interface DataMetrics {
+
+    /** The metrics which ignore everything, used by default. */
+    DataMetrics NONE = new DataMetrics() {
+    };
+
+    /**
+     * Invoked after data has been loaded for the first time.
+     *
+     * @param type
+     *            the class of the data
+     * @param nanos
+     *            the duration in nanoseconds
+     * @param bytes
+     *            the number of bytes read
+     * @param fields
+     *            the number of fields read
+     * @param unknownFields
+     *            the number of unknown fields read
+     * @param parseFailures
+     *            the number of lines which could not be parsed
+     */
+    default void loaded(Class<?> type, long nanos, long bytes, int fields,
+            int unknownFields, int parseFailures) {
+    }
+
+    /**
+     * Invoked after data which was already loaded has been loaded again.
+     *
+     * @param type
+     *            the class of the data
+     * @param nanos
+     *            the duration in nanoseconds
+     * @param bytes
+     *            the number of bytes read
+     * @param fields
+     *            the number of fields read
+     * @param unknownFields
+     *            the number of unknown fields read
+     * @param parseFailures
+     *            the number of lines which could not be parsed
+     */
+    default void reloaded(Class<?> type, long nanos, long bytes, int fields,
+            int unknownFields, int parseFailures) {
+    }
+
+    /**
+     * Invoked after data has been saved.
+     *
+     * @param type
+     *            the class of the data
+     * @param nanos
+     *            the duration in nanoseconds
+     * @param bytes
+     *            the number of bytes written
+     * @param fields
+     *            the number of fields written
+     * @param unknownFields
+     *            the number of unknown fields written
+     */
+    default void saved(Class<?> type, long nanos, long bytes, int fields,
+            int unknownFields) {
+    }
+
+    /**
+     * Invoked after loading data failed, because its file could not be read
+     * or created, or both the file and its backup are corrupt.
+     *
+     * @param type
+     *            the class of the data
+     * @param nanos
+     *            the duration in nanoseconds
+     */
+    default void loadFailed(Class<?> type, long nanos) {
+    }
+}
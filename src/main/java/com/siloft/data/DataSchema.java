@@ -0,0 +1,462 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the schema of a data class: its fields in declaration
+ * order, their types, and an index from field name to slot. A schema is
+ * created once per data class and shared by all instances.
+ *
+ * @author Sander Veldhuis
+ */
+final class DataSchema {
+
+    /** The type code of <code>byte</code> fields. */
+    static final int BYTE = 0;
+
+    /** The type code of <code>short</code> fields. */
+    static final int SHORT = 1;
+
+    /** The type code of <code>int</code> fields. */
+    static final int INT = 2;
+
+    /** The type code of <code>long</code> fields. */
+    static final int LONG = 3;
+
+    /** The type code of <code>float</code> fields. */
+    static final int FLOAT = 4;
+
+    /** The type code of <code>double</code> fields. */
+    static final int DOUBLE = 5;
+
+    /** The type code of <code>boolean</code> fields. */
+    static final int BOOLEAN = 6;
+
+    /** The type code of <code>String</code> fields. */
+    static final int STRING = 7;
+
+    /** The offset basis of the 64 bit FNV-1a hash. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /** The prime of the 64 bit FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * This class represents the values of all fields of a data instance,
+     * primitive values as raw bits.
+     */
+    static final class Values {
+
+        /** The primitive values per slot, as raw bits. */
+        final long[] bits;
+
+        /** The <code>String</code> values per slot. */
+        final Object[] references;
+
+        /**
+         * Constructs new values.
+         *
+         * @param size
+         *            the number of fields
+         */
+        Values(int size) {
+            bits = new long[size];
+            references = new Object[size];
+        }
+    }
+
+    /** The schemas per data class. */
+    private static final ClassValue<DataSchema> SCHEMAS =
+            new ClassValue<DataSchema>() {
+                @Override
+                protected DataSchema computeValue(Class<?> type) {
+                    return new DataSchema(type);
+                }
+            };
+
+    /** The fields in declaration order. */
+    private final Field[] fields;
+
+    /** The field names in declaration order. */
+    private final String[] names;
+
+    /** The field type codes in declaration order. */
+    private final int[] types;
+
+    /** The slots per field name. */
+    private final Map<String, Integer> slots;
+
+    /** The fingerprint of the field names and types in declaration order. */
+    private final long fingerprint;
+
+    /** The default values shared by instances, or <code>null</code>. */
+    private volatile Values defaults;
+
+    /**
+     * Constructs a new schema.
+     *
+     * @param type
+     *            the data class
+     */
+    private DataSchema(Class<?> type) {
+        List<Field> declared = new ArrayList<Field>();
+        for (Field field : type.getDeclaredFields()) {
+            if (!field.isSynthetic()) {
+                declared.add(field);
+            }
+        }
+
+        fields = declared.toArray(new Field[declared.size()]);
+        names = new String[fields.length];
+        types = new int[fields.length];
+        slots = new HashMap<String, Integer>(fields.length * 2);
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < fields.length; i++) {
+            names[i] = fields[i].getName();
+            types[i] = typeOf(fields[i].getType());
+            slots.put(names[i], i);
+
+            for (int j = 0; j < names[i].length(); j++) {
+                hash = (hash ^ names[i].charAt(j)) * FNV_PRIME;
+            }
+            hash = (hash ^ ('=' + types[i])) * FNV_PRIME;
+        }
+        fingerprint = hash;
+    }
+
+    /**
+     * Returns the schema of a data class.
+     *
+     * @param type
+     *            the data class
+     *
+     * @return the schema
+     */
+    static DataSchema of(Class<?> type) {
+        return SCHEMAS.get(type);
+    }
+
+    /**
+     * Returns the number of fields.
+     *
+     * @return the number of fields
+     */
+    int size() {
+        return fields.length;
+    }
+
+    /**
+     * Returns the field in a slot.
+     *
+     * @param slot
+     *            the slot
+     *
+     * @return the field
+     */
+    Field field(int slot) {
+        return fields[slot];
+    }
+
+    /**
+     * Returns the field name in a slot.
+     *
+     * @param slot
+     *            the slot
+     *
+     * @return the field name
+     */
+    String name(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Returns the type code of the field in a slot.
+     *
+     * @param slot
+     *            the slot
+     *
+     * @return the type code
+     */
+    int type(int slot) {
+        return types[slot];
+    }
+
+    /**
+     * Returns the slot of a field name.
+     *
+     * @param name
+     *            the field name
+     *
+     * @return the slot, or <code>-1</code> if there is no such field
+     */
+    int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Returns the fingerprint of the field names and types in declaration
+     * order. Files saved with an equal fingerprint list their fields in slot
+     * order.
+     *
+     * @return the fingerprint
+     */
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the default values shared by the instances of the data class.
+     * These are captured from the first data instance asking for them.
+     *
+     * @param target
+     *            the data instance
+     *
+     * @return the default values
+     */
+    Values defaults(Object target) {
+        Values values = defaults;
+        if (values == null) {
+            values = new Values(fields.length);
+            snapshot(target, values.bits, values.references);
+            defaults = values;
+        }
+        return values;
+    }
+
+    /**
+     * Indicates whether all field values of a data instance equal the
+     * specified values.
+     *
+     * @param target
+     *            the data instance
+     * @param values
+     *            the values
+     *
+     * @return <code>true</code> if all are equal, or <code>false</code>
+     *         otherwise
+     */
+    boolean matches(Object target, Values values) {
+        for (int slot = 0; slot < fields.length; slot++) {
+            if (differs(target, slot, values.bits, values.references)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Set all field values of a data instance.
+     *
+     * @param target
+     *            the data instance
+     * @param values
+     *            the values
+     */
+    void restore(Object target, Values values) {
+        for (int slot = 0; slot < fields.length; slot++) {
+            if (types[slot] == STRING) {
+                try {
+                    fields[slot].set(target, values.references[slot]);
+                } catch (IllegalAccessException e) {
+                    // Should not happen
+                }
+            } else {
+                setBits(target, slot, values.bits[slot]);
+            }
+        }
+    }
+
+    /**
+     * Set the value of a primitive field of a data instance from raw bits.
+     *
+     * @param target
+     *            the data instance
+     * @param slot
+     *            the slot of the field
+     * @param bits
+     *            the raw bits
+     */
+    void setBits(Object target, int slot, long bits) {
+        Field field = fields[slot];
+        try {
+            switch (types[slot]) {
+            case BYTE:
+                field.setByte(target, (byte) bits);
+                break;
+            case SHORT:
+                field.setShort(target, (short) bits);
+                break;
+            case INT:
+                field.setInt(target, (int) bits);
+                break;
+            case LONG:
+                field.setLong(target, bits);
+                break;
+            case FLOAT:
+                field.setFloat(target, Float.intBitsToFloat((int) bits));
+                break;
+            case DOUBLE:
+                field.setDouble(target, Double.longBitsToDouble(bits));
+                break;
+            default:
+                field.setBoolean(target, bits != 0);
+            }
+        } catch (IllegalAccessException e) {
+            // Should not happen
+        }
+    }
+
+    /**
+     * Copy the field values of a data instance, primitive values as raw bits.
+     *
+     * @param target
+     *            the data instance
+     * @param bits
+     *            the primitive values per slot
+     * @param references
+     *            the <code>String</code> values per slot
+     */
+    void snapshot(Object target, long[] bits, Object[] references) {
+        for (int slot = 0; slot < fields.length; slot++) {
+            if (types[slot] == STRING) {
+                references[slot] = get(target, slot);
+            } else {
+                bits[slot] = bits(target, slot);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a field value of a data instance differs from a
+     * snapshot.
+     *
+     * @param target
+     *            the data instance
+     * @param slot
+     *            the slot of the field
+     * @param bits
+     *            the primitive values per slot of the snapshot
+     * @param references
+     *            the <code>String</code> values per slot of the snapshot
+     *
+     * @return <code>true</code> if it differs, or <code>false</code>
+     *         otherwise
+     */
+    boolean differs(Object target, int slot, long[] bits,
+            Object[] references) {
+        if (types[slot] == STRING) {
+            Object value = get(target, slot);
+            return value == null ? references[slot] != null
+                    : !value.equals(references[slot]);
+        }
+        return bits(target, slot) != bits[slot];
+    }
+
+    /**
+     * Returns the value of a reference field of a data instance.
+     *
+     * @param target
+     *            the data instance
+     * @param slot
+     *            the slot of the field
+     *
+     * @return the value
+     */
+    private Object get(Object target, int slot) {
+        try {
+            return fields[slot].get(target);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value of a primitive field of a data instance as raw bits.
+     *
+     * @param target
+     *            the data instance
+     * @param slot
+     *            the slot of the field
+     *
+     * @return the raw bits
+     */
+    long bits(Object target, int slot) {
+        Field field = fields[slot];
+        try {
+            switch (types[slot]) {
+            case BYTE:
+                return field.getByte(target);
+            case SHORT:
+                return field.getShort(target);
+            case INT:
+                return field.getInt(target);
+            case LONG:
+                return field.getLong(target);
+            case FLOAT:
+                return Float.floatToRawIntBits(field.getFloat(target));
+            case DOUBLE:
+                return Double.doubleToRawLongBits(field.getDouble(target));
+            default:
+                return field.getBoolean(target) ? 1 : 0;
+            }
+        } catch (IllegalAccessException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the type code of a field type.
+     *
+     * @param type
+     *            the field type
+     *
+     * @return the type code, or <code>-1</code> if not supported
+     */
+    private static int typeOf(Class<?> type) {
+        if (type == byte.class) {
+            return BYTE;
+        } else if (type == short.class) {
+            return SHORT;
+        } else if (type == int.class) {
+            return INT;
+        } else if (type == long.class) {
+            return LONG;
+        } else if (type == float.class) {
+            return FLOAT;
+        } else if (type == double.class) {
+            return DOUBLE;
+        } else if (type == boolean.class) {
+            return BOOLEAN;
+        } else if (type == String.class) {
+            return STRING;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents the point-in-time snapshots of all data files in a
+ * directory, such as the directory of the user data of a program. Snapshots
+ * are kept in the <code>.snapshots</code> subdirectory, numbered from
+ * <code>1</code>, and the oldest are deleted beyond the number of generations
+ * to keep.
+ * <p>
+ * A snapshot holds hard links to the data files where the file system supports
+ * them, so taking one costs a few metadata operations per file, whatever the
+ * size of the files. This is safe because data files are never written in
+ * place: saving replaces a file by a new one. Only data files stamped with a
+ * generation are included; other files, such as change feeds and journals
+ * which are appended in place and kept open, are neither snapshotted nor
+ * restored. While taking or restoring a snapshot, locks are held on all data
+ * files, so no data is saved in between and no data is loaded halfway a
+ * restore.
+ * <p>
+ * Snapshots may be taken by several threads and processes: they are taken
+ * one at a time under an exclusive lock on the snapshot directory, so a
+ * temporary directory left by a crash is deleted by the next snapshot.
+ *
+ * @author Sander Veldhuis
+ */
+public final class DataSnapshots {
+
+    /** The name of the subdirectory holding the snapshots. */
+    public static final String SNAPSHOT_DIRECTORY = ".snapshots";
+
+    /** The storage of the data files. */
+    private static final DataStorage STORAGE = DataStorage.FILE_SYSTEM;
+
+    /** The directory of the data files. */
+    private final File directory;
+
+    /** The directory of the snapshots. */
+    private final File snapshots;
+
+    /** The number of snapshots to keep. */
+    private final int generations;
+
+    /**
+     * Constructs new snapshots of a directory.
+     *
+     * @param directory
+     *            the directory of the data files
+     * @param generations
+     *            the number of snapshots to keep
+     *
+     * @exception IllegalArgumentException
+     *                if the number of snapshots is less than one
+     */
+    public DataSnapshots(File directory, int generations) {
+        if (generations < 1) {
+            throw new IllegalArgumentException(
+                    "Generations should be positive");
+        }
+        this.directory = directory;
+        this.generations = generations;
+        snapshots = new File(directory, SNAPSHOT_DIRECTORY);
+    }
+
+    /**
+     * Constructs new snapshots of the directory of data.
+     *
+     * @param data
+     *            the data
+     * @param generations
+     *            the number of snapshots to keep
+     *
+     * @exception IllegalArgumentException
+     *                if the number of snapshots is less than one
+     */
+    public DataSnapshots(Data data, int generations) {
+        this(data.getDirectory(), generations);
+    }
+
+    /**
+     * Take a snapshot of all data files, deleting the oldest snapshots beyond
+     * the number of generations to keep.
+     *
+     * @return the number of the snapshot
+     *
+     * @throws IOException
+     *             if taking the snapshot failed
+     */
+    public long create() throws IOException {
+        try (Closeable lock = STORAGE.lock(snapshots, false)) {
+            snapshots.mkdirs();
+            deleteTemporary();
+            List<Long> existing = list();
+            long number = existing.isEmpty() ? 1
+                    : existing.get(existing.size() - 1) + 1;
+            File target = new File(snapshots, Long.toString(number));
+            File temp = new File(snapshots, number + Data.TEMP_SUFFIX);
+            if (!temp.mkdir()) {
+                throw new IOException("Cannot create snapshot: " + temp);
+            }
+
+            try {
+                String[] names = dataFiles(directory);
+                List<Closeable> locks = lock(names, true);
+                try {
+                    for (String name : names) {
+                        STORAGE.link(new File(directory, name),
+                                new File(temp, name));
+                    }
+                } finally {
+                    release(locks);
+                }
+                STORAGE.rename(temp, target);
+            } catch (IOException | RuntimeException e) {
+                delete(temp);
+                throw e;
+            }
+
+            existing = list();
+            for (int i = 0; i < existing.size() - generations; i++) {
+                delete(new File(snapshots, Long.toString(existing.get(i))));
+            }
+            return number;
+        }
+    }
+
+    /**
+     * Restore all data files of a snapshot. Data files which did not exist
+     * when the snapshot was taken are deleted. Each file is replaced
+     * atomically, and all are replaced while holding exclusive locks. The
+     * memory-mapped fields of the data files are deleted, so the mappings are
+     * synchronized from the restored data files when opened again.
+     *
+     * @param number
+     *            the number of the snapshot
+     *
+     * @throws IOException
+     *             if the snapshot does not exist or restoring failed
+     */
+    public void restore(long number) throws IOException {
+        File source = new File(snapshots, Long.toString(number));
+        if (!source.isDirectory()) {
+            throw new IOException("Snapshot does not exist: " + source);
+        }
+
+        String[] restored = dataFiles(source);
+        String[] current = dataFiles(directory);
+        List<String> names = new ArrayList<String>(Arrays.asList(restored));
+        for (String name : current) {
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        List<Closeable> locks =
+                lock(names.toArray(new String[names.size()]), false);
+        try {
+            for (String name : restored) {
+                File file = new File(directory, name);
+                File temp = new File(directory, name + Data.TEMP_SUFFIX);
+                STORAGE.link(new File(source, name), temp);
+                STORAGE.rename(temp, file);
+            }
+            for (String name : current) {
+                if (!Arrays.asList(restored).contains(name)) {
+                    new File(directory, name).delete();
+                }
+            }
+            for (String name : names) {
+                new File(directory, name + DataMapping.MAP_SUFFIX).delete();
+            }
+        } finally {
+            release(locks);
+        }
+    }
+
+    /**
+     * Returns the numbers of all snapshots, oldest first.
+     *
+     * @return the numbers
+     */
+    public List<Long> list() {
+        List<Long> numbers = new ArrayList<Long>();
+        String[] names = snapshots.list();
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    numbers.add(Long.parseLong(name));
+                } catch (NumberFormatException e) {
+                    // Not a snapshot
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Returns the directory of a snapshot.
+     *
+     * @param number
+     *            the number of the snapshot
+     *
+     * @return the directory, or <code>null</code> if it does not exist
+     */
+    public File getSnapshot(long number) {
+        File snapshot = new File(snapshots, Long.toString(number));
+        return snapshot.isDirectory() ? snapshot : null;
+    }
+
+    /**
+     * Returns the names of the data files in a directory, sorted. Backup,
+     * lock, temporary, and memory-mapped field files are excluded, as are
+     * files not stamped with a generation.
+     *
+     * @param directory
+     *            the directory
+     *
+     * @return the names
+     *
+     * @throws IOException
+     *             if reading a file failed
+     */
+    private static String[] dataFiles(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new String[0];
+        }
+
+        List<String> names = new ArrayList<String>();
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && !name.endsWith(Data.BACKUP_SUFFIX)
+                    && !name.endsWith(DataLock.LOCK_SUFFIX)
+                    && !name.endsWith(Data.TEMP_SUFFIX)
+                    && !name.endsWith(DataMapping.MAP_SUFFIX)
+                    && isReplacedOnSave(file)) {
+                names.add(name);
+            }
+        }
+        Collections.sort(names);
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Indicates whether a file is a data file saved by replacing it, as all
+     * data files stamped with a generation are.
+     *
+     * @param file
+     *            the file
+     *
+     * @return <code>true</code> if replaced on save, or <code>false</code>
+     *         otherwise, or if the file no longer exists
+     *
+     * @throws IOException
+     *             if reading the file failed
+     */
+    private static boolean isReplacedOnSave(File file) throws IOException {
+        String prefix = Data.GENERATION_PREFIX;
+        try (InputStream input = STORAGE.open(file)) {
+            for (int i = 0; i < prefix.length(); i++) {
+                if (input.read() != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Acquire locks on data files in name order, so concurrent snapshots
+     * cannot deadlock.
+     *
+     * @param names
+     *            the names of the data files
+     * @param shared
+     *            <code>true</code> for shared locks, or <code>false</code>
+     *            for exclusive locks
+     *
+     * @return the locks
+     *
+     * @throws IOException
+     *             if acquiring a lock failed
+     */
+    private List<Closeable> lock(String[] names, boolean shared)
+            throws IOException {
+        String[] sorted = names.clone();
+        Arrays.sort(sorted);
+        List<Closeable> locks = new ArrayList<Closeable>(sorted.length);
+        try {
+            for (String name : sorted) {
+                locks.add(STORAGE.lock(new File(directory, name), shared));
+            }
+        } catch (IOException | RuntimeException e) {
+            release(locks);
+            throw e;
+        }
+        return locks;
+    }
+
+    /**
+     * Release locks in reverse order.
+     *
+     * @param locks
+     *            the locks
+     *
+     * @throws IOException
+     *             if releasing a lock failed
+     */
+    private static void release(List<Closeable> locks) throws IOException {
+        IOException failure = null;
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            try {
+                locks.get(i).close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Delete the temporary directories of snapshots which were never
+     * completed. Only called while holding the lock on the snapshot
+     * directory, so no snapshot is being taken.
+     */
+    private void deleteTemporary() {
+        File[] files = snapshots.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()
+                        && file.getName().endsWith(Data.TEMP_SUFFIX)) {
+                    delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete a snapshot directory with its files.
+     *
+     * @param snapshot
+     *            the snapshot directory
+     */
+    private static void delete(File snapshot) {
+        File[] files = snapshot.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        snapshot.delete();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * This interface stores the files of data. Files are identified by their path,
+ * while a storage decides where their content is kept. By default data is
+ * stored in the file system; {@link MemoryDataStorage} keeps it on the heap.
+ * All methods may be invoked by multiple threads concurrently.
+ *
+ * @author Sander Veldhuis
+ */
+public interface DataStorage {
+
+    /** The storage of the file system, used by default. */
+    DataStorage FILE_SYSTEM = new FileDataStorage();
+
+    /**
+     * Open a file for reading.
+     *
+     * @param file
+     *            the file
+     *
+     * @return the stream reading the content
+     *
+     * @throws IOException
+     *             if the file does not exist or opening it failed
+     */
+    InputStream open(File file) throws IOException;
+
+    /**
+     * Read the complete content of a file. The returned array may be modified
+     * by the caller.
+     *
+     * @param file
+     *            the file
+     *
+     * @return the content
+     *
+     * @throws IOException
+     *             if the file does not exist or reading it failed
+     */
+    byte[] read(File file) throws IOException;
+
+    /**
+     * Create or truncate a file for writing. The content may become visible
+     * when the channel is closed only.
+     *
+     * @param file
+     *            the file
+     *
+     * @return the channel writing the content
+     *
+     * @throws IOException
+     *             if opening the file failed
+     */
+    WritableByteChannel write(File file) throws IOException;
+
+    /**
+     * Rename a file, replacing the target file if it exists. Where supported,
+     * the target is replaced atomically.
+     *
+     * @param source
+     *            the file to rename
+     * @param target
+     *            the new file
+     *
+     * @throws IOException
+     *             if renaming failed
+     */
+    void rename(File source, File target) throws IOException;
+
+    /**
+     * Let a second file hold the current content of a file, replacing the
+     * second file if it exists. Later changes to either file do not affect the
+     * other.
+     *
+     * @param source
+     *            the file
+     * @param target
+     *            the second file
+     *
+     * @throws IOException
+     *             if linking or copying failed
+     */
+    void link(File source, File target) throws IOException;
+
+    /**
+     * Returns the attributes of a file. The last modified time, size and file
+     * key together change whenever the file is written or replaced.
+     *
+     * @param file
+     *            the file
+     *
+     * @return the attributes, or <code>null</code> if the file does not exist
+     *
+     * @throws IOException
+     *             if reading the attributes failed
+     */
+    BasicFileAttributes stat(File file) throws IOException;
+
+    /**
+     * Acquire a lock on a file, blocking until acquired. The lock coordinates
+     * all users of the same storage.
+     *
+     * @param file
+     *            the file
+     * @param shared
+     *            <code>true</code> for a shared lock, or <code>false</code>
+     *            for an exclusive lock
+     *
+     * @return the lock, released when closed
+     *
+     * @throws IOException
+     *             if acquiring the lock failed
+     */
+    Closeable lock(File file, boolean shared) throws IOException;
+
+    /**
+     * Indicates whether a file exists.
+     *
+     * @param file
+     *            the file
+     *
+     * @return <code>true</code> if it exists, or <code>false</code> otherwise
+     *
+     * @throws IOException
+     *             if reading the attributes failed
+     */
+    default boolean exists(File file) throws IOException {
+        return stat(file) != null;
+    }
+}
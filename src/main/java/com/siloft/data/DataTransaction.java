@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class represents a transaction saving several data atomically. Either
+ * all data are saved, or, after a crash, none or all are once the journal is
+ * opened again. A transaction is used by one thread and committed once.
+ * <p>
+ * On commit, exclusive locks are acquired on the files of all data in path
+ * order, and conflicts are resolved according to the conflict policy of each
+ * data before anything is written. The new contents are then appended to the
+ * journal and forced to disk, after which the files are replaced.
+ *
+ * @author Sander Veldhuis
+ */
+public final class DataTransaction {
+
+    /** The journal of the transaction. */
+    private final DataJournal journal;
+
+    /** The data to save. */
+    private final List<Data> data = new ArrayList<Data>();
+
+    /** Indicates whether the transaction is committed. */
+    private boolean isCommitted;
+
+    /**
+     * Constructs a new transaction.
+     *
+     * @param journal
+     *            the journal of the transaction
+     */
+    DataTransaction(DataJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Add data to save in this transaction.
+     *
+     * @param added
+     *            the data
+     *
+     * @return this transaction
+     *
+     * @exception IllegalArgumentException
+     *                if other data with the same file is added already, or
+     *                the data is kept in another storage than the journal
+     * @exception IllegalStateException
+     *                if the transaction is committed
+     */
+    public DataTransaction add(Data added) {
+        if (isCommitted) {
+            throw new IllegalStateException("Transaction is committed");
+        }
+        if (added.getStorage() != journal.getStorage()) {
+            throw new IllegalArgumentException(
+                    "Data is kept in another storage than the journal");
+        }
+        for (Data existing : data) {
+            if (existing == added) {
+                return this;
+            } else if (existing.getFile().getAbsoluteFile()
+                    .equals(added.getFile().getAbsoluteFile())) {
+                throw new IllegalArgumentException(
+                        "Data with the same file is added already");
+            }
+        }
+        data.add(added);
+        return this;
+    }
+
+    /**
+     * Commit the transaction, saving all data atomically.
+     *
+     * @throws IOException
+     *             if saving failed
+     * @throws DataConflictException
+     *             if a file was saved since its data was loaded or saved and
+     *             the policy is to fail, in which case nothing is saved
+     * @exception IllegalStateException
+     *                if the transaction is committed already, or any data is
+     *                read-only
+     */
+    public void commit() throws IOException {
+        if (isCommitted) {
+            throw new IllegalStateException("Transaction is committed");
+        }
+        isCommitted = true;
+
+        List<Data> sorted = new ArrayList<Data>(data);
+        sorted.sort(Comparator.comparing(
+                sortedData -> sortedData.getFile().getAbsolutePath()));
+
+        List<Closeable> locks = new ArrayList<Closeable>(sorted.size());
+        try {
+            for (Data locked : sorted) {
+                locks.add(locked.getStorage().lock(locked.getFile(), false));
+            }
+            commit(sorted);
+        } finally {
+            IOException failure = null;
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                try {
+                    locks.get(i).close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Commit the transaction while holding the locks on all files.
+     *
+     * @param sorted
+     *            the data in path order
+     *
+     * @throws IOException
+     *             if saving failed
+     */
+    private void commit(List<Data> sorted) throws IOException {
+        int size = sorted.size();
+        long start = System.nanoTime();
+        Object[] events = new Object[size];
+        File[] files = new File[size];
+        long[] stamps = new long[size];
+        byte[][] contents = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            Data saved = sorted.get(i);
+            events[i] = DataEvents.beginSave();
+            files[i] = saved.getFile();
+            stamps[i] = saved.prepareSave();
+        }
+        for (int i = 0; i < size; i++) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            sorted.get(i).write(Channels.newChannel(content), stamps[i]);
+            contents[i] = content.toByteArray();
+        }
+
+        byte[] record = journal.append(files, stamps, contents);
+        boolean succeeded = false;
+        try {
+            for (int i = 0; i < size; i++) {
+                sorted.get(i).install(contents[i]);
+            }
+            succeeded = true;
+        } finally {
+            if (!succeeded) {
+                journal.complete(record, files, false);
+            }
+        }
+
+        try {
+            for (int i = 0; i < size; i++) {
+                sorted.get(i).saved(events[i], start, stamps[i],
+                        contents[i].length);
+            }
+        } finally {
+            journal.complete(record, files, true);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents a writer of data files. Names and values are encoded
+ * as UTF-8 straight into a buffer, with a fast path for ASCII, and primitive
+ * values are encoded without creating strings. The buffer is written to the
+ * channel of the file whenever it is full, updating the checksum of the file.
+ * <p>
+ * Each thread reuses one buffer while it is idle, so saving allocates next to
+ * nothing. A writer must be closed by the thread which opened it.
+ *
+ * @author Sander Veldhuis
+ */
+final class DataWriter implements Closeable {
+
+    /** The size of the buffer in bytes. */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** The idle buffer of each thread, or <code>null</code> if in use. */
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            new ThreadLocal<ByteBuffer>();
+
+    /** The hexadecimal digits. */
+    private static final byte[] HEX_DIGITS =
+            { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c',
+                    'd', 'e', 'f' };
+
+    /** The channel of the file. */
+    private final WritableByteChannel channel;
+
+    /** The buffer holding the bytes not written yet. */
+    private final ByteBuffer buffer;
+
+    /** The array backing the buffer. */
+    private final byte[] bytes;
+
+    /** The checksum of the bytes written so far. */
+    private final CRC32 checksum = new CRC32();
+
+    /** The position in the buffer. */
+    private int position;
+
+    /** The number of bytes written to the channel. */
+    private long written;
+
+    /**
+     * Constructs a new writer.
+     *
+     * @param channel
+     *            the channel of the file to write, closed with the writer
+     */
+    DataWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        ByteBuffer idle = BUFFERS.get();
+        if (idle != null) {
+            BUFFERS.set(null);
+            buffer = idle;
+        } else {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        bytes = buffer.array();
+    }
+
+    /**
+     * Write a field name followed by the separator.
+     *
+     * @param name
+     *            the field name
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void name(String name) throws IOException {
+        text(name);
+        ensure(1);
+        bytes[position++] = '=';
+    }
+
+    /**
+     * Write a complete line for a field.
+     *
+     * @param name
+     *            the field name
+     * @param value
+     *            the field value
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void entry(String name, String value) throws IOException {
+        name(name);
+        text(value);
+        newLine();
+    }
+
+    /**
+     * Write a <code>long</code> value in decimal.
+     *
+     * @param value
+     *            the value
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void value(long value) throws IOException {
+        ensure(20);
+        if (value < 0) {
+            bytes[position++] = '-';
+        } else {
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            bytes[i] = (byte) ('0' - value % 10);
+            value /= 10;
+        }
+        position = end;
+    }
+
+    /**
+     * Write a <code>double</code> value as shortest decimal.
+     *
+     * @param value
+     *            the value
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void value(double value) throws IOException {
+        ensure(DecimalCodec.MAX_DOUBLE_LENGTH);
+        position = DecimalCodec.format(value, bytes, position);
+    }
+
+    /**
+     * Write a <code>float</code> value as shortest decimal.
+     *
+     * @param value
+     *            the value
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void value(float value) throws IOException {
+        ensure(DecimalCodec.MAX_FLOAT_LENGTH);
+        position = DecimalCodec.format(value, bytes, position);
+    }
+
+    /**
+     * Write the lower digits of a value in hexadecimal, padded with zeros.
+     *
+     * @param value
+     *            the value
+     * @param digits
+     *            the number of digits
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void hex(long value, int digits) throws IOException {
+        ensure(digits);
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            bytes[position++] = HEX_DIGITS[(int) (value >>> shift) & 0xf];
+        }
+    }
+
+    /**
+     * Write a <code>boolean</code> value.
+     *
+     * @param value
+     *            the value
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void value(boolean value) throws IOException {
+        ascii(value ? "true" : "false");
+    }
+
+    /**
+     * Write a text as UTF-8. A <code>null</code> text is written as
+     * <code>null</code>.
+     *
+     * @param text
+     *            the text
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void text(String text) throws IOException {
+        if (text == null) {
+            ascii("null");
+            return;
+        }
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            ensure(4);
+            int end = Math.min(length, i + bytes.length - position);
+            char c;
+            while (i < end && (c = text.charAt(i)) < 0x80) {
+                bytes[position++] = (byte) c;
+                i++;
+            }
+            if (i < end) {
+                ensure(4);
+                i = encode(text, i);
+            }
+        }
+    }
+
+    /**
+     * Write an ASCII text.
+     *
+     * @param text
+     *            the text, which must only contain ASCII characters
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void ascii(String text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            ensure(1);
+            bytes[position++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Write a line separator.
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    void newLine() throws IOException {
+        ensure(1);
+        bytes[position++] = '\n';
+    }
+
+    /**
+     * Write the checksum trailer covering all bytes written before it, and
+     * flush the buffer.
+     *
+     * @param prefix
+     *            the prefix of the trailer
+     *
+     * @return the total number of bytes written
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    long checksum(String prefix) throws IOException {
+        flush();
+        ascii(prefix);
+        hex(checksum.getValue(), 8);
+        newLine();
+        flush();
+        return written;
+    }
+
+    /**
+     * Flush the buffer and close the file.
+     *
+     * @throws IOException
+     *             if writing or closing failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            position = 0;
+            BUFFERS.set(buffer);
+            channel.close();
+        }
+    }
+
+    /**
+     * Encode a character which is not ASCII as UTF-8. Unpaired surrogates
+     * are encoded as <code>?</code>, like <code>String.getBytes</code>.
+     *
+     * @param text
+     *            the text
+     * @param index
+     *            the index of the character
+     *
+     * @return the index of the next character
+     */
+    private int encode(String text, int index) {
+        char c = text.charAt(index++);
+        if (c < 0x800) {
+            bytes[position++] = (byte) (0xc0 | c >> 6);
+            bytes[position++] = (byte) (0x80 | c & 0x3f);
+        } else if (Character.isHighSurrogate(c) && index < text.length()
+                && Character.isLowSurrogate(text.charAt(index))) {
+            int point = Character.toCodePoint(c, text.charAt(index++));
+            bytes[position++] = (byte) (0xf0 | point >> 18);
+            bytes[position++] = (byte) (0x80 | point >> 12 & 0x3f);
+            bytes[position++] = (byte) (0x80 | point >> 6 & 0x3f);
+            bytes[position++] = (byte) (0x80 | point & 0x3f);
+        } else if (Character.isSurrogate(c)) {
+            bytes[position++] = '?';
+        } else {
+            bytes[position++] = (byte) (0xe0 | c >> 12);
+            bytes[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+            bytes[position++] = (byte) (0x80 | c & 0x3f);
+        }
+        return index;
+    }
+
+    /**
+     * Ensure the buffer has room for a number of bytes, flushing it if not.
+     *
+     * @param room
+     *            the number of bytes
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    private void ensure(int room) throws IOException {
+        if (bytes.length - position < room) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the buffer to the file and update the checksum.
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    private void flush() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        checksum.update(bytes, 0, position);
+        ((Buffer) buffer).clear();
+        ((Buffer) buffer).limit(position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        written += position;
+        position = 0;
+    }
+}
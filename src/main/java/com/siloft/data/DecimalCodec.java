@@ -0,0 +1,797 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class represents the conversion of <code>float</code> and
+ * <code>double</code> values to and from decimal text in data files.
+ * <p>
+ * Formatting uses the Schubfach algorithm by Raffaello Giulietti, which
+ * yields the shortest decimal that rounds back to the same value, closest to
+ * the value if several exist. It writes straight into a byte array in the
+ * layout of <code>Double.toString</code> and <code>Float.toString</code>.
+ * <p>
+ * Parsing takes a fast path for decimals whose significand and power of ten
+ * are exact in binary, as only a single correctly rounded operation is then
+ * needed. All other text, including invalid text, is passed on to
+ * <code>Double.parseDouble</code> and <code>Float.parseFloat</code>.
+ *
+ * @author Sander Veldhuis
+ */
+final class DecimalCodec {
+
+    /** The maximum number of bytes of a formatted <code>double</code>. */
+    static final int MAX_DOUBLE_LENGTH = 24;
+
+    /** The maximum number of bytes of a formatted <code>float</code>. */
+    static final int MAX_FLOAT_LENGTH = 15;
+
+    /** The minimum exponent of a <code>double</code>. */
+    private static final int DOUBLE_Q_MIN = -1074;
+
+    /** The precision of a <code>double</code> in bits. */
+    private static final int DOUBLE_P = 53;
+
+    /** The smallest normal <code>double</code> significand. */
+    private static final long DOUBLE_C_MIN = 1L << (DOUBLE_P - 1);
+
+    /** The significand below which subnormal doubles gain a digit. */
+    private static final int DOUBLE_C_TINY = 3;
+
+    /** The minimum exponent of a <code>float</code>. */
+    private static final int FLOAT_Q_MIN = -149;
+
+    /** The precision of a <code>float</code> in bits. */
+    private static final int FLOAT_P = 24;
+
+    /** The smallest normal <code>float</code> significand. */
+    private static final int FLOAT_C_MIN = 1 << (FLOAT_P - 1);
+
+    /** The significand below which subnormal floats gain a digit. */
+    private static final int FLOAT_C_TINY = 8;
+
+    /** The minimum power of ten in the table. */
+    private static final int K_MIN = -324;
+
+    /** The maximum power of ten in the table. */
+    private static final int K_MAX = 292;
+
+    /** The lower 63 bits of a <code>long</code>. */
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    /** The lower 32 bits of a <code>long</code>. */
+    private static final long MASK_32 = (1L << 32) - 1;
+
+    /** The upper 63 bits of the scaled powers of ten. */
+    private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+
+    /** The lower 63 bits of the scaled powers of ten. */
+    private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+
+    /** The powers of ten which are exact as <code>long</code>. */
+    private static final long[] POW10 = new long[19];
+
+    /** The powers of ten which are exact as <code>double</code>. */
+    private static final double[] DOUBLE_POW10 = new double[23];
+
+    /** The powers of ten which are exact as <code>float</code>. */
+    private static final float[] FLOAT_POW10 = new float[11];
+
+    static {
+        BigInteger mask = BigInteger.ONE.shiftLeft(63)
+                .subtract(BigInteger.ONE);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int r = flog2pow10(-k) - 125;
+            BigInteger g;
+            if (k <= 0) {
+                g = BigInteger.TEN.pow(-k);
+                g = r <= 0 ? g.shiftLeft(-r) : g.shiftRight(r);
+            } else {
+                g = BigInteger.ONE.shiftLeft(-r)
+                        .divide(BigInteger.TEN.pow(k));
+            }
+            g = g.add(BigInteger.ONE);
+            G1[k - K_MIN] = g.shiftRight(63).longValue();
+            G0[k - K_MIN] = g.and(mask).longValue();
+        }
+
+        long power = 1;
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = power;
+            power *= 10;
+        }
+        for (int i = 0; i < DOUBLE_POW10.length; i++) {
+            DOUBLE_POW10[i] = Double.parseDouble("1e" + i);
+        }
+        for (int i = 0; i < FLOAT_POW10.length; i++) {
+            FLOAT_POW10[i] = Float.parseFloat("1e" + i);
+        }
+    }
+
+    /**
+     * Constructs no instance, as this class only has static methods.
+     */
+    private DecimalCodec() {
+    }
+
+    /**
+     * Returns the shortest decimal text of a <code>double</code>.
+     *
+     * @param value
+     *            the value
+     *
+     * @return the text
+     */
+    static String toString(double value) {
+        byte[] bytes = new byte[MAX_DOUBLE_LENGTH];
+        return new String(bytes, 0, format(value, bytes, 0),
+                StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the shortest decimal text of a <code>float</code>.
+     *
+     * @param value
+     *            the value
+     *
+     * @return the text
+     */
+    static String toString(float value) {
+        byte[] bytes = new byte[MAX_FLOAT_LENGTH];
+        return new String(bytes, 0, format(value, bytes, 0),
+                StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Write the shortest decimal text of a <code>double</code>. At most
+     * <code>MAX_DOUBLE_LENGTH</code> bytes are written.
+     *
+     * @param value
+     *            the value
+     * @param bytes
+     *            the target array
+     * @param position
+     *            the position in the target array
+     *
+     * @return the position after the text
+     */
+    static int format(double value, byte[] bytes, int position) {
+        long bits = Double.doubleToRawLongBits(value);
+        long t = bits & (DOUBLE_C_MIN - 1);
+        int bq = (int) (bits >>> (DOUBLE_P - 1)) & 0x7ff;
+        if (bq == 0x7ff) {
+            return ascii(t != 0 ? "NaN"
+                    : bits > 0 ? "Infinity" : "-Infinity", bytes, position);
+        }
+
+        if (bits < 0) {
+            bytes[position++] = '-';
+        }
+        if (bq != 0) {
+            int mq = -DOUBLE_Q_MIN + 1 - bq;
+            long c = DOUBLE_C_MIN | t;
+            if (0 < mq && mq < DOUBLE_P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return chars(f, 0, bytes, position);
+                }
+            }
+            return toDecimal(-mq, c, 0, bytes, position);
+        } else if (t != 0) {
+            return t < DOUBLE_C_TINY
+                    ? toDecimal(DOUBLE_Q_MIN, 10 * t, -1, bytes, position)
+                    : toDecimal(DOUBLE_Q_MIN, t, 0, bytes, position);
+        }
+        return ascii("0.0", bytes, position);
+    }
+
+    /**
+     * Write the shortest decimal text of a <code>float</code>. At most
+     * <code>MAX_FLOAT_LENGTH</code> bytes are written.
+     *
+     * @param value
+     *            the value
+     * @param bytes
+     *            the target array
+     * @param position
+     *            the position in the target array
+     *
+     * @return the position after the text
+     */
+    static int format(float value, byte[] bytes, int position) {
+        int bits = Float.floatToRawIntBits(value);
+        int t = bits & (FLOAT_C_MIN - 1);
+        int bq = (bits >>> (FLOAT_P - 1)) & 0xff;
+        if (bq == 0xff) {
+            return ascii(t != 0 ? "NaN"
+                    : bits > 0 ? "Infinity" : "-Infinity", bytes, position);
+        }
+
+        if (bits < 0) {
+            bytes[position++] = '-';
+        }
+        if (bq != 0) {
+            int mq = -FLOAT_Q_MIN + 1 - bq;
+            int c = FLOAT_C_MIN | t;
+            if (0 < mq && mq < FLOAT_P) {
+                int f = c >> mq;
+                if (f << mq == c) {
+                    return chars(f, 0, bytes, position);
+                }
+            }
+            return toDecimal(-mq, c, 0, bytes, position);
+        } else if (t != 0) {
+            return t < FLOAT_C_TINY
+                    ? toDecimal(FLOAT_Q_MIN, 10 * t, -1, bytes, position)
+                    : toDecimal(FLOAT_Q_MIN, t, 0, bytes, position);
+        }
+        return ascii("0.0", bytes, position);
+    }
+
+    /**
+     * Parse a <code>double</code> from decimal text.
+     *
+     * @param text
+     *            the text
+     *
+     * @return the value
+     *
+     * @exception NumberFormatException
+     *                if the text is not a number
+     */
+    static double parseDouble(String text) {
+        double value = fastParse(text, false);
+        return value == value ? value : Double.parseDouble(text);
+    }
+
+    /**
+     * Parse a <code>float</code> from decimal text.
+     *
+     * @param text
+     *            the text
+     *
+     * @return the value
+     *
+     * @exception NumberFormatException
+     *                if the text is not a number
+     */
+    static float parseFloat(String text) {
+        double value = fastParse(text, true);
+        return value == value ? (float) value : Float.parseFloat(text);
+    }
+
+    /**
+     * Indicates whether text is accepted by <code>Double.parseDouble</code>
+     * and <code>Float.parseFloat</code>, so it can be parsed without catching
+     * an exception.
+     *
+     * @param text
+     *            the text
+     *
+     * @return <code>true</code> if a number, or <code>false</code> otherwise
+     */
+    static boolean isNumber(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start < end && (text.charAt(start) == '-'
+                || text.charAt(start) == '+')) {
+            start++;
+        }
+        if (text.startsWith("NaN", start) || text.startsWith("Infinity",
+                start)) {
+            return end - start == (text.charAt(start) == 'N' ? 3 : 8);
+        }
+        if (start < end) {
+            char c = text.charAt(end - 1);
+            if (c == 'f' || c == 'F' || c == 'd' || c == 'D') {
+                end--;
+            }
+        }
+
+        boolean hex = end - start > 1 && text.charAt(start) == '0'
+                && (text.charAt(start + 1) == 'x'
+                        || text.charAt(start + 1) == 'X');
+        int radix = 10;
+        if (hex) {
+            start += 2;
+            radix = 16;
+        }
+        int i = start;
+        int digits = 0;
+        while (i < end && Character.digit(text.charAt(i), radix) >= 0
+                && text.charAt(i) < 0x80) {
+            i++;
+            digits++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && Character.digit(text.charAt(i), radix) >= 0
+                    && text.charAt(i) < 0x80) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+
+        if (i < end && (hex ? text.charAt(i) == 'p' || text.charAt(i) == 'P'
+                : text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                i++;
+            }
+            int exponent = i;
+            while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                i++;
+            }
+            if (i == exponent) {
+                return false;
+            }
+        } else if (hex) {
+            return false;
+        }
+        return i == end;
+    }
+
+    /**
+     * Parse a plain decimal whose significand and power of ten are exact in
+     * binary.
+     *
+     * @param text
+     *            the text
+     * @param single
+     *            <code>true</code> to round to <code>float</code> precision
+     *
+     * @return the value, or <code>NaN</code> if the fast path does not apply
+     */
+    private static double fastParse(String text, boolean single) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = length > 0 && text.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+
+        long significand = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        boolean fraction = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (significand != 0 || c != '0') {
+                    if (++digits > 18) {
+                        return Double.NaN;
+                    }
+                    significand = significand * 10 + (c - '0');
+                }
+                if (fraction) {
+                    exponent--;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!any) {
+            return Double.NaN;
+        }
+
+        if (i < length && (text.charAt(i) == 'E' || text.charAt(i) == 'e')) {
+            i++;
+            boolean negativeExponent = i < length && text.charAt(i) == '-';
+            if (negativeExponent || i < length && text.charAt(i) == '+') {
+                i++;
+            }
+            int start = i;
+            int value = 0;
+            for (; i < length && i - start < 4; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (i == start) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (i != length) {
+            return Double.NaN;
+        }
+
+        if (significand == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        double value;
+        if (single) {
+            if (significand >= 1 << 24 || exponent < -10 || exponent > 10) {
+                return Double.NaN;
+            }
+            float f = significand;
+            f = exponent < 0 ? f / FLOAT_POW10[-exponent]
+                    : f * FLOAT_POW10[exponent];
+            value = f;
+        } else {
+            if (significand >= 1L << 53 || exponent < -22 || exponent > 22) {
+                return Double.NaN;
+            }
+            value = significand;
+            value = exponent < 0 ? value / DOUBLE_POW10[-exponent]
+                    : value * DOUBLE_POW10[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Compute the shortest decimal of a finite positive <code>double</code>
+     * c 2<sup>q</sup> and write it.
+     *
+     * @param q
+     *            the binary exponent
+     * @param c
+     *            the significand
+     * @param dk
+     *            the correction of the decimal exponent
+     * @param bytes
+     *            the target array
+     * @param position
+     *            the position in the target array
+     *
+     * @return the position after the text
+     */
+    private static int toDecimal(int q, long c, int dk, byte[] bytes,
+            int position) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != DOUBLE_C_MIN || q == DOUBLE_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+
+        long g1 = G1[k - K_MIN];
+        long g0 = G0[k - K_MIN];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return chars(upin ? sp10 : tp10, k, bytes, position);
+            }
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return chars(uin ? s : t, k + dk, bytes, position);
+        }
+        long cmp = vb - (s + t << 1);
+        return chars(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk,
+                bytes, position);
+    }
+
+    /**
+     * Compute the shortest decimal of a finite positive <code>float</code>
+     * c 2<sup>q</sup> and write it.
+     *
+     * @param q
+     *            the binary exponent
+     * @param c
+     *            the significand
+     * @param dk
+     *            the correction of the decimal exponent
+     * @param bytes
+     *            the target array
+     * @param position
+     *            the position in the target array
+     *
+     * @return the position after the text
+     */
+    private static int toDecimal(int q, int c, int dk, byte[] bytes,
+            int position) {
+        int out = c & 0x1;
+        long cb = (long) c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != FLOAT_C_MIN || q == FLOAT_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 33;
+
+        long g = G1[k - K_MIN] + 1;
+        int vb = rop(g, cb << h);
+        int vbl = rop(g, cbl << h);
+        int vbr = rop(g, cbr << h);
+
+        int s = vb >> 2;
+        if (s >= 100) {
+            int sp10 = 10 * (int) (s * 1_717_986_919L >>> 34);
+            int tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return chars(upin ? sp10 : tp10, k, bytes, position);
+            }
+        }
+
+        int t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return chars(uin ? s : t, k + dk, bytes, position);
+        }
+        int cmp = vb - (s + t << 1);
+        return chars(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk,
+                bytes, position);
+    }
+
+    /**
+     * Returns the product of a 126 bit scaled power of ten and a value,
+     * rounded to odd, for <code>double</code> precision.
+     *
+     * @param g1
+     *            the upper 63 bits of the power of ten
+     * @param g0
+     *            the lower 63 bits of the power of ten
+     * @param cp
+     *            the value
+     *
+     * @return the product
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    /**
+     * Returns the product of a 64 bit scaled power of ten and a value,
+     * rounded to odd, for <code>float</code> precision.
+     *
+     * @param g
+     *            the power of ten
+     * @param cp
+     *            the value
+     *
+     * @return the product
+     */
+    private static int rop(long g, long cp) {
+        long x1 = multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+        return (int) (vbp | (x1 & MASK_32) + MASK_32 >>> 32);
+    }
+
+    /**
+     * Write the decimal f 10<sup>e</sup> in the layout of
+     * <code>Double.toString</code>: plain for values from 10<sup>-3</sup>
+     * up to 10<sup>7</sup>, computerized scientific notation otherwise.
+     *
+     * @param f
+     *            the decimal significand, positive
+     * @param e
+     *            the decimal exponent
+     * @param bytes
+     *            the target array
+     * @param position
+     *            the position in the target array
+     *
+     * @return the position after the text
+     */
+    private static int chars(long f, int e, byte[] bytes, int position) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int n = 1;
+        while (n < POW10.length && f >= POW10[n]) {
+            n++;
+        }
+        // The value is 0.d1d2...dn times 10 to the power of point
+        int point = e + n;
+
+        if (0 < point && point <= 7) {
+            digits(f, n, bytes, position);
+            if (n <= point) {
+                for (int i = n; i < point; i++) {
+                    bytes[position + i] = '0';
+                }
+                position += point;
+                bytes[position++] = '.';
+                bytes[position++] = '0';
+            } else {
+                System.arraycopy(bytes, position + point, bytes,
+                        position + point + 1, n - point);
+                bytes[position + point] = '.';
+                position += n + 1;
+            }
+            return position;
+        } else if (-3 < point && point <= 0) {
+            bytes[position++] = '0';
+            bytes[position++] = '.';
+            for (int i = point; i < 0; i++) {
+                bytes[position++] = '0';
+            }
+            digits(f, n, bytes, position);
+            return position + n;
+        }
+
+        digits(f, n, bytes, position + 1);
+        bytes[position] = bytes[position + 1];
+        bytes[position + 1] = '.';
+        if (n == 1) {
+            bytes[position + 2] = '0';
+            position += 3;
+        } else {
+            position += n + 1;
+        }
+        bytes[position++] = 'E';
+        int exponent = point - 1;
+        if (exponent < 0) {
+            bytes[position++] = '-';
+            exponent = -exponent;
+        }
+        if (exponent >= 100) {
+            bytes[position++] = (byte) ('0' + exponent / 100);
+            exponent %= 100;
+            bytes[position++] = (byte) ('0' + exponent / 10);
+        } else if (exponent >= 10) {
+            bytes[position++] = (byte) ('0' + exponent / 10);
+        }
+        bytes[position++] = (byte) ('0' + exponent % 10);
+        return position;
+    }
+
+    /**
+     * Write the digits of a number.
+     *
+     * @param f
+     *            the number
+     * @param n
+     *            the number of digits
+     * @param bytes
+     *            the target array
+     * @param position
+     *            the position in the target array
+     */
+    private static void digits(long f, int n, byte[] bytes, int position) {
+        for (int i = position + n - 1; i >= position; i--) {
+            bytes[i] = (byte) ('0' + f % 10);
+            f /= 10;
+        }
+    }
+
+    /**
+     * Write an ASCII text.
+     *
+     * @param text
+     *            the text
+     * @param bytes
+     *            the target array
+     * @param position
+     *            the position in the target array
+     *
+     * @return the position after the text
+     */
+    private static int ascii(String text, byte[] bytes, int position) {
+        for (int i = 0; i < text.length(); i++) {
+            bytes[position++] = (byte) text.charAt(i);
+        }
+        return position;
+    }
+
+    /**
+     * Returns the upper 64 bits of the 128 bit product of two signed
+     * values.
+     *
+     * @param x
+     *            the first value
+     * @param y
+     *            the second value
+     *
+     * @return the upper 64 bits of the product
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /**
+     * Returns the floor of log<sub>10</sub>(2<sup>e</sup>).
+     *
+     * @param e
+     *            the exponent
+     *
+     * @return the floor
+     */
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    /**
+     * Returns the floor of log<sub>10</sub>(3/4 2<sup>e</sup>).
+     *
+     * @param e
+     *            the exponent
+     *
+     * @return the floor
+     */
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    /**
+     * Returns the floor of log<sub>2</sub>(10<sup>e</sup>).
+     *
+     * @param e
+     *            the exponent
+     *
+     * @return the floor
+     */
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.util.Set;
+
+/**
+ * This class represents schemaless data for loading and saving key-value pairs
+ * that are not known at compile time. The data uses the same file format and
+ * paths as <code>UserData</code> and <code>ProgramData</code>, with a file name
+ * chosen at runtime.
+ * <p>
+ * Values are parsed once when loaded and kept in primitive arrays, so typed
+ * access such as <code>getInt</code> and <code>putDouble</code> never parses
+ * or boxes. All pairs are also available as text through
+ * <code>getUnknownFields</code>.
+ * <p>
+ * For very large stores, such as lookup tables with millions of entries, the
+ * data can be kept off-heap in direct buffers. Reading primitive values then
+ * does not allocate, and the entries add no load to the garbage collector.
+ *
+ * @author Sander Veldhuis
+ */
+public final class DynamicData extends Data {
+
+    /**
+     * Constructs a new dynamic data.
+     *
+     * @param path
+     *            the path of the data
+     * @param name
+     *            the file name of the data
+     * @param offHeap
+     *            <code>true</code> to keep the values off-heap, or
+     *            <code>false</code> otherwise
+     */
+    private DynamicData(String path, String name, boolean offHeap) {
+        super(path, name, offHeap ? new OffHeapStore() : new DynamicStore());
+    }
+
+    /**
+     * Returns a new dynamic data in the user data section of the current
+     * system.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     * @param name
+     *            the file name of the data
+     *
+     * @return the dynamic data
+     */
+    public static DynamicData user(String organisation, String program,
+            String name) {
+        return user(organisation, program, name, false);
+    }
+
+    /**
+     * Returns a new dynamic data in the user data section of the current
+     * system.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     * @param name
+     *            the file name of the data
+     * @param offHeap
+     *            <code>true</code> to keep the values off-heap, or
+     *            <code>false</code> otherwise
+     *
+     * @return the dynamic data
+     */
+    public static DynamicData user(String organisation, String program,
+            String name, boolean offHeap) {
+        return new DynamicData(UserData.pathOf(organisation, program), name,
+                offHeap);
+    }
+
+    /**
+     * Returns a new dynamic data in the program data section of the current
+     * system.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     * @param name
+     *            the file name of the data
+     *
+     * @return the dynamic data
+     */
+    public static DynamicData program(String organisation, String program,
+            String name) {
+        return program(organisation, program, name, false);
+    }
+
+    /**
+     * Returns a new dynamic data in the program data section of the current
+     * system.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     * @param name
+     *            the file name of the data
+     * @param offHeap
+     *            <code>true</code> to keep the values off-heap, or
+     *            <code>false</code> otherwise
+     *
+     * @return the dynamic data
+     */
+    public static DynamicData program(String organisation, String program,
+            String name, boolean offHeap) {
+        return new DynamicData(ProgramData.pathOf(organisation, program),
+                name, offHeap);
+    }
+
+    /**
+     * Indicates whether a key is present in this data.
+     *
+     * @param key
+     *            the key
+     *
+     * @return <code>true</code> if present, or <code>false</code> otherwise
+     */
+    public boolean contains(String key) {
+        return store().containsKey(key);
+    }
+
+    /**
+     * Returns the keys of this data in insertion order.
+     *
+     * @return the keys
+     */
+    public Set<String> keys() {
+        return store().keySet();
+    }
+
+    /**
+     * Returns the value of a key as <code>int</code>. A fractional number is
+     * rounded toward zero.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the value, or 0 if absent, not a number, or out of range of
+     *         <code>int</code>
+     */
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    /**
+     * Returns the value of a key as <code>int</code>. A fractional number is
+     * rounded toward zero.
+     *
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the value returned if the key is absent, not a number, or
+     *            out of range of <code>int</code>
+     *
+     * @return the value
+     */
+    public int getInt(String key, int defaultValue) {
+        long value = store().getLong(key, defaultValue);
+        return value == (int) value ? (int) value : defaultValue;
+    }
+
+    /**
+     * Returns the value of a key as <code>long</code>. A fractional number is
+     * rounded toward zero.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the value, or 0 if absent, not a number, or out of range of
+     *         <code>long</code>
+     */
+    public long getLong(String key) {
+        return getLong(key, 0);
+    }
+
+    /**
+     * Returns the value of a key as <code>long</code>. A fractional number is
+     * rounded toward zero.
+     *
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the value returned if the key is absent, not a number, or
+     *            out of range of <code>long</code>
+     *
+     * @return the value
+     */
+    public long getLong(String key, long defaultValue) {
+        return store().getLong(key, defaultValue);
+    }
+
+    /**
+     * Returns the value of a key as <code>double</code>.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the value, or 0 if absent or not a number
+     */
+    public double getDouble(String key) {
+        return getDouble(key, 0);
+    }
+
+    /**
+     * Returns the value of a key as <code>double</code>.
+     *
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the value returned if the key is absent or not a number
+     *
+     * @return the value
+     */
+    public double getDouble(String key, double defaultValue) {
+        return store().getDouble(key, defaultValue);
+    }
+
+    /**
+     * Returns the value of a key as <code>boolean</code>.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the value, or <code>false</code> if absent or not a boolean
+     */
+    public boolean getBoolean(String key) {
+        return getBoolean(key, false);
+    }
+
+    /**
+     * Returns the value of a key as <code>boolean</code>.
+     *
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the value returned if the key is absent or not a boolean
+     *
+     * @return the value
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return store().getBoolean(key, defaultValue);
+    }
+
+    /**
+     * Returns the value of a key as <code>String</code>.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the value, or <code>null</code> if absent
+     */
+    public String getString(String key) {
+        return store().get(key);
+    }
+
+    /**
+     * Returns the value of a key as <code>String</code>.
+     *
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the value returned if the key is absent
+     *
+     * @return the value
+     */
+    public String getString(String key, String defaultValue) {
+        String value = store().get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Set the value of a key to an <code>int</code>.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    public void putInt(String key, int value) {
+        store().putLong(key, value);
+    }
+
+    /**
+     * Set the value of a key to a <code>long</code>.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    public void putLong(String key, long value) {
+        store().putLong(key, value);
+    }
+
+    /**
+     * Set the value of a key to a <code>double</code>.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    public void putDouble(String key, double value) {
+        store().putDouble(key, value);
+    }
+
+    /**
+     * Set the value of a key to a <code>boolean</code>.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    public void putBoolean(String key, boolean value) {
+        store().putBoolean(key, value);
+    }
+
+    /**
+     * Set the value of a key to a <code>String</code>.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    public void putString(String key, String value) {
+        store().put(key, value);
+    }
+
+    /**
+     * Remove a key from this data.
+     *
+     * @param key
+     *            the key
+     */
+    public void remove(String key) {
+        store().remove(key);
+    }
+
+    /**
+     * Returns the store holding the values of this data. The store is the
+     * unknown data map, as this class declares no fields.
+     *
+     * @return the store
+     */
+    private TypedStore store() {
+        return (TypedStore) getUnknownFields();
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * This class represents a typed key-value store keeping values in primitive
+ * arrays on the heap. Keys are resolved to array slots through an
+ * open-addressing index and keep their insertion order.
+ *
+ * @author Sander Veldhuis
+ */
+final class DynamicStore extends TypedStore {
+
+    /** The initial number of slots. */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** The keys by slot. */
+    private String[] keys = new String[INITIAL_CAPACITY];
+
+    /** The value kinds by slot. */
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+
+    /** The primitive values by slot, as raw bits. */
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    /** The <code>String</code> values by slot. */
+    private String[] strings = new String[INITIAL_CAPACITY];
+
+    /** The index of slot numbers plus one by key hash, or zero if empty. */
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+
+    /** The number of used slots, including removed slots. */
+    private int count;
+
+    /** The number of present keys. */
+    private int size;
+
+    /** The number of structural modifications. */
+    private int modifications;
+
+    /** The entry set view, or <code>null</code> if not created yet. */
+    private Set<Map.Entry<String, String>> entrySet;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = find((String) key);
+        if (slot < 0) {
+            return null;
+        }
+        String previous = format(slot);
+        removeSlot(slot);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, count, null);
+        Arrays.fill(kinds, 0, count, REMOVED);
+        Arrays.fill(strings, 0, count, null);
+        Arrays.fill(index, 0);
+        count = 0;
+        size = 0;
+        modifications++;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        int expected = modifications;
+        for (int slot = 0; slot < count; slot++) {
+            if (kinds[slot] != REMOVED) {
+                action.accept(keys[slot], format(slot));
+            }
+        }
+        if (modifications != expected) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void clear() {
+                    DynamicStore.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    @Override
+    int find(String key) {
+        int slot = indexOf(key);
+        return slot < 0 || kinds[slot] == REMOVED ? -1 : slot;
+    }
+
+    @Override
+    byte kind(int handle) {
+        return kinds[handle];
+    }
+
+    @Override
+    long bits(int handle) {
+        return values[handle];
+    }
+
+    @Override
+    String text(int handle) {
+        return strings[handle];
+    }
+
+    @Override
+    void store(String key, byte kind, long bits, String text) {
+        int slot = slotFor(key);
+        if (kinds[slot] == REMOVED) {
+            size++;
+        }
+        kinds[slot] = kind;
+        values[slot] = bits;
+        strings[slot] = text;
+    }
+
+    /**
+     * Returns the slot of a key, including a removed slot still indexed.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the slot, or -1 if the key is not indexed
+     */
+    private int indexOf(String key) {
+        int position = positionOf(key);
+        return position < 0 ? -1 : index[position] - 1;
+    }
+
+    /**
+     * Returns the position of a key in the index.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the position, or -1 if the key is not indexed
+     */
+    private int positionOf(String key) {
+        int mask = index.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            int entry = index[i];
+            if (entry == 0) {
+                return -1;
+            }
+            String candidate = keys[entry - 1];
+            if (candidate == key || candidate.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of a present key, or adds a slot at the end. A key
+     * put again after removal gets a new slot, so keys keep the order in
+     * which they were put.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the slot
+     */
+    private int slotFor(String key) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+
+        int slot = indexOf(key);
+        if (slot >= 0 && kinds[slot] != REMOVED) {
+            return slot;
+        }
+
+        if (count == keys.length) {
+            if (count - size >= count / 2) {
+                compact();
+            } else {
+                resize(keys.length * 2);
+            }
+        }
+        slot = count++;
+        keys[slot] = key;
+        int position = positionOf(key);
+        if (position >= 0) {
+            keys[index[position] - 1] = null;
+            index[position] = slot + 1;
+        } else {
+            insert(key, slot);
+        }
+        modifications++;
+        return slot;
+    }
+
+    /**
+     * Add a slot to the index.
+     *
+     * @param key
+     *            the key of the slot
+     * @param slot
+     *            the slot
+     */
+    private void insert(String key, int slot) {
+        int mask = index.length - 1;
+        int i = hash(key) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+    }
+
+    /**
+     * Remove the value of a slot. The slot stays indexed until the store is
+     * compacted or resized, and putting the key again moves its index entry
+     * to a new slot.
+     *
+     * @param slot
+     *            the slot
+     */
+    private void removeSlot(int slot) {
+        kinds[slot] = REMOVED;
+        strings[slot] = null;
+        size--;
+        modifications++;
+    }
+
+    /**
+     * Drop all removed slots, keeping the order of the present keys.
+     */
+    private void compact() {
+        int target = 0;
+        for (int slot = 0; slot < count; slot++) {
+            if (kinds[slot] != REMOVED) {
+                keys[target] = keys[slot];
+                kinds[target] = kinds[slot];
+                values[target] = values[slot];
+                strings[target] = strings[slot];
+                target++;
+            }
+        }
+        Arrays.fill(keys, target, count, null);
+        Arrays.fill(kinds, target, count, REMOVED);
+        Arrays.fill(strings, target, count, null);
+        count = target;
+        reindex();
+    }
+
+    /**
+     * Resize the slot arrays and the index.
+     *
+     * @param capacity
+     *            the new number of slots
+     */
+    private void resize(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        values = Arrays.copyOf(values, capacity);
+        strings = Arrays.copyOf(strings, capacity);
+        index = new int[capacity * 2];
+        reindex();
+    }
+
+    /**
+     * Rebuild the index from the present slots, dropping the keys of removed
+     * slots.
+     */
+    private void reindex() {
+        Arrays.fill(index, 0);
+        for (int slot = 0; slot < count; slot++) {
+            if (kinds[slot] != REMOVED) {
+                insert(keys[slot], slot);
+            } else {
+                keys[slot] = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the spread hash of a key.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the hash
+     */
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * This class represents an iterator over the present entries in slot
+     * order.
+     *
+     * @author Sander Veldhuis
+     */
+    private final class EntryIterator
+            implements Iterator<Map.Entry<String, String>> {
+
+        /** The next slot to inspect. */
+        private int next;
+
+        /** The slot last returned, or -1. */
+        private int last = -1;
+
+        /** The expected number of structural modifications. */
+        private int expected = modifications;
+
+        @Override
+        public boolean hasNext() {
+            while (next < count && kinds[next] == REMOVED) {
+                next++;
+            }
+            return next < count;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (modifications != expected) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new AbstractMap.SimpleImmutableEntry<String, String>(
+                    keys[last], format(last));
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0 || kinds[last] == REMOVED) {
+                throw new IllegalStateException();
+            }
+            if (modifications != expected) {
+                throw new ConcurrentModificationException();
+            }
+            removeSlot(last);
+            expected = modifications;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * This class represents the storage of the file system. Files are replaced by
+ * atomic moves where supported, second files are hard links where supported,
+ * and locks are held on lock files next to the files.
+ *
+ * @author Sander Veldhuis
+ */
+final class FileDataStorage implements DataStorage {
+
+    @Override
+    public InputStream open(File file) throws IOException {
+        return new FileInputStream(file);
+    }
+
+    @Override
+    public byte[] read(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Override
+    public WritableByteChannel write(File file) throws IOException {
+        createParent(file);
+        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void rename(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void link(File source, File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public BasicFileAttributes stat(File file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(
+                    file.toPath(), BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Closeable lock(File file, boolean shared) throws IOException {
+        if (shared) {
+            return DataLock.shared(file);
+        }
+        createParent(file);
+        return DataLock.exclusive(file);
+    }
+
+    /**
+     * Create the missing parent directories of a file.
+     *
+     * @param file
+     *            the file
+     */
+    private static void createParent(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represents data metrics which keep latency histograms and
+ * counters per data class. Recording is lock-free and does not allocate once
+ * the statistics of a data class exist.
+ *
+ * @author Sander Veldhuis
+ */
+public class HistogramDataMetrics implements DataMetrics {
+
+    /**
+     * This class represents a latency histogram with power-of-two nanosecond
+     * buckets. Bucket <code>i</code> counts durations in the range
+     * <code>[2^(i-1), 2^i)</code>, bucket <code>0</code> counts zero
+     * durations, and the last bucket ends at <code>Long.MAX_VALUE</code>.
+     */
+    public static final class Histogram {
+
+        /** The number of buckets. */
+        public static final int BUCKETS = 64;
+
+        /** The bucket counts. */
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        /** The number of recorded durations. */
+        private final LongAdder count = new LongAdder();
+
+        /** The sum of all recorded durations in nanoseconds. */
+        private final LongAdder total = new LongAdder();
+
+        /**
+         * Record a duration.
+         *
+         * @param nanos
+         *            the duration in nanoseconds
+         */
+        void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            total.add(value);
+        }
+
+        /**
+         * Returns the number of recorded durations.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the sum of all recorded durations.
+         *
+         * @return the total in nanoseconds
+         */
+        public long getTotalNanos() {
+            return total.sum();
+        }
+
+        /**
+         * Returns the number of durations recorded in a bucket.
+         *
+         * @param bucket
+         *            the bucket index, from <code>0</code> to
+         *            <code>BUCKETS - 1</code>
+         *
+         * @return the bucket count
+         */
+        public long getBucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the specified
+         * percentile.
+         *
+         * @param percentile
+         *            the percentile, from <code>0</code> to <code>100</code>
+         *
+         * @return the upper bound in nanoseconds, at most
+         *         <code>Long.MAX_VALUE</code>, or <code>0</code> if nothing was
+         *         recorded
+         */
+        public long getPercentile(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                sum += counts[i];
+            }
+
+            long rank = (long) Math.ceil(sum * percentile / 100d);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (counts[i] > 0 && seen >= rank) {
+                    return i == 0 ? 0
+                            : (i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * This class represents the statistics of a single data class.
+     */
+    public static final class Statistics {
+
+        /** The latency of first loads. */
+        private final Histogram loadLatency = new Histogram();
+
+        /** The latency of reloads. */
+        private final Histogram reloadLatency = new Histogram();
+
+        /** The latency of saves. */
+        private final Histogram saveLatency = new Histogram();
+
+        /** The number of bytes read. */
+        private final LongAdder bytesRead = new LongAdder();
+
+        /** The number of bytes written. */
+        private final LongAdder bytesWritten = new LongAdder();
+
+        /** The latency of failed loads. */
+        private final Histogram failedLoadLatency = new Histogram();
+
+        /** The number of lines which could not be parsed. */
+        private final LongAdder parseFailures = new LongAdder();
+
+        /** The number of fields of the last load or save. */
+        private volatile int fields;
+
+        /** The number of unknown fields of the last load or save. */
+        private volatile int unknownFields;
+
+        /**
+         * Returns the latency histogram of first loads.
+         *
+         * @return the histogram
+         */
+        public Histogram getLoadLatency() {
+            return loadLatency;
+        }
+
+        /**
+         * Returns the latency histogram of reloads.
+         *
+         * @return the histogram
+         */
+        public Histogram getReloadLatency() {
+            return reloadLatency;
+        }
+
+        /**
+         * Returns the latency histogram of saves.
+         *
+         * @return the histogram
+         */
+        public Histogram getSaveLatency() {
+            return saveLatency;
+        }
+
+        /**
+         * Returns the latency histogram of failed loads and reloads.
+         *
+         * @return the histogram
+         */
+        public Histogram getFailedLoadLatency() {
+            return failedLoadLatency;
+        }
+
+        /**
+         * Returns the total number of bytes read.
+         *
+         * @return the number of bytes
+         */
+        public long getBytesRead() {
+            return bytesRead.sum();
+        }
+
+        /**
+         * Returns the total number of bytes written.
+         *
+         * @return the number of bytes
+         */
+        public long getBytesWritten() {
+            return bytesWritten.sum();
+        }
+
+        /**
+         * Returns the total number of lines which could not be parsed.
+         *
+         * @return the number of parse failures
+         */
+        public long getParseFailures() {
+            return parseFailures.sum();
+        }
+
+        /**
+         * Returns the number of fields of the last load or save.
+         *
+         * @return the number of fields
+         */
+        public int getFields() {
+            return fields;
+        }
+
+        /**
+         * Returns the number of unknown fields of the last load or save.
+         *
+         * @return the number of unknown fields
+         */
+        public int getUnknownFields() {
+            return unknownFields;
+        }
+    }
+
+    /** The statistics per data class. */
+    private final ConcurrentMap<Class<?>, Statistics> statistics =
+            new ConcurrentHashMap<Class<?>, Statistics>();
+
+    @Override
+    public void loaded(Class<?> type, long nanos, long bytes, int fields,
+            int unknownFields, int parseFailures) {
+        Statistics stats = statisticsOf(type);
+        stats.loadLatency.record(nanos);
+        recordRead(stats, bytes, fields, unknownFields, parseFailures);
+    }
+
+    @Override
+    public void reloaded(Class<?> type, long nanos, long bytes, int fields,
+            int unknownFields, int parseFailures) {
+        Statistics stats = statisticsOf(type);
+        stats.reloadLatency.record(nanos);
+        recordRead(stats, bytes, fields, unknownFields, parseFailures);
+    }
+
+    @Override
+    public void saved(Class<?> type, long nanos, long bytes, int fields,
+            int unknownFields) {
+        Statistics stats = statisticsOf(type);
+        stats.saveLatency.record(nanos);
+        stats.bytesWritten.add(bytes);
+        stats.fields = fields;
+        stats.unknownFields = unknownFields;
+    }
+
+    @Override
+    public void loadFailed(Class<?> type, long nanos) {
+        statisticsOf(type).failedLoadLatency.record(nanos);
+    }
+
+    /**
+     * Returns the statistics of a data class.
+     *
+     * @param type
+     *            the class of the data
+     *
+     * @return the statistics, or <code>null</code> if nothing was recorded
+     */
+    public Statistics getStatistics(Class<?> type) {
+        return statistics.get(type);
+    }
+
+    /**
+     * Returns the statistics of all data classes.
+     *
+     * @return the statistics per data class
+     */
+    public Map<Class<?>, Statistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * Returns the statistics of a data class, creating them if needed.
+     *
+     * @param type
+     *            the class of the data
+     *
+     * @return the statistics
+     */
+    private Statistics statisticsOf(Class<?> type) {
+        Statistics stats = statistics.get(type);
+        if (stats == null) {
+            stats = statistics.computeIfAbsent(type, key -> new Statistics());
+        }
+        return stats;
+    }
+
+    /**
+     * Record the counters of a load or reload.
+     *
+     * @param stats
+     *            the statistics
+     * @param bytes
+     *            the number of bytes read
+     * @param fields
+     *            the number of fields read
+     * @param unknownFields
+     *            the number of unknown fields read
+     * @param parseFailures
+     *            the number of lines which could not be parsed
+     */
+    private static void recordRead(Statistics stats, long bytes, int fields,
+            int unknownFields, int parseFailures) {
+        stats.bytesRead.add(bytes);
+        stats.parseFailures.add(parseFailures);
+        stats.fields = fields;
+        stats.unknownFields = unknownFields;
+    }
+}
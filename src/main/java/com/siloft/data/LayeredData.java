@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This class represents layered data, resolving every field from a program
+ * data layer, overridden by a user data layer, optionally overridden by an
+ * environment layer of system properties and environment variables.
+ * Supported systems are Windows, Linux, and Mac OS.
+ * <p>
+ * The layers are resolved once on load into the fields of this data, so
+ * reading a value is reading a field. On reload, only layers of which the
+ * file changed are read and parsed again. Saving writes the user data layer,
+ * holding only the fields which differ from the program data layer, so the
+ * data must be loaded before saving. The unknown fields are those of the
+ * user data layer.
+ * <p>
+ * The environment layer is looked up per field by the system property
+ * <code>[organisation].[program].[class name].[field]</code>, or else by the
+ * environment variable
+ * <code>[ORGANISATION]_[PROGRAM]_[CLASS NAME]_[FIELD]</code> in upper case
+ * with all other characters replaced by underscores.
+ * <p>
+ * The file paths are those of {@link ProgramData} and {@link UserData}. The
+ * same data types as for those are allowed.
+ *
+ * @author Sander Veldhuis
+ */
+public class LayeredData extends Data {
+
+    /**
+     * This class represents a file layer with the entries parsed when its
+     * file was last read.
+     */
+    private static final class Layer {
+
+        /** The file of the layer. */
+        private final File file;
+
+        /** The attributes of the file when read, or <code>null</code>. */
+        private BasicFileAttributes attributes;
+
+        /** The generation of the file when read. */
+        private long generation;
+
+        /** The entries of the file. */
+        private DataEntries entries = new DataEntries();
+
+        /**
+         * Constructs a new layer.
+         *
+         * @param file
+         *            the file of the layer
+         */
+        Layer(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Read and parse the file of the layer again if it changed since last
+         * read.
+         *
+         * @param storage
+         *            the storage of the file
+         * @param schema
+         *            the schema of the data class
+         * @param valuePooling
+         *            <code>true</code> to share unknown field names and
+         *            short values through the string pool
+         *
+         * @return the number of bytes read
+         *
+         * @throws IOException
+         *             if reading the file failed
+         */
+        long refresh(DataStorage storage, DataSchema schema,
+                boolean valuePooling) throws IOException {
+            BasicFileAttributes current = storage.stat(file);
+            if (current == null ? attributes == null
+                    : attributes != null && unchanged(current)) {
+                return 0;
+            }
+
+            attributes = current;
+            if (current == null) {
+                generation = 0;
+                entries = new DataEntries();
+                return 0;
+            }
+
+            ByteBuffer buffer;
+            try (Closeable lock = storage.lock(file, true)) {
+                buffer = readVerified(storage, file);
+            }
+            generation = generationOf(buffer.array(), buffer.limit());
+            entries = DataEntries.parse(buffer.array(), 0, buffer.limit(),
+                    schema, valuePooling,
+                    hasSchema(buffer.array(), buffer.limit(), schema));
+            return buffer.capacity();
+        }
+
+        /**
+         * Indicates whether the file is unchanged since last read. Files are
+         * replaced on save, so the file key changes as well where supported.
+         *
+         * @param current
+         *            the current attributes of the file
+         *
+         * @return <code>true</code> if unchanged, or <code>false</code>
+         *         otherwise
+         */
+        private boolean unchanged(BasicFileAttributes current) {
+            return current.lastModifiedTime()
+                    .equals(attributes.lastModifiedTime())
+                    && current.size() == attributes.size()
+                    && Objects.equals(current.fileKey(), attributes.fileKey());
+        }
+    }
+
+    /** The program data layer. */
+    private final Layer programLayer;
+
+    /** The user data layer. */
+    private final Layer userLayer;
+
+    /** The system property name prefix of the environment layer. */
+    private final String propertyPrefix;
+
+    /** The environment variable name prefix of the environment layer. */
+    private final String variablePrefix;
+
+    /**
+     * The system property names per field of the environment layer, or
+     * <code>null</code> if not resolved yet.
+     */
+    private String[] propertyNames;
+
+    /**
+     * The environment variable names per field of the environment layer, or
+     * <code>null</code> if not resolved yet.
+     */
+    private String[] variableNames;
+
+    /** Indicates whether the environment layer is resolved. */
+    private boolean isEnvironmentLayer;
+
+    /** The field values resolved below the user data layer. */
+    private String[] lowerValues;
+
+    /** The field values of the user data layer, or <code>null</code>. */
+    private String[] userValues;
+
+    /** Indicates per field whether the environment layer overrides it. */
+    private boolean[] environmentValues;
+
+    /**
+     * Constructs a new layered data.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     *
+     * @exception IllegalArgumentException
+     *                if any of the fields is not valid
+     */
+    protected LayeredData(String organisation, String program) {
+        super(UserData.pathOf(organisation, program));
+        String name = getClass().getSimpleName();
+        programLayer = new Layer(
+                new File(ProgramData.pathOf(organisation, program), name));
+        userLayer = new Layer(getFile());
+        propertyPrefix = organisation + "." + program + "." + name + ".";
+        variablePrefix = (organisation + "_" + program + "_" + name + "_")
+                .toUpperCase().replaceAll("[^A-Z0-9_]", "_");
+    }
+
+    /**
+     * Loads the data by resolving all layers. Only layers of which the file
+     * changed since last loaded are read again. A missing layer file is not
+     * created. The diagnostics list the problems per layer, in file order.
+     *
+     * @throws IOException
+     *             if loading the data failed
+     */
+    @Override
+    public void load() throws IOException {
+        long start = System.nanoTime();
+        Object event = DataEvents.beginLoad();
+        boolean reload = isLoaded();
+        storeDefaults();
+
+        DataSchema schema = getSchema();
+        long bytes;
+        try {
+            bytes = programLayer.refresh(getStorage(), schema,
+                    isValuePooling())
+                    + userLayer.refresh(getStorage(), schema,
+                            isValuePooling());
+        } catch (IOException e) {
+            getMetrics().loadFailed(getClass(), System.nanoTime() - start);
+            throw e;
+        }
+        boolean tracked = snapshot();
+
+        lowerValues = new String[schema.size()];
+        userValues = new String[schema.size()];
+        environmentValues = new boolean[schema.size()];
+
+        setDefaults();
+        programLayer.entries.apply(this, schema, false);
+        for (int slot = 0; slot < schema.size(); slot++) {
+            lowerValues[slot] = valueOf(slot);
+        }
+        userLayer.entries.apply(this, schema, true);
+        for (int i = 0; i < userLayer.entries.fields(); i++) {
+            int slot = userLayer.entries.slotAt(i);
+            userValues[slot] = valueOf(slot);
+        }
+        List<DataDiagnostics.Problem> problems =
+                new ArrayList<DataDiagnostics.Problem>(
+                        programLayer.entries.problems());
+        List<DataDiagnostics.Problem> userProblems =
+                userLayer.entries.problems();
+        removeUnlisted(Collections.singletonList(userLayer.entries),
+                userLayer.entries.unknownFields()
+                        - unknownDuplicates(userProblems));
+        problems.addAll(userProblems);
+        if (isEnvironmentLayer) {
+            applyEnvironment(problems);
+        }
+        int parseFailures = 0;
+        for (DataDiagnostics.Problem problem : problems) {
+            if (problem.getKind() != DataDiagnostics.Kind.DUPLICATE_KEY) {
+                DataEvents.parseError(getClass(), getFile(), problem.getLine());
+                parseFailures++;
+            }
+        }
+        setDiagnostics(problems.isEmpty() ? DataDiagnostics.NONE
+                : new DataDiagnostics(problems));
+        loaded(userLayer.generation);
+        if (tracked) {
+            fireChanges();
+        }
+
+        int unknownFields = getUnknownFields().size();
+        DataEvents.commitLoad(event, getClass(), getFile(), bytes,
+                schema.size(), unknownFields, parseFailures);
+        long nanos = System.nanoTime() - start;
+        if (reload) {
+            getMetrics().reloaded(getClass(), nanos, bytes, schema.size(),
+                    unknownFields, parseFailures);
+        } else {
+            getMetrics().loaded(getClass(), nanos, bytes, schema.size(),
+                    unknownFields, parseFailures);
+        }
+    }
+
+    /**
+     * Set whether the environment layer of system properties and environment
+     * variables is resolved on load.
+     *
+     * @param environment
+     *            <code>true</code> to resolve the environment layer, or
+     *            <code>false</code> otherwise
+     */
+    public void setEnvironmentLayer(boolean environment) {
+        isEnvironmentLayer = environment;
+    }
+
+    /**
+     * Indicates whether the environment layer of system properties and
+     * environment variables is resolved on load.
+     *
+     * @return <code>true</code> if resolved, or <code>false</code> otherwise
+     */
+    public boolean isEnvironmentLayer() {
+        return isEnvironmentLayer;
+    }
+
+    /**
+     * Returns the file of the program data layer.
+     *
+     * @return the file
+     */
+    public File getProgramFile() {
+        return programLayer.file;
+    }
+
+    /**
+     * Prepare saving the user data layer. The layers must be resolved, as
+     * only the fields which differ from the program data layer are saved.
+     *
+     * @return the generation to stamp
+     *
+     * @throws IOException
+     *             if reading the file failed
+     * @exception IllegalStateException
+     *                if the data is read-only or not loaded
+     */
+    @Override
+    long prepareSave() throws IOException {
+        if (lowerValues == null) {
+            throw new IllegalStateException("Data is not loaded");
+        }
+        return super.prepareSave();
+    }
+
+    /**
+     * Write the line of a field to save in the user data layer, if saved.
+     *
+     * @param writer
+     *            the writer of the file
+     * @param slot
+     *            the slot of the field
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    @Override
+    void writeField(DataWriter writer, int slot) throws IOException {
+        String value = savedValue(slot);
+        if (value != null) {
+            writer.entry(getSchema().name(slot), value);
+        }
+    }
+
+    /**
+     * Returns the value of a field to save in the user data layer. Fields
+     * overridden by the environment layer keep their user data layer value;
+     * fields equal to the program data layer are not saved.
+     *
+     * @param slot
+     *            the slot of the field
+     *
+     * @return the value, or <code>null</code> if the field is not saved
+     */
+    private String savedValue(int slot) {
+        if (environmentValues[slot]) {
+            return userValues[slot];
+        }
+        String value = valueOf(slot);
+        return value.equals(lowerValues[slot]) ? null : value;
+    }
+
+    /**
+     * Apply the environment layer to the fields of this data. The system
+     * property and environment variable names are built on first use.
+     *
+     * @param problems
+     *            the problems to add values which could not be parsed to
+     */
+    private void applyEnvironment(List<DataDiagnostics.Problem> problems) {
+        DataSchema schema = getSchema();
+        if (propertyNames == null) {
+            propertyNames = new String[schema.size()];
+            variableNames = new String[schema.size()];
+            for (int slot = 0; slot < schema.size(); slot++) {
+                String name = schema.name(slot);
+                propertyNames[slot] = propertyPrefix + name;
+                variableNames[slot] = variablePrefix + name.toUpperCase()
+                        .replaceAll("[^A-Z0-9_]", "_");
+            }
+        }
+
+        DataEntries entries = new DataEntries();
+        for (int slot = 0; slot < schema.size(); slot++) {
+            String name = schema.name(slot);
+            String value = System.getProperty(propertyNames[slot]);
+            if (value == null) {
+                value = System.getenv(variableNames[slot]);
+            }
+            if (value != null) {
+                if (entries.parse(name, value, schema)) {
+                    environmentValues[slot] = true;
+                }
+            }
+        }
+        entries.apply(this, schema, false);
+        problems.addAll(entries.problems());
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class represents a storage keeping all files on the heap, so no file
+ * system is accessed at all. Files are identified by their absolute path and
+ * exist as long as the storage. Written files become visible when their
+ * channel is closed, and locks coordinate the users of the same storage only.
+ *
+ * @author Sander Veldhuis
+ */
+public class MemoryDataStorage implements DataStorage {
+
+    /**
+     * This class represents the immutable content of a file. Each write
+     * creates a new node, which serves as file key.
+     */
+    private static final class Node implements BasicFileAttributes {
+
+        /** The content. */
+        private final byte[] content;
+
+        /** The time the content was written. */
+        private final FileTime modified;
+
+        /**
+         * Constructs a new node.
+         *
+         * @param content
+         *            the content
+         */
+        Node(byte[] content) {
+            this.content = content;
+            modified = FileTime.fromMillis(System.currentTimeMillis());
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return modified;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return true;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return content.length;
+        }
+
+        @Override
+        public Object fileKey() {
+            return this;
+        }
+    }
+
+    /**
+     * This class represents a channel collecting the content of a file, which
+     * is stored when closed.
+     */
+    private final class Writer implements WritableByteChannel {
+
+        /** The path of the file. */
+        private final String path;
+
+        /** The content written so far. */
+        private final ByteArrayOutputStream content =
+                new ByteArrayOutputStream();
+
+        /** Indicates whether the channel is open. */
+        private boolean isOpen = true;
+
+        /**
+         * Constructs a new writer.
+         *
+         * @param path
+         *            the path of the file
+         */
+        Writer(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            if (!isOpen) {
+                throw new ClosedChannelException();
+            }
+            int length = source.remaining();
+            if (source.hasArray()) {
+                content.write(source.array(),
+                        source.arrayOffset() + source.position(), length);
+                ((Buffer) source).position(source.position() + length);
+            } else {
+                byte[] bytes = new byte[length];
+                source.get(bytes);
+                content.write(bytes, 0, length);
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return isOpen;
+        }
+
+        @Override
+        public void close() {
+            if (isOpen) {
+                isOpen = false;
+                files.put(path, new Node(content.toByteArray()));
+            }
+        }
+    }
+
+    /** The files per absolute path. */
+    private final ConcurrentMap<String, Node> files =
+            new ConcurrentHashMap<String, Node>();
+
+    /** The locks per absolute path. */
+    private final ConcurrentMap<String, ReentrantReadWriteLock> locks =
+            new ConcurrentHashMap<String, ReentrantReadWriteLock>();
+
+    @Override
+    public InputStream open(File file) throws IOException {
+        return new ByteArrayInputStream(nodeOf(file).content);
+    }
+
+    @Override
+    public byte[] read(File file) throws IOException {
+        return nodeOf(file).content.clone();
+    }
+
+    @Override
+    public WritableByteChannel write(File file) {
+        return new Writer(file.getAbsolutePath());
+    }
+
+    @Override
+    public void rename(File source, File target) throws IOException {
+        Node node = files.remove(source.getAbsolutePath());
+        if (node == null) {
+            throw new NoSuchFileException(source.getPath());
+        }
+        files.put(target.getAbsolutePath(), node);
+    }
+
+    @Override
+    public void link(File source, File target) throws IOException {
+        files.put(target.getAbsolutePath(), nodeOf(source));
+    }
+
+    @Override
+    public BasicFileAttributes stat(File file) {
+        return files.get(file.getAbsolutePath());
+    }
+
+    @Override
+    public Closeable lock(File file, boolean shared) {
+        ReentrantReadWriteLock lock = locks.computeIfAbsent(
+                file.getAbsolutePath(), path -> new ReentrantReadWriteLock());
+        Lock held = shared ? lock.readLock() : lock.writeLock();
+        held.lock();
+        return held::unlock;
+    }
+
+    /**
+     * Delete a file.
+     *
+     * @param file
+     *            the file
+     *
+     * @return <code>true</code> if deleted, or <code>false</code> if the
+     *         file does not exist
+     */
+    public boolean delete(File file) {
+        return files.remove(file.getAbsolutePath()) != null;
+    }
+
+    /**
+     * Returns the node of an existing file.
+     *
+     * @param file
+     *            the file
+     *
+     * @return the node
+     *
+     * @throws NoSuchFileException
+     *             if the file does not exist
+     */
+    private Node nodeOf(File file) throws NoSuchFileException {
+        Node node = files.get(file.getAbsolutePath());
+        if (node == null) {
+            throw new NoSuchFileException(file.getPath());
+        }
+        return node;
+    }
+}
@@ -0,0 +1,713 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * This class represents a typed key-value store keeping keys and values in
+ * direct buffers outside the Java heap. Millions of entries therefore cost a
+ * handful of heap objects instead of several objects per entry.
+ * <p>
+ * Each key is a record in a record buffer, in insertion order:
+ * <ul>
+ * <li>the key hash (<code>int</code>)</li>
+ * <li>the UTF-8 key length (<code>int</code>)</li>
+ * <li>the value kind (<code>byte</code>)</li>
+ * <li>the primitive value, or the offset and length of a <code>String</code>
+ * value in the value buffer (<code>long</code>)</li>
+ * <li>the UTF-8 key</li>
+ * </ul>
+ * Records are found through an open-addressing index in a third buffer. Keys
+ * are compared against their UTF-8 bytes in place, so reading a primitive
+ * value does not allocate. Removed records and replaced <code>String</code>
+ * values are reclaimed when the buffers would otherwise grow.
+ * <p>
+ * The buffers count against the maximum direct memory of the JVM.
+ *
+ * @author Sander Veldhuis
+ */
+final class OffHeapStore extends TypedStore {
+
+    /** The offset of the key hash in a record. */
+    private static final int HASH = 0;
+
+    /** The offset of the key length in a record. */
+    private static final int KEY_LENGTH = 4;
+
+    /** The offset of the value kind in a record. */
+    private static final int KIND = 8;
+
+    /** The offset of the value bits in a record. */
+    private static final int BITS = 9;
+
+    /** The offset of the key in a record. */
+    private static final int KEY = 17;
+
+    /** The value bits of a <code>null</code> <code>String</code> value. */
+    private static final long NULL_TEXT = -1L;
+
+    /** The initial capacity of the record and value buffers in bytes. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The initial number of index slots. */
+    private static final int INITIAL_INDEX = 16;
+
+    /** The maximum capacity of a buffer in bytes. */
+    private static final int MAXIMUM_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /** The records in insertion order. */
+    private ByteBuffer records = allocate(INITIAL_CAPACITY);
+
+    /** The end of the used part of the record buffer. */
+    private int recordEnd;
+
+    /** The UTF-8 <code>String</code> values. */
+    private ByteBuffer values = allocate(INITIAL_CAPACITY);
+
+    /** The end of the used part of the value buffer. */
+    private int valueEnd;
+
+    /** The number of bytes of replaced or removed values. */
+    private int deadValueBytes;
+
+    /** The index of record offsets plus one by key hash, or zero if empty. */
+    private ByteBuffer index = allocate(INITIAL_INDEX * 4);
+
+    /** The number of index slots. */
+    private int indexCapacity = INITIAL_INDEX;
+
+    /** The number of records, including removed records. */
+    private int count;
+
+    /** The number of removed records. */
+    private int removed;
+
+    /** The number of present keys. */
+    private int size;
+
+    /** The number of structural modifications. */
+    private int modifications;
+
+    /** The entry set view, or <code>null</code> if not created yet. */
+    private Set<Map.Entry<String, String>> entrySet;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int record = find((String) key);
+        if (record < 0) {
+            return null;
+        }
+        String previous = format(record);
+        removeRecord(record);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        recordEnd = 0;
+        valueEnd = 0;
+        deadValueBytes = 0;
+        index = allocate(INITIAL_INDEX * 4);
+        indexCapacity = INITIAL_INDEX;
+        count = 0;
+        removed = 0;
+        size = 0;
+        modifications++;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        int expected = modifications;
+        for (int record = 0; record < recordEnd; record = nextRecord(record)) {
+            if (records.get(record + KIND) != REMOVED) {
+                action.accept(keyOf(record), format(record));
+            }
+        }
+        if (modifications != expected) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void clear() {
+                    OffHeapStore.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    @Override
+    int find(String key) {
+        int record = indexOf(key, hash(key));
+        return record < 0 || records.get(record + KIND) == REMOVED ? -1
+                : record;
+    }
+
+    @Override
+    byte kind(int handle) {
+        return records.get(handle + KIND);
+    }
+
+    @Override
+    long bits(int handle) {
+        return records.getLong(handle + BITS);
+    }
+
+    @Override
+    String text(int handle) {
+        long bits = records.getLong(handle + BITS);
+        if (bits == NULL_TEXT) {
+            return null;
+        }
+        return decode(values, (int) (bits >>> 32), (int) bits);
+    }
+
+    @Override
+    void store(String key, byte kind, long bits, String text) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+
+        int hash = hash(key);
+        int record = indexOf(key, hash);
+        if (record < 0 || records.get(record + KIND) == REMOVED) {
+            record = append(key, hash);
+            int position = positionOf(key, hash);
+            if (position >= 0) {
+                index.putInt(position << 2, record + 1);
+            } else {
+                insert(record, hash);
+            }
+        }
+
+        byte previous = records.get(record + KIND);
+        if (previous == REMOVED) {
+            removed--;
+            size++;
+        } else if (previous == STRING) {
+            release(record);
+        }
+
+        if (kind == STRING) {
+            bits = text == null ? NULL_TEXT : writeValue(text);
+        }
+        records.put(record + KIND, kind);
+        records.putLong(record + BITS, bits);
+    }
+
+    /**
+     * Returns the record of a key, including a removed record still indexed.
+     *
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash of the key
+     *
+     * @return the record offset, or -1 if the key is not indexed
+     */
+    private int indexOf(String key, int hash) {
+        int position = positionOf(key, hash);
+        return position < 0 ? -1 : index.getInt(position << 2) - 1;
+    }
+
+    /**
+     * Returns the position of a key in the index.
+     *
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash of the key
+     *
+     * @return the position, or -1 if the key is not indexed
+     */
+    private int positionOf(String key, int hash) {
+        int mask = indexCapacity - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            int entry = index.getInt(i << 2);
+            if (entry == 0) {
+                return -1;
+            }
+            int record = entry - 1;
+            if (records.getInt(record + HASH) == hash
+                    && matches(record, key)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the key of a record equals a key, comparing against
+     * the UTF-8 bytes in place.
+     *
+     * @param record
+     *            the record offset
+     * @param key
+     *            the key
+     *
+     * @return <code>true</code> if equal, or <code>false</code> otherwise
+     */
+    private boolean matches(int record, String key) {
+        int position = record + KEY;
+        int end = position + records.getInt(record + KEY_LENGTH);
+        int length = key.length();
+        for (int i = 0; i < length; i++) {
+            int c = key.charAt(i);
+            if (c < 0x80) {
+                if (position == end || records.get(position++) != c) {
+                    return false;
+                }
+                continue;
+            }
+
+            int bytes;
+            int encoded;
+            if (c < 0x800) {
+                bytes = 2;
+                encoded = (0xc0 | c >> 6) << 8 | (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < length
+                    && Character.isLowSurrogate(key.charAt(i + 1))) {
+                int point = Character.toCodePoint((char) c, key.charAt(++i));
+                bytes = 4;
+                encoded = (0xf0 | point >> 18) << 24
+                        | (0x80 | point >> 12 & 0x3f) << 16
+                        | (0x80 | point >> 6 & 0x3f) << 8
+                        | (0x80 | point & 0x3f);
+            } else if (Character.isSurrogate((char) c)) {
+                bytes = 1;
+                encoded = '?';
+            } else {
+                bytes = 3;
+                encoded = (0xe0 | c >> 12) << 16 | (0x80 | c >> 6 & 0x3f) << 8
+                        | (0x80 | c & 0x3f);
+            }
+
+            if (end - position < bytes) {
+                return false;
+            }
+            for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+                if (records.get(position++) != (byte) (encoded >>> shift)) {
+                    return false;
+                }
+            }
+        }
+        return position == end;
+    }
+
+    /**
+     * Append a removed record for a key, growing or compacting the buffers
+     * if needed. The caller adds the record to the index.
+     *
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash of the key
+     *
+     * @return the record offset
+     */
+    private int append(String key, int hash) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = KEY + bytes.length;
+        if (records.capacity() - recordEnd < length) {
+            if (removed > 0 && removed >= count / 2) {
+                compactRecords();
+            }
+            if (records.capacity() - recordEnd < length) {
+                records = grow(records, recordEnd, (long) recordEnd + length);
+            }
+        }
+        if ((long) (count + 1) * 2 > indexCapacity) {
+            reindex(indexCapacity * 2);
+        }
+
+        int record = recordEnd;
+        records.putInt(record + HASH, hash);
+        records.putInt(record + KEY_LENGTH, bytes.length);
+        records.put(record + KIND, REMOVED);
+        records.putLong(record + BITS, NULL_TEXT);
+        write(records, record + KEY, bytes);
+        recordEnd += length;
+        count++;
+        removed++;
+        modifications++;
+        return record;
+    }
+
+    /**
+     * Mark a record as removed. The record stays indexed until the records
+     * are compacted or the index grows, and putting the key again moves its
+     * index entry to a new record at the end.
+     *
+     * @param record
+     *            the record offset
+     */
+    private void removeRecord(int record) {
+        if (records.get(record + KIND) == STRING) {
+            release(record);
+        }
+        records.put(record + KIND, REMOVED);
+        removed++;
+        size--;
+        modifications++;
+    }
+
+    /**
+     * Release the <code>String</code> value of a record.
+     *
+     * @param record
+     *            the record offset
+     */
+    private void release(int record) {
+        long bits = records.getLong(record + BITS);
+        if (bits != NULL_TEXT) {
+            deadValueBytes += (int) bits;
+            records.putLong(record + BITS, NULL_TEXT);
+        }
+    }
+
+    /**
+     * Write a <code>String</code> value to the value buffer, growing or
+     * compacting it if needed.
+     *
+     * @param text
+     *            the value
+     *
+     * @return the value bits holding the offset and length
+     */
+    private long writeValue(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (values.capacity() - valueEnd < bytes.length) {
+            if (deadValueBytes >= valueEnd / 2) {
+                compactValues();
+            }
+            if (values.capacity() - valueEnd < bytes.length) {
+                values = grow(values, valueEnd,
+                        (long) valueEnd + bytes.length);
+            }
+        }
+
+        int offset = valueEnd;
+        write(values, offset, bytes);
+        valueEnd += bytes.length;
+        return (long) offset << 32 | bytes.length;
+    }
+
+    /**
+     * Drop all removed records, keeping the order of the present keys.
+     */
+    private void compactRecords() {
+        ByteBuffer compacted = allocate(records.capacity());
+        int end = 0;
+        for (int record = 0; record < recordEnd; record = nextRecord(record)) {
+            if (records.get(record + KIND) != REMOVED) {
+                int length = nextRecord(record) - record;
+                copy(records, record, length, compacted, end);
+                end += length;
+            }
+        }
+        records = compacted;
+        recordEnd = end;
+        count = size;
+        removed = 0;
+        modifications++;
+        reindex(indexCapacity);
+    }
+
+    /**
+     * Drop all released values, keeping the values of present records.
+     */
+    private void compactValues() {
+        ByteBuffer compacted = allocate(values.capacity());
+        int end = 0;
+        for (int record = 0; record < recordEnd; record = nextRecord(record)) {
+            long bits = records.getLong(record + BITS);
+            if (records.get(record + KIND) == STRING && bits != NULL_TEXT) {
+                int length = (int) bits;
+                copy(values, (int) (bits >>> 32), length, compacted, end);
+                records.putLong(record + BITS, (long) end << 32 | length);
+                end += length;
+            }
+        }
+        values = compacted;
+        valueEnd = end;
+        deadValueBytes = 0;
+    }
+
+    /**
+     * Rebuild the index from the present records.
+     *
+     * @param capacity
+     *            the new number of index slots
+     */
+    private void reindex(int capacity) {
+        if (capacity > MAXIMUM_CAPACITY / 4) {
+            throw new IllegalStateException("Off-heap store is full");
+        }
+        index = allocate(capacity * 4);
+        indexCapacity = capacity;
+        for (int record = 0; record < recordEnd; record = nextRecord(record)) {
+            if (records.get(record + KIND) != REMOVED) {
+                insert(record, records.getInt(record + HASH));
+            }
+        }
+    }
+
+    /**
+     * Add a record to the index.
+     *
+     * @param record
+     *            the record offset
+     * @param hash
+     *            the hash of the key of the record
+     */
+    private void insert(int record, int hash) {
+        int mask = indexCapacity - 1;
+        int i = hash & mask;
+        while (index.getInt(i << 2) != 0) {
+            i = (i + 1) & mask;
+        }
+        index.putInt(i << 2, record + 1);
+    }
+
+    /**
+     * Returns the offset of the record following a record.
+     *
+     * @param record
+     *            the record offset
+     *
+     * @return the next record offset
+     */
+    private int nextRecord(int record) {
+        return record + KEY + records.getInt(record + KEY_LENGTH);
+    }
+
+    /**
+     * Returns the key of a record.
+     *
+     * @param record
+     *            the record offset
+     *
+     * @return the key
+     */
+    private String keyOf(int record) {
+        return decode(records, record + KEY,
+                records.getInt(record + KEY_LENGTH));
+    }
+
+    /**
+     * Returns a new direct buffer in native byte order.
+     *
+     * @param capacity
+     *            the capacity in bytes
+     *
+     * @return the buffer
+     */
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns a larger copy of a buffer.
+     *
+     * @param buffer
+     *            the buffer
+     * @param used
+     *            the number of used bytes to copy
+     * @param required
+     *            the required capacity in bytes
+     *
+     * @return the larger buffer
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int used,
+            long required) {
+        if (required > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Off-heap store is full");
+        }
+        long capacity = Math.max(required, (long) buffer.capacity() * 2);
+        ByteBuffer grown = allocate((int) Math.min(capacity,
+                MAXIMUM_CAPACITY));
+        copy(buffer, 0, used, grown, 0);
+        return grown;
+    }
+
+    /**
+     * Copy bytes between buffers.
+     *
+     * @param source
+     *            the source buffer
+     * @param offset
+     *            the offset in the source buffer
+     * @param length
+     *            the number of bytes
+     * @param target
+     *            the target buffer
+     * @param position
+     *            the offset in the target buffer
+     */
+    private static void copy(ByteBuffer source, int offset, int length,
+            ByteBuffer target, int position) {
+        ByteBuffer from = source.duplicate();
+        ((Buffer) from).limit(offset + length);
+        ((Buffer) from).position(offset);
+        ByteBuffer to = target.duplicate();
+        ((Buffer) to).position(position);
+        to.put(from);
+    }
+
+    /**
+     * Write bytes into a buffer.
+     *
+     * @param target
+     *            the buffer
+     * @param position
+     *            the offset in the buffer
+     * @param bytes
+     *            the bytes
+     */
+    private static void write(ByteBuffer target, int position, byte[] bytes) {
+        ByteBuffer to = target.duplicate();
+        ((Buffer) to).position(position);
+        to.put(bytes);
+    }
+
+    /**
+     * Returns the UTF-8 text at an offset of a buffer.
+     *
+     * @param source
+     *            the buffer
+     * @param offset
+     *            the offset in the buffer
+     * @param length
+     *            the number of bytes
+     *
+     * @return the text
+     */
+    private static String decode(ByteBuffer source, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer from = source.duplicate();
+        ((Buffer) from).position(offset);
+        from.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the spread hash of a key.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the hash
+     */
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * This class represents an iterator over the present entries in record
+     * order.
+     *
+     * @author Sander Veldhuis
+     */
+    private final class EntryIterator
+            implements Iterator<Map.Entry<String, String>> {
+
+        /** The next record to inspect. */
+        private int next;
+
+        /** The record last returned, or -1. */
+        private int last = -1;
+
+        /** The expected number of structural modifications. */
+        private int expected = modifications;
+
+        @Override
+        public boolean hasNext() {
+            while (next < recordEnd && records.get(next + KIND) == REMOVED) {
+                next = nextRecord(next);
+            }
+            return next < recordEnd;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (modifications != expected) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = nextRecord(next);
+            return new AbstractMap.SimpleImmutableEntry<String, String>(
+                    keyOf(last), format(last));
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0 || records.get(last + KIND) == REMOVED) {
+                throw new IllegalStateException();
+            }
+            if (modifications != expected) {
+                throw new ConcurrentModificationException();
+            }
+            removeRecord(last);
+            expected = modifications;
+        }
+    }
+}
@@ -77,10 +77,78 @@ public class ProgramData extends Data {
      *                if any of the fields is not valid
      */
     protected ProgramData(String organisation, String program) {
-        super((System.getProperty("os.name").toLowerCase().contains("win")
+        super(pathOf(organisation, program));
+    }
+
+    /**
+     * Constructs a new program data, optionally keeping the unknown fields
+     * off-heap. Off-heap unknown fields suit program data used as a large
+     * lookup table, as millions of entries then add no load to the garbage
+     * collector.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     * @param offHeap
+     *            <code>true</code> to keep the unknown fields off-heap, or
+     *            <code>false</code> otherwise
+     *
+     * @exception IllegalArgumentException
+     *                if any of the fields is not valid
+     */
+    protected ProgramData(String organisation, String program,
+            boolean offHeap) {
+        super(pathOf(organisation, program), null,
+                offHeap ? new OffHeapStore() : null);
+    }
+
+    /**
+     * Set whether this program data is only read, as when the program data
+     * section is not writable. A missing file then yields the defaults without
+     * any attempt to create it, and no lock file is used. Once loaded, the
+     * program data is frozen: loading, saving, setting the defaults or
+     * modifying the unknown fields fails. Its fields must not be assigned
+     * either, so the loaded instance can be shared between threads once
+     * safely published.
+     *
+     * @param readOnly
+     *            <code>true</code> for read-only program data, or
+     *            <code>false</code> otherwise
+     *
+     * @exception IllegalStateException
+     *                if the program data is loaded
+     */
+    @Override
+    public void setReadOnly(boolean readOnly) {
+        super.setReadOnly(readOnly);
+    }
+
+    /**
+     * Indicates whether this program data is only read.
+     *
+     * @return <code>true</code> if read-only, or <code>false</code> otherwise
+     */
+    @Override
+    public boolean isReadOnly() {
+        return super.isReadOnly();
+    }
+
+    /**
+     * Returns the program data path of a program in the current system.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     *
+     * @return the path
+     */
+    static String pathOf(String organisation, String program) {
+        return (System.getProperty("os.name").toLowerCase().contains("win")
                 ? PATH_WINDOWS
                 : (System.getProperty("os.name").toLowerCase().contains("mac")
                         ? PATH_MAC : PATH_LINUX)).replace("[org]", organisation)
-                                .replace("[prg]", program));
+                                .replace("[prg]", program);
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * This class represents a bounded pool of canonical <code>String</code>
+ * instances, shared by all data instances so that equal keys and values
+ * parsed by each of them share one instance.
+ * <p>
+ * The pool is a fixed table indexed by hash, where a new string replaces a
+ * colliding one, so its size never grows. Strings are held weakly and are
+ * dropped from the pool once no data instance uses them. Updates are not
+ * synchronized: a lost update only costs a missed deduplication.
+ *
+ * @author Sander Veldhuis
+ */
+final class StringPool {
+
+    /** The pool shared by all data instances. */
+    static final StringPool SHARED = new StringPool(8192);
+
+    /** The maximum length of values to pool. */
+    static final int MAX_VALUE_LENGTH = 64;
+
+    /** The pooled strings by hash. */
+    private final WeakReference<?>[] table;
+
+    /**
+     * Constructs a new string pool.
+     *
+     * @param capacity
+     *            the number of strings, a power of two
+     */
+    StringPool(int capacity) {
+        table = new WeakReference<?>[capacity];
+    }
+
+    /**
+     * Returns the canonical instance of a string. The string itself becomes
+     * the canonical instance if no equal string is pooled.
+     *
+     * @param string
+     *            the string
+     *
+     * @return the canonical instance
+     */
+    String canonical(String string) {
+        int hash = string.hashCode();
+        int i = (hash ^ (hash >>> 16)) & (table.length - 1);
+        WeakReference<?> reference = table[i];
+        Object pooled = reference == null ? null : reference.get();
+        if (string.equals(pooled)) {
+            return (String) pooled;
+        }
+        table[i] = new WeakReference<String>(string);
+        return string;
+    }
+}
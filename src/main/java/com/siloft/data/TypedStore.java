@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.util.AbstractMap;
+
+/**
+ * This class represents a key-value store keeping values as typed primitives.
+ * Each value is parsed once when put and kept as a <code>long</code>,
+ * <code>double</code>, <code>boolean</code>, or <code>String</code>, so typed
+ * access never parses or boxes.
+ * <p>
+ * A value is only kept as a primitive when its text is the canonical form of
+ * that primitive, so the map view returns exactly the text that was put.
+ * Implementations locate values through an <code>int</code> handle.
+ *
+ * @author Sander Veldhuis
+ */
+abstract class TypedStore extends AbstractMap<String, String> {
+
+    /** The kind of a removed value. */
+    static final byte REMOVED = 0;
+
+    /** The kind of a <code>long</code> value. */
+    static final byte LONG = 1;
+
+    /** The kind of a <code>double</code> value. */
+    static final byte DOUBLE = 2;
+
+    /** The kind of a <code>boolean</code> value. */
+    static final byte BOOLEAN = 3;
+
+    /** The kind of a <code>String</code> value. */
+    static final byte STRING = 4;
+
+    /**
+     * Returns the handle of a present key.
+     *
+     * @param key
+     *            the key
+     *
+     * @return the handle, or -1 if the key is absent
+     */
+    abstract int find(String key);
+
+    /**
+     * Returns the kind of the value of a handle.
+     *
+     * @param handle
+     *            the handle
+     *
+     * @return the kind
+     */
+    abstract byte kind(int handle);
+
+    /**
+     * Returns the primitive value of a handle, as raw bits.
+     *
+     * @param handle
+     *            the handle
+     *
+     * @return the raw bits
+     */
+    abstract long bits(int handle);
+
+    /**
+     * Returns the <code>String</code> value of a handle.
+     *
+     * @param handle
+     *            the handle
+     *
+     * @return the value
+     */
+    abstract String text(int handle);
+
+    /**
+     * Set the value of a key, adding the key if absent.
+     *
+     * @param key
+     *            the key
+     * @param kind
+     *            the kind of the value
+     * @param bits
+     *            the primitive value as raw bits
+     * @param text
+     *            the <code>String</code> value
+     */
+    abstract void store(String key, byte kind, long bits, String text);
+
+    /**
+     * Returns the value of a key as <code>long</code>. A fractional number is
+     * rounded toward zero.
+     *
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the value returned if the key is absent, not a number, or
+     *            out of range of <code>long</code>
+     *
+     * @return the value
+     */
+    long getLong(String key, long defaultValue) {
+        int handle = find(key);
+        if (handle < 0) {
+            return defaultValue;
+        }
+
+        switch (kind(handle)) {
+        case LONG:
+            return bits(handle);
+        case DOUBLE:
+            double number = Double.longBitsToDouble(bits(handle));
+            return number >= -0x1p63 && number < 0x1p63 ? (long) number
+                    : defaultValue;
+        case STRING:
+            String text = text(handle);
+            if (text == null) {
+                return defaultValue;
+            }
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        default:
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value of a key as <code>double</code>.
+     *
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the value returned if the key is absent or not a number
+     *
+     * @return the value
+     */
+    double getDouble(String key, double defaultValue) {
+        int handle = find(key);
+        if (handle < 0) {
+            return defaultValue;
+        }
+
+        switch (kind(handle)) {
+        case LONG:
+            return bits(handle);
+        case DOUBLE:
+            return Double.longBitsToDouble(bits(handle));
+        case STRING:
+            String text = text(handle);
+            if (text == null || !DecimalCodec.isNumber(text)) {
+                return defaultValue;
+            }
+            return DecimalCodec.parseDouble(text);
+        default:
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value of a key as <code>boolean</code>.
+     *
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the value returned if the key is absent or not a boolean
+     *
+     * @return the value
+     */
+    boolean getBoolean(String key, boolean defaultValue) {
+        int handle = find(key);
+        if (handle < 0 || kind(handle) != BOOLEAN) {
+            return defaultValue;
+        }
+        return bits(handle) != 0;
+    }
+
+    /**
+     * Set the value of a key to a <code>long</code>.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    void putLong(String key, long value) {
+        store(key, LONG, value, null);
+    }
+
+    /**
+     * Set the value of a key to a <code>double</code>.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    void putDouble(String key, double value) {
+        store(key, DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    /**
+     * Set the value of a key to a <code>boolean</code>.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    void putBoolean(String key, boolean value) {
+        store(key, BOOLEAN, value ? 1 : 0, null);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && find((String) key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int handle = find((String) key);
+        return handle < 0 ? null : format(handle);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+
+        String previous = get(key);
+        if (value != null) {
+            if (isCanonicalLong(value)) {
+                try {
+                    store(key, LONG, Long.parseLong(value), null);
+                    return previous;
+                } catch (NumberFormatException e) {
+                    // Out of range, keep as text
+                }
+            } else if (value.equals("true") || value.equals("false")) {
+                store(key, BOOLEAN, value.length() == 4 ? 1 : 0, null);
+                return previous;
+            } else if (isDoubleLike(value)) {
+                try {
+                    double number = DecimalCodec.parseDouble(value);
+                    if (DecimalCodec.toString(number).equals(value)) {
+                        store(key, DOUBLE, Double.doubleToRawLongBits(number),
+                                null);
+                        return previous;
+                    }
+                } catch (NumberFormatException e) {
+                    // Not a number, keep as text
+                }
+            }
+        }
+        store(key, STRING, 0, value);
+        return previous;
+    }
+
+    /**
+     * Returns the text of the value of a handle.
+     *
+     * @param handle
+     *            the handle
+     *
+     * @return the text
+     */
+    String format(int handle) {
+        switch (kind(handle)) {
+        case LONG:
+            return Long.toString(bits(handle));
+        case DOUBLE:
+            return DecimalCodec.toString(Double.longBitsToDouble(bits(handle)));
+        case BOOLEAN:
+            return bits(handle) != 0 ? "true" : "false";
+        default:
+            return text(handle);
+        }
+    }
+
+    /**
+     * Indicates whether a text is a <code>long</code> as written by
+     * <code>Long.toString</code>, ignoring its range.
+     *
+     * @param value
+     *            the text
+     *
+     * @return <code>true</code> if canonical, or <code>false</code> otherwise
+     */
+    private static boolean isCanonicalLong(String value) {
+        int length = value.length();
+        int start = length > 1 && value.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 19) {
+            return false;
+        }
+        if (value.charAt(start) == '0') {
+            return length == 1;
+        }
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether a text may be a <code>double</code> as written by
+     * <code>DecimalCodec</code>.
+     *
+     * @param value
+     *            the text
+     *
+     * @return <code>true</code> if it may be, or <code>false</code> otherwise
+     */
+    private static boolean isDoubleLike(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        char first = value.charAt(0);
+        return (first >= '0' && first <= '9') || first == '-' || first == 'N'
+                || first == 'I';
+    }
+}
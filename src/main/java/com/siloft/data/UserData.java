@@ -78,10 +78,24 @@ public class UserData extends Data {
      *                if any of the fields is not valid
      */
     protected UserData(String organisation, String program) {
-        super((System.getProperty("os.name").toLowerCase().contains("win")
+        super(pathOf(organisation, program));
+    }
+
+    /**
+     * Returns the user data path of a program in the current system.
+     *
+     * @param organisation
+     *            the organisation name
+     * @param program
+     *            the program name
+     *
+     * @return the path
+     */
+    static String pathOf(String organisation, String program) {
+        return (System.getProperty("os.name").toLowerCase().contains("win")
                 ? PATH_WINDOWS
                 : (System.getProperty("os.name").toLowerCase().contains("mac")
                         ? PATH_MAC : PATH_LINUX)).replace("[org]", organisation)
-                                .replace("[prg]", program));
+                                .replace("[prg]", program);
     }
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class emits Java Flight Recorder events of loading and saving data.
+ *
+ * @author Sander Veldhuis
+ */
+final class DataEvents {
+
+    /**
+     * This class represents the event of loading data.
+     */
+    @Name("com.siloft.data.DataLoad")
+    @Label("Data Load")
+    @Category({ "Siloft", "Data" })
+    @Description("Data loaded from its file")
+    static final class DataLoad extends Event {
+
+        @Label("Data Class")
+        String dataClass;
+
+        @Label("Path")
+        String path;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+
+        @Label("Fields")
+        int fields;
+
+        @Label("Unknown Fields")
+        int unknownFields;
+
+        @Label("Parse Failures")
+        int parseFailures;
+    }
+
+    /**
+     * This class represents the event of saving data.
+     */
+    @Name("com.siloft.data.DataSave")
+    @Label("Data Save")
+    @Category({ "Siloft", "Data" })
+    @Description("Data saved to its file")
+    static final class DataSave extends Event {
+
+        @Label("Data Class")
+        String dataClass;
+
+        @Label("Path")
+        String path;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+
+        @Label("Fields")
+        int fields;
+
+        @Label("Unknown Fields")
+        int unknownFields;
+    }
+
+    /**
+     * This class represents the event of a line which could not be parsed.
+     */
+    @Name("com.siloft.data.DataParseError")
+    @Label("Data Parse Error")
+    @Category({ "Siloft", "Data" })
+    @Description("Line of a data file which could not be parsed")
+    static final class DataParseError extends Event {
+
+        @Label("Data Class")
+        String dataClass;
+
+        @Label("Path")
+        String path;
+
+        @Label("Line")
+        String line;
+    }
+
+    /**
+     * Prevents instantiation.
+     */
+    private DataEvents() {
+    }
+
+    /**
+     * Begin a load event.
+     *
+     * @return the event, or <code>null</code> if not recording
+     */
+    static Object beginLoad() {
+        DataLoad event = new DataLoad();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commit a load event.
+     *
+     * @param event
+     *            the event returned by {@link #beginLoad()}
+     * @param type
+     *            the class of the data
+     * @param file
+     *            the file of the data
+     * @param bytes
+     *            the number of bytes read
+     * @param fields
+     *            the number of fields read
+     * @param unknownFields
+     *            the number of unknown fields read
+     * @param parseFailures
+     *            the number of lines which could not be parsed
+     */
+    static void commitLoad(Object event, Class<?> type, File file, long bytes,
+            int fields, int unknownFields, int parseFailures) {
+        if (event == null) {
+            return;
+        }
+        DataLoad load = (DataLoad) event;
+        load.end();
+        if (load.shouldCommit()) {
+            load.dataClass = type.getName();
+            load.path = file.getPath();
+            load.bytes = bytes;
+            load.fields = fields;
+            load.unknownFields = unknownFields;
+            load.parseFailures = parseFailures;
+            load.commit();
+        }
+    }
+
+    /**
+     * Begin a save event.
+     *
+     * @return the event, or <code>null</code> if not recording
+     */
+    static Object beginSave() {
+        DataSave event = new DataSave();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commit a save event.
+     *
+     * @param event
+     *            the event returned by {@link #beginSave()}
+     * @param type
+     *            the class of the data
+     * @param file
+     *            the file of the data
+     * @param bytes
+     *            the number of bytes written
+     * @param fields
+     *            the number of fields written
+     * @param unknownFields
+     *            the number of unknown fields written
+     */
+    static void commitSave(Object event, Class<?> type, File file, long bytes,
+            int fields, int unknownFields) {
+        if (event == null) {
+            return;
+        }
+        DataSave save = (DataSave) event;
+        save.end();
+        if (save.shouldCommit()) {
+            save.dataClass = type.getName();
+            save.path = file.getPath();
+            save.bytes = bytes;
+            save.fields = fields;
+            save.unknownFields = unknownFields;
+            save.commit();
+        }
+    }
+
+    /**
+     * Emit a parse error event.
+     *
+     * @param type
+     *            the class of the data
+     * @param file
+     *            the file of the data
+     * @param line
+     *            the line which could not be parsed
+     */
+    static void parseError(Class<?> type, File file, String line) {
+        DataParseError event = new DataParseError();
+        if (event.isEnabled()) {
+            event.dataClass = type.getName();
+            event.path = file.getPath();
+            event.line = line;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Verifies whether the <code>CacheData</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class CacheDataTest {
+
+    /**
+     * Cleanup all created files after testing.
+     */
+    @After
+    public void cleanup() {
+        String path = UserData.pathOf("siloft", "unittest");
+        new File(path, "Cache").delete();
+        new File(path, "Cache.bak").delete();
+        new File(path, "Cache.lock").delete();
+    }
+
+    /**
+     * Test evicting the least recently used entries.
+     */
+    @Test
+    public void testEviction() {
+        CacheData data = CacheData.user("siloft", "unittest", "Cache", 3,
+                Long.MAX_VALUE);
+        data.put("a", "1");
+        data.put("b", "2");
+        data.put("c", "3");
+        assert data.get("a").equals("1");
+        data.put("d", "4");
+        assert data.size() == 3;
+        assert data.get("b") == null;
+        assert data.get("a").equals("1");
+        assert data.get("c").equals("3");
+        assert data.get("d").equals("4");
+
+        data = CacheData.user("siloft", "unittest", "Cache", 100, 28);
+        data.put("key1", "value1");
+        data.put("key2", "value2");
+        assert data.bytes() == 28;
+        data.put("key3", "value3");
+        assert data.size() == 2;
+        assert data.bytes() == 28;
+        assert data.get("key1") == null;
+        assert data.remove("key2") == true;
+        assert data.remove("key2") == false;
+        assert data.bytes() == 14;
+        data.put("key3", "a value too large to keep");
+        assert data.size() == 0;
+        assert data.bytes() == 0;
+
+        try {
+            CacheData.user("siloft", "unittest", "Cache", 0, 1);
+            assert false;
+        } catch (IllegalArgumentException exception) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test saving and loading entries in order of use.
+     */
+    @Test
+    public void testSaveLoad() {
+        CacheData data1 = CacheData.user("siloft", "unittest", "Cache", 100,
+                Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            data1.put("key" + i, "value" + i);
+        }
+        data1.get("key0");
+        data1.put("expired", "value", 1);
+        try {
+            Thread.sleep(10);
+            data1.save();
+        } catch (IOException | InterruptedException exception) {
+            assert false;
+        }
+        assert data1.size() == 10;
+
+        CacheData data2 = CacheData.user("siloft", "unittest", "Cache", 5,
+                Long.MAX_VALUE);
+        try {
+            data2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert data2.size() == 5;
+        Iterator<String> keys = data2.keys().iterator();
+        assert keys.next().equals("key6");
+        assert keys.next().equals("key7");
+        assert keys.next().equals("key8");
+        assert keys.next().equals("key9");
+        assert keys.next().equals("key0");
+        assert data2.get("expired") == null;
+        assert data2.get("key9").equals("value9");
+        assert data2.get("key5") == null;
+    }
+
+    /**
+     * Test expiring entries after their time to live.
+     */
+    @Test
+    public void testExpiry() {
+        CacheData data = CacheData.user("siloft", "unittest", "Cache", 100,
+                Long.MAX_VALUE);
+        data.put("short", "value|with|separators", 1);
+        data.put("long", "value|with|separators", 60000);
+        data.put("forever", "");
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException exception) {
+            assert false;
+        }
+        assert data.get("short") == null;
+        assert data.get("long").equals("value|with|separators");
+        assert data.get("forever").equals("");
+        assert data.size() == 2;
+
+        data.getUnknownFields().put("invalid", "value");
+        assert data.get("invalid") == null;
+        assert data.size() == 2;
+    }
+
+    /**
+     * Test keeping the order of use when reloading and merging.
+     */
+    @Test
+    public void testOrderKept() {
+        CacheData data1 = CacheData.user("siloft", "unittest", "Cache", 100,
+                Long.MAX_VALUE);
+        data1.setConflictPolicy(ConflictPolicy.MERGE);
+        data1.addListener((fields, unknownFields) -> {
+        });
+        try {
+            for (String key : new String[] { "a", "b", "c", "d", "e" }) {
+                data1.put(key, key);
+            }
+            data1.save();
+            data1.get("a");
+            data1.load();
+            assert new ArrayList<String>(data1.keys())
+                    .equals(Arrays.asList("b", "c", "d", "e", "a"));
+
+            CacheData data2 = CacheData.user("siloft", "unittest", "Cache",
+                    100, Long.MAX_VALUE);
+            data2.load();
+            data2.put("f", "f");
+            data2.save();
+
+            data1.get("b");
+            data1.save();
+            assert new ArrayList<String>(data1.keys())
+                    .equals(Arrays.asList("c", "d", "e", "a", "b", "f"));
+            assert data1.getUnknownField("c").endsWith("|c");
+            assert data1.keys().iterator().next().equals("c");
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+}
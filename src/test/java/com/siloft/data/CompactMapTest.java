@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Verifies whether the <code>CompactMap</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class CompactMapTest {
+
+    /**
+     * Test random operations against a <code>LinkedHashMap</code>.
+     */
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(42);
+        Map<String, String> expected = new LinkedHashMap<String, String>();
+        CompactMap map = new CompactMap();
+        for (int i = 0; i < 100000; i++) {
+            String key = "key" + random.nextInt(500);
+            String value = "value" + i;
+            if (random.nextInt(3) == 0) {
+                assert String.valueOf(map.remove(key))
+                        .equals(String.valueOf(expected.remove(key)));
+            } else {
+                assert String.valueOf(map.put(key, value))
+                        .equals(String.valueOf(expected.put(key, value)));
+            }
+        }
+        assert map.equals(expected);
+        assert new ArrayList<String>(map.keySet())
+                .equals(new ArrayList<String>(expected.keySet()));
+
+        Iterator<Map.Entry<String, String>> iterator =
+                map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (entry.getKey().hashCode() % 2 == 0) {
+                iterator.remove();
+                expected.remove(entry.getKey());
+            } else {
+                entry.setValue("changed");
+                expected.put(entry.getKey(), "changed");
+            }
+        }
+        assert map.equals(expected);
+        assert new CompactMap(expected).equals(map);
+
+        map.clear();
+        assert map.isEmpty();
+        assert map.get("key1") == null;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Verifies whether the <code>DataEvents</code> class of the multi-release
+ * JAR emits Java Flight Recorder events.
+ *
+ * @author Sander Veldhuis
+ */
+public class DataEventsTest {
+
+    /**
+     * A test layered data class.
+     */
+    public static final class Events extends LayeredData {
+        public Events() {
+            super("siloft", "unittest");
+        }
+
+        public int aInt = 3;
+    }
+
+    /**
+     * Cleanup all created files after testing.
+     */
+    @After
+    public void cleanup() {
+        for (String path : new String[] {
+                ProgramData.pathOf("siloft", "unittest"),
+                UserData.pathOf("siloft", "unittest") }) {
+            new File(path, "Events").delete();
+            new File(path, "Events.bak").delete();
+            new File(path, "Events.lock").delete();
+        }
+    }
+
+    /**
+     * Test that loading and saving through the multi-release JAR commits
+     * events.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEvents() throws Exception {
+        File jar = File.createTempFile("siloft-data", ".jar");
+        File dump = File.createTempFile("siloft-data", ".jfr");
+        try (Recording recording = new Recording()) {
+            writeJar(jar, new File(Data.class.getProtectionDomain()
+                    .getCodeSource().getLocation().toURI()));
+            URL[] urls = { jar.toURI().toURL(), DataEventsTest.class
+                    .getProtectionDomain().getCodeSource().getLocation() };
+            recording.enable("com.siloft.data.DataLoad");
+            recording.enable("com.siloft.data.DataSave");
+            recording.start();
+            try (URLClassLoader loader = new URLClassLoader(urls,
+                    ClassLoader.getPlatformClassLoader())) {
+                Class<?> dynamic = loader.loadClass(
+                        "com.siloft.data.DynamicData");
+                Object data = dynamic.getMethod("user", String.class,
+                        String.class, String.class).invoke(null, "siloft",
+                                "unittest", "Events");
+                dynamic.getMethod("putInt", String.class, int.class)
+                        .invoke(data, "aInt", 7);
+                dynamic.getMethod("save").invoke(data);
+                dynamic.getMethod("load").invoke(data);
+
+                Class<?> layered = loader.loadClass(
+                        Events.class.getName());
+                Object layers = layered.getConstructor().newInstance();
+                layered.getMethod("load").invoke(layers);
+            }
+            recording.stop();
+            recording.dump(dump.toPath());
+
+            Map<String, Integer> counts = new HashMap<String, Integer>();
+            for (RecordedEvent event : RecordingFile
+                    .readAllEvents(dump.toPath())) {
+                String name = event.getEventType().getName();
+                Integer count = counts.get(name);
+                counts.put(name, count == null ? 1 : count + 1);
+            }
+            assert counts.get("com.siloft.data.DataSave") >= 1;
+            assert counts.get("com.siloft.data.DataLoad") == 2;
+        } finally {
+            jar.delete();
+            dump.delete();
+        }
+    }
+
+    /**
+     * Write a multi-release JAR of a class directory.
+     *
+     * @param jar
+     *            the JAR file
+     * @param classes
+     *            the class directory
+     *
+     * @throws IOException
+     *             if writing failed
+     */
+    private static void writeJar(File jar, File classes) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+                "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"),
+                "true");
+        Path root = classes.toPath();
+        try (JarOutputStream out = new JarOutputStream(
+                new FileOutputStream(jar), manifest);
+                Stream<Path> paths = Files.walk(root)) {
+            Iterator<Path> iterator = paths.iterator();
+            while (iterator.hasNext()) {
+                Path path = iterator.next();
+                String name = root.relativize(path).toString()
+                        .replace(File.separatorChar, '/');
+                if (Files.isDirectory(path)
+                        || name.equals("META-INF/MANIFEST.MF")) {
+                    continue;
+                }
+                out.putNextEntry(new JarEntry(name));
+                Files.copy(path, out);
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Verifies whether the <code>DataFeed</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class DataFeedTest {
+
+    /** The directory of the test data. */
+    private static final File DIRECTORY =
+            new File(System.getProperty("user.dir"), "feed-unittest");
+
+    /** The file of the test feed. */
+    private static final File FEED = new File(DIRECTORY, "feed");
+
+    /**
+     * A test data class.
+     */
+    public final class Options extends Data {
+
+        public Options() {
+            super(DIRECTORY.getPath());
+        }
+
+        public int aInt = 3;
+        public String aString = "Test";
+    }
+
+    /**
+     * Cleanup all created files after testing.
+     */
+    @After
+    public void cleanup() {
+        File[] files = DIRECTORY.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        DIRECTORY.delete();
+    }
+
+    /**
+     * Test tailing the changes of saved data.
+     */
+    @Test
+    public void testTailing() {
+        try (DataFeed feed = new DataFeed(FEED);
+                DataFeedReader reader = new DataFeedReader(FEED)) {
+            assert reader.poll() == null;
+
+            Options options1 = new Options();
+            options1.setFeed(feed);
+            assert options1.getFeed() == feed;
+            options1.setUnknownField("anUnknown", "1");
+            options1.save();
+
+            DataChange change = reader.poll();
+            assert change.getSequence() == 1;
+            assert change.getGeneration() == 1;
+            assert change.isComplete() == true;
+            assert change.getFile().equals(
+                    options1.getFile().getAbsoluteFile());
+            assert change.getValues().size() == 3;
+            assert change.getValues().get("aInt").equals("3");
+            assert change.getValues().get("anUnknown").equals("1");
+            assert reader.poll() == null;
+
+            options1.aInt = 10;
+            options1.getUnknownFields().clear();
+            options1.save();
+            options1.aString = "Changed";
+            options1.save();
+
+            change = reader.poll();
+            assert change.getSequence() == 2;
+            assert change.isComplete() == false;
+            assert change.getValues().size() == 2;
+            assert change.getValues().get("aInt").equals("10");
+            assert change.getValues().containsKey("anUnknown") == true;
+            assert change.getValues().get("anUnknown") == null;
+            long offset = change.getOffset();
+
+            change = reader.poll();
+            assert change.getSequence() == 3;
+            assert change.getGeneration() == 3;
+            assert change.getValues().size() == 1;
+            assert change.getValues().get("aString").equals("Changed");
+            assert reader.getOffset() == FEED.length();
+
+            try (DataFeedReader resumed = new DataFeedReader(FEED, offset)) {
+                assert resumed.poll().getSequence() == 3;
+                assert resumed.poll() == null;
+            }
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+
+    /**
+     * Test appending after an incomplete record left by a failed writer.
+     */
+    @Test
+    public void testIncompleteRecord() {
+        Options options = new Options();
+        try {
+            try (DataFeed feed = new DataFeed(FEED)) {
+                options.setFeed(feed);
+                options.save();
+            }
+            long length = FEED.length();
+            try (RandomAccessFile file = new RandomAccessFile(FEED, "rw")) {
+                file.setLength(length + 10);
+                file.seek(length);
+                file.writeInt(1000);
+            }
+
+            try (DataFeedReader reader = new DataFeedReader(FEED)) {
+                assert reader.poll().getSequence() == 1;
+                assert reader.poll() == null;
+
+                try (DataFeed feed = new DataFeed(FEED)) {
+                    options.setFeed(feed);
+                    options.aInt = 20;
+                    options.save();
+                }
+                DataChange change = reader.poll();
+                assert change.getSequence() == 2;
+                assert change.getValues().get("aInt").equals("20");
+            }
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+
+    /**
+     * Test saving after appending to the feed failed.
+     */
+    @Test
+    public void testFailedAppend() {
+        Options options = new Options();
+        options.setConflictPolicy(ConflictPolicy.FAIL);
+        try {
+            DataFeed feed = new DataFeed(FEED);
+            feed.close();
+            options.setFeed(feed);
+            options.aInt = 20;
+            try {
+                options.save();
+                assert false;
+            } catch (IOException exception) {
+                // Expected
+            }
+            assert options.getGeneration() == 1;
+
+            options.setFeed(null);
+            options.aInt = 30;
+            options.save();
+            assert options.getGeneration() == 2;
+
+            Options reloaded = new Options();
+            reloaded.load();
+            assert reloaded.aInt == 30;
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+}
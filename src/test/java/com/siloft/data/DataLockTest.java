@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Verifies whether the <code>DataLock</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class DataLockTest {
+
+    /** The data file to lock. */
+    private final File file =
+            new File(System.getProperty("user.dir"), "Locked");
+
+    /**
+     * Cleanup all created files after testing.
+     */
+    @After
+    public void cleanup() {
+        new File(file.getPath() + DataLock.LOCK_SUFFIX).delete();
+    }
+
+    /**
+     * Test that shared locks of different threads are held together, and an
+     * exclusive lock waits for them.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSharedAndExclusive() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CountDownLatch held = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            Future<?>[] readers = new Future<?>[2];
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = executor.submit(() -> {
+                    try (DataLock lock = DataLock.shared(file)) {
+                        held.countDown();
+                        release.await();
+                    }
+                    return null;
+                });
+            }
+            assert held.await(10, TimeUnit.SECONDS);
+
+            Future<?> writer = executor.submit(() -> {
+                DataLock.exclusive(file).close();
+                return null;
+            });
+            try {
+                writer.get(200, TimeUnit.MILLISECONDS);
+                assert false;
+            } catch (TimeoutException exception) {
+                // Expected, as the readers hold the lock
+            }
+
+            release.countDown();
+            for (Future<?> reader : readers) {
+                reader.get(10, TimeUnit.SECONDS);
+            }
+            writer.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test locking again after all locks were released.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testRelock() throws IOException {
+        DataLock shared = DataLock.shared(file);
+        shared.close();
+        DataLock exclusive = DataLock.exclusive(file);
+        exclusive.close();
+        DataLock again = DataLock.shared(file);
+        again.close();
+    }
+}
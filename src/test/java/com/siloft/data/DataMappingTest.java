@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Verifies whether the <code>DataMapping</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class DataMappingTest {
+
+    /** The directory of the test data. */
+    private static final File DIRECTORY = new File(
+            System.getProperty("user.dir"), "mapping-unittest");
+
+    /**
+     * A test data class.
+     */
+    public final class Counters extends Data {
+
+        public Counters() {
+            super(DIRECTORY.getPath());
+        }
+
+        public long aLong = 1;
+        public String aString = "Test";
+        public double aDouble = 0.5;
+        public boolean aBoolean;
+        public byte aByte = -1;
+    }
+
+    /**
+     * Cleanup all created files after testing.
+     */
+    @After
+    public void cleanup() {
+        delete(DIRECTORY);
+    }
+
+    /**
+     * Delete a file or directory recursively.
+     *
+     * @param file
+     *            the file or directory
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Test saving fields to the mapping and loading them again.
+     */
+    @Test
+    public void testSaveLoad() {
+        Counters counters1 = new Counters();
+        try (DataMapping mapping = new DataMapping(counters1)) {
+            counters1.load();
+            assert mapping.load() == false;
+            assert mapping.getFile().length() == 16 + 4 * 8;
+
+            counters1.aLong = 42;
+            mapping.save("aLong");
+            counters1.aDouble = -2.25;
+            counters1.aBoolean = true;
+            counters1.aByte = 7;
+            counters1.aString = "Changed";
+            assert mapping.save() == 3;
+            assert mapping.save() == 0;
+            mapping.force();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Counters counters2 = new Counters();
+        try (DataMapping mapping = new DataMapping(counters2)) {
+            counters2.load();
+            assert counters2.aLong == 1;
+            assert mapping.load() == true;
+            assert counters2.aLong == 42;
+            assert counters2.aDouble == -2.25;
+            assert counters2.aBoolean == true;
+            assert counters2.aByte == 7;
+            assert counters2.aString.equals("Test");
+
+            try {
+                mapping.save("aString");
+                assert false;
+            } catch (IllegalArgumentException exception) {
+                // Expected
+            }
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+
+    /**
+     * Test synchronizing the mapping from a data file saved since.
+     */
+    @Test
+    public void testSynchronize() {
+        Counters counters1 = new Counters();
+        try (DataMapping mapping = new DataMapping(counters1)) {
+            counters1.load();
+            mapping.load();
+            counters1.aLong = 5;
+            mapping.save("aLong");
+            counters1.aLong = 6;
+            counters1.save();
+            counters1.aDouble = 1.5;
+            assert mapping.save() == 4;
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Counters counters2 = new Counters();
+        counters2.aLong = 9;
+        try (DataMapping mapping = new DataMapping(counters2)) {
+            counters2.load();
+            assert mapping.load() == true;
+            assert counters2.aLong == 6;
+            assert counters2.aDouble == 1.5;
+
+            counters2.aLong = 7;
+            counters2.save();
+            assert mapping.load() == false;
+            assert counters2.aLong == 7;
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(
+                new File(DIRECTORY, "Counters.map"), "rw")) {
+            file.writeLong(0);
+        } catch (IOException exception) {
+            assert false;
+        }
+        Counters counters3 = new Counters();
+        try (DataMapping mapping = new DataMapping(counters3)) {
+            assert mapping.load() == true;
+            assert counters3.aLong == 1;
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+
+    /**
+     * Test restoring a snapshot of data with mapped fields.
+     */
+    @Test
+    public void testSnapshots() {
+        Counters counters1 = new Counters();
+        DataSnapshots snapshots = new DataSnapshots(counters1, 2);
+        try (DataMapping mapping = new DataMapping(counters1)) {
+            counters1.load();
+            mapping.load();
+            counters1.aLong = 5;
+            mapping.save("aLong");
+            assert snapshots.create() == 1;
+            assert new File(snapshots.getSnapshot(1), "Counters.map")
+                    .exists() == false;
+
+            counters1.aLong = 6;
+            mapping.save("aLong");
+            snapshots.restore(1);
+            assert mapping.getFile().exists() == false;
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Counters counters2 = new Counters();
+        try (DataMapping mapping = new DataMapping(counters2)) {
+            counters2.load();
+            mapping.load();
+            assert counters2.aLong == 1;
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+}
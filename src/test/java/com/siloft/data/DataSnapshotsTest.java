@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Verifies whether the <code>DataSnapshots</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class DataSnapshotsTest {
+
+    /** The directory of the test data. */
+    private static final File DIRECTORY =
+            new File(System.getProperty("user.dir"), "snapshot-unittest");
+
+    /**
+     * A test data class.
+     */
+    public final class Options extends Data {
+
+        public Options() {
+            super(DIRECTORY.getPath());
+        }
+
+        public int aInt = 3;
+        public String aString = "Test";
+    }
+
+    /**
+     * A second test data class.
+     */
+    public final class Settings extends Data {
+
+        public Settings() {
+            super(DIRECTORY.getPath());
+        }
+
+        public boolean aBoolean = true;
+    }
+
+    /**
+     * Cleanup all created files after testing.
+     */
+    @After
+    public void cleanup() {
+        delete(DIRECTORY);
+    }
+
+    /**
+     * Delete a file or directory recursively.
+     *
+     * @param file
+     *            the file or directory
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Test taking and restoring snapshots.
+     */
+    @Test
+    public void testSnapshots() {
+        Options options = new Options();
+        Settings settings = new Settings();
+        DataSnapshots snapshots = new DataSnapshots(options, 2);
+        try {
+            options.aInt = 10;
+            options.save();
+            assert snapshots.create() == 1;
+            assert Files.isSameFile(options.getFile().toPath(),
+                    new File(snapshots.getSnapshot(1), "Options").toPath());
+
+            options.aInt = 20;
+            options.save();
+            settings.aBoolean = false;
+            settings.save();
+            assert snapshots.create() == 2;
+            assert snapshots.getSnapshot(2).list().length == 2;
+
+            snapshots.restore(1);
+            assert settings.getFile().isFile() == false;
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Options options2 = new Options();
+        try {
+            options2.load();
+            assert options2.aInt == 10;
+            options2.aInt = 30;
+            options2.save();
+            assert snapshots.create() == 3;
+            assert snapshots.list().equals(Arrays.asList(2L, 3L));
+            assert snapshots.getSnapshot(1) == null;
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aInt == 30;
+
+        try {
+            snapshots.restore(2);
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Options options3 = new Options();
+        Settings settings3 = new Settings();
+        try {
+            options3.load();
+            settings3.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options3.aInt == 20;
+        assert settings3.aBoolean == false;
+
+        try {
+            snapshots.restore(1);
+            assert false;
+        } catch (IOException exception) {
+            assert exception.getMessage().startsWith("Snapshot does not exist");
+        }
+
+        try {
+            new DataSnapshots(DIRECTORY, 0);
+            assert false;
+        } catch (IllegalArgumentException exception) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test excluding files written in place from snapshots.
+     */
+    @Test
+    public void testInPlaceFiles() {
+        Options options = new Options();
+        File feed = new File(DIRECTORY, "feed");
+        DataSnapshots snapshots = new DataSnapshots(options, 2);
+        try {
+            options.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(feed, "rw")) {
+            file.write('a');
+            assert snapshots.create() == 1;
+            assert new File(snapshots.getSnapshot(1), "feed").exists() == false;
+
+            file.seek(0);
+            file.write('b');
+            snapshots.restore(1);
+            assert Files.readAllBytes(feed.toPath())[0] == 'b';
+            assert snapshots.getSnapshot(1).list().length == 1;
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+
+    /**
+     * Test deleting the temporary directory of an incomplete snapshot.
+     */
+    @Test
+    public void testIncompleteSnapshot() {
+        Options options = new Options();
+        DataSnapshots snapshots = new DataSnapshots(options, 2);
+        File temp = new File(new File(DIRECTORY, ".snapshots"), "1.tmp");
+        try {
+            options.save();
+            temp.mkdirs();
+            new File(temp, "partial").createNewFile();
+
+            assert snapshots.create() == 1;
+            assert temp.exists() == false;
+            assert snapshots.list().equals(Arrays.asList(1L));
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+
+    /**
+     * Test taking snapshots concurrently.
+     */
+    @Test
+    public void testConcurrentSnapshots() {
+        Options options = new Options();
+        try {
+            options.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        List<Long> numbers =
+                Collections.synchronizedList(new ArrayList<Long>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    numbers.add(new DataSnapshots(DIRECTORY, 100).create());
+                } catch (IOException exception) {
+                    numbers.add(-1L);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException exception) {
+                assert false;
+            }
+        }
+
+        Collections.sort(numbers);
+        assert numbers.equals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L));
+        DataSnapshots snapshots = new DataSnapshots(DIRECTORY, 100);
+        for (long number : numbers) {
+            assert snapshots.getSnapshot(number).list().length == 1;
+        }
+    }
+}
@@ -29,8 +29,15 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 /**
  * Verifies whether the <code>Data</code> class is working properly.
@@ -138,6 +145,8 @@ public class DataTest {
     @After
     public void cleanup() throws InterruptedException {
         new File(System.getProperty("user.dir"), "Options").delete();
+        new File(System.getProperty("user.dir"), "Options.bak").delete();
+        new File(System.getProperty("user.dir"), "Options.lock").delete();
     }
 
     /**
@@ -261,6 +270,34 @@ public class DataTest {
         assert options.getUnknownFields().size() == 0;
     }
 
+    /**
+     * Test setting defaults differing from the defaults of the class.
+     */
+    @Test
+    public void testInstanceDefaults() {
+        Options options1 = new Options();
+        Options options2 = new Options();
+        options2.aInt = 9;
+        options2.aString = "Instance";
+        try {
+            options1.load();
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aInt == 3;
+        assert options2.aString.equals("Test");
+
+        options1.aInt = 0;
+        options1.setDefaults();
+        options2.setDefaults();
+        assert options1.aInt == 3;
+        assert options1.aString.equals("Test");
+        assert options2.aInt == 9;
+        assert options2.aString.equals("Instance");
+        assert options2.aLong == 4;
+    }
+
     /**
      * Test loading and saving.
      */
@@ -417,4 +454,668 @@ public class DataTest {
         assert options.aString.equals("a=b");
         assert options.getUnknownFields().size() == 0;
     }
+
+    /**
+     * Test reporting the problems found while loading.
+     */
+    @Test
+    public void testDiagnostics() {
+        String data = "ignored\naByte=128\naShort=x\naInt=3\n"
+                + "aLong=99999999999999999999\naFloat=1e39\naDouble=1.5.0\n"
+                + "aBoolean=yes\naInt=4\nunknown=1\nunknown=2\n# Comment";
+        File file = new File(System.getProperty("user.dir"), "Options");
+
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.write(data);
+            writer.close();
+        } catch (IOException exception) {
+            // Ignore
+        }
+
+        Options options = new Options();
+        assert options.getDiagnostics().isEmpty();
+        try {
+            options.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options.aByte == 1;
+        assert options.aInt == 4;
+        assert options.aBoolean == true;
+        assert options.getUnknownField("unknown").equals("2");
+
+        DataDiagnostics diagnostics = options.getDiagnostics();
+        assert diagnostics.getProblems().size() == 9;
+        List<DataDiagnostics.Problem> problems =
+                diagnostics.getProblems(DataDiagnostics.Kind.MALFORMED_LINE);
+        assert problems.size() == 1;
+        assert problems.get(0).getName() == null;
+        assert problems.get(0).getLine().equals("ignored");
+
+        problems = diagnostics
+                .getProblems(DataDiagnostics.Kind.UNPARSABLE_VALUE);
+        assert problems.size() == 3;
+        assert problems.get(0).getName().equals("aShort");
+        assert problems.get(1).getLine().equals("aDouble=1.5.0");
+        assert problems.get(2).getName().equals("aBoolean");
+
+        problems = diagnostics.getProblems(DataDiagnostics.Kind.OUT_OF_RANGE);
+        assert problems.size() == 3;
+        assert problems.get(0).getLine().equals("aByte=128");
+        assert problems.get(1).getName().equals("aLong");
+        assert problems.get(2).getName().equals("aFloat");
+
+        problems = diagnostics.getProblems(DataDiagnostics.Kind.DUPLICATE_KEY);
+        assert problems.size() == 2;
+        assert problems.get(0).getLine().equals("aInt=4");
+        assert problems.get(1).getLine().equals("unknown=2");
+
+        try {
+            options.save();
+            options.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options.getDiagnostics().isEmpty();
+    }
+
+    /**
+     * Test that problems are reported in file order, as listed in the file.
+     */
+    @Test
+    public void testDiagnosticsOrder() {
+        String data = "aInt=1\naDouble=1.50\naDouble=2.50\nbroken\naInt=+2\n";
+        File file = new File(System.getProperty("user.dir"), "Options");
+
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.write(data);
+            writer.close();
+        } catch (IOException exception) {
+            // Ignore
+        }
+
+        Options options = new Options();
+        try {
+            options.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options.aInt == 2;
+
+        List<DataDiagnostics.Problem> problems =
+                options.getDiagnostics().getProblems();
+        assert problems.size() == 3;
+        assert problems.get(0).getKind() == DataDiagnostics.Kind.DUPLICATE_KEY;
+        assert problems.get(0).getLine().equals("aDouble=2.50");
+        assert problems.get(0).getLineNumber() == 3;
+        assert problems.get(1).getKind() == DataDiagnostics.Kind.MALFORMED_LINE;
+        assert problems.get(1).getLineNumber() == 4;
+        assert problems.get(2).getLine().equals("aInt=+2");
+        assert problems.get(2).getLineNumber() == 5;
+    }
+
+    /**
+     * Test loading a corrupt file with and without a last-good backup.
+     */
+    @Test
+    public void testLoadingCorrupt() {
+        File file = new File(System.getProperty("user.dir"), "Options");
+
+        Options options1 = new Options();
+        try {
+            options1.load();
+            options1.aInt = 10;
+            options1.save();
+            options1.aInt = 20;
+            options1.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.getBackupFile().isFile() == true;
+
+        try {
+            RandomAccessFile corrupt = new RandomAccessFile(file, "rw");
+            corrupt.seek(0);
+            corrupt.write('b');
+            corrupt.close();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Options options2 = new Options();
+        try {
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aInt == 10;
+
+        options2.getBackupFile().delete();
+        Options options3 = new Options();
+        try {
+            options3.load();
+            assert false;
+        } catch (IOException exception) {
+            assert exception.getMessage().startsWith("Data file is corrupt");
+        }
+        assert options3.aInt == 3;
+    }
+
+    /**
+     * Test loading a file cut off before its checksum trailer.
+     */
+    @Test
+    public void testLoadingTruncated() {
+        File file = new File(System.getProperty("user.dir"), "Options");
+
+        Options options1 = new Options();
+        try {
+            options1.load();
+            options1.aInt = 10;
+            options1.save();
+            options1.aInt = 20;
+            options1.save();
+
+            String content = new String(Files.readAllBytes(file.toPath()),
+                    "UTF-8");
+            RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+            truncated.setLength(content.indexOf("#crc32:"));
+            truncated.close();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Options options2 = new Options();
+        try {
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aInt == 10;
+
+        for (String torn : new String[] { "", "#genera" }) {
+            try {
+                BufferedWriter writer = new BufferedWriter(
+                        new FileWriter(file));
+                writer.write(torn);
+                writer.close();
+                options2.load();
+            } catch (IOException exception) {
+                assert false;
+            }
+            assert options2.aInt == 10;
+        }
+
+        try {
+            options2.aInt = 11;
+            options2.save();
+            Options backup = new Options();
+            Files.copy(options2.getBackupFile().toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            backup.load();
+            assert backup.aInt == 10;
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.write("aInt=30\n");
+            writer.close();
+        } catch (IOException exception) {
+            assert false;
+        }
+        Options options3 = new Options();
+        try {
+            options3.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options3.aInt == 30;
+    }
+
+    /**
+     * Test reporting metrics of loading and saving.
+     */
+    @Test
+    public void testMetrics() {
+        String data = "ignored\naByte=\naString=a=b\naByte=s2\nunknown=1";
+        File file = new File(System.getProperty("user.dir"), "Options");
+
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.write(data);
+            writer.close();
+        } catch (IOException exception) {
+            // Ignore
+        }
+
+        long[] loaded = new long[4];
+        long[] saved = new long[3];
+        int[] failed = new int[1];
+        Options options = new Options();
+        options.setMetrics(new DataMetrics() {
+            @Override
+            public void loaded(Class<?> type, long nanos, long bytes,
+                    int fields, int unknownFields, int parseFailures) {
+                assert type == Options.class;
+                loaded[0] = bytes;
+                loaded[1] = fields;
+                loaded[2] = unknownFields;
+                loaded[3] = parseFailures;
+            }
+
+            @Override
+            public void saved(Class<?> type, long nanos, long bytes,
+                    int fields, int unknownFields) {
+                saved[0] = bytes;
+                saved[1] = fields;
+                saved[2] = unknownFields;
+            }
+
+            @Override
+            public void loadFailed(Class<?> type, long nanos) {
+                failed[0]++;
+            }
+        });
+        try {
+            options.load();
+            options.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert loaded[0] == data.length();
+        assert loaded[1] == 1;
+        assert loaded[2] == 1;
+        assert loaded[3] == 3;
+        assert saved[0] == file.length();
+        assert saved[1] == 8;
+        assert saved[2] == 1;
+        assert failed[0] == 0;
+
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.write("#generation:9\naInt=5\n");
+            writer.close();
+        } catch (IOException exception) {
+            assert false;
+        }
+        options.getBackupFile().delete();
+        try {
+            options.load();
+            assert false;
+        } catch (IOException exception) {
+            assert failed[0] == 1;
+        }
+    }
+
+    /**
+     * Test loading a large file in parallel chunks.
+     */
+    @Test
+    public void testParallelLoading() {
+        File file = new File(System.getProperty("user.dir"), "Options");
+
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.write("aInt=5\r\nduplicate=first\n");
+            for (int i = 0; i < 200000; i++) {
+                writer.write("unknown" + i + "=" + i + "\n");
+            }
+            writer.write("aInt=6\nbroken\nduplicate=last\naString=a=b");
+            writer.close();
+        } catch (IOException exception) {
+            // Ignore
+        }
+
+        Options options1 = new Options();
+        options1.setParallelLoad(true);
+        assert options1.isParallelLoad() == true;
+        Options options2 = new Options();
+        try {
+            options1.load();
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.aInt == 6;
+        assert options1.aString.equals("a=b");
+        assert options1.getUnknownFields().size() == 200001;
+        assert options1.getUnknownField("duplicate").equals("last");
+        assert options1.getUnknownField("unknown199999").equals("199999");
+        assert options1.getUnknownFields()
+                .equals(options2.getUnknownFields()) == true;
+        assert options2.aInt == 6;
+
+        List<DataDiagnostics.Problem> problems =
+                options1.getDiagnostics().getProblems();
+        assert problems.size() == 3;
+        assert problems.get(0).getLine().equals("aInt=6");
+        assert problems.get(0).getLineNumber() == 200003;
+        assert problems.get(1).getLine().equals("broken");
+        assert problems.get(2).getLine().equals("duplicate=last");
+        assert problems.get(2).getLineNumber() == 200005;
+        assert problems.toString().equals(
+                options2.getDiagnostics().getProblems().toString());
+    }
+
+    /**
+     * Test the generation stamp and conflict policies on saving.
+     */
+    @Test
+    public void testConflicts() {
+        Options options1 = new Options();
+        Options options2 = new Options();
+        assert options1.getGeneration() == -1;
+        assert options1.getConflictPolicy() == ConflictPolicy.OVERWRITE;
+        try {
+            options1.load();
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.getGeneration() == 1;
+        assert options2.getGeneration() == 1;
+
+        options2.aInt = 10;
+        try {
+            options2.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.getGeneration() == 2;
+
+        options1.setConflictPolicy(ConflictPolicy.FAIL);
+        options1.aInt = 20;
+        try {
+            options1.save();
+            assert false;
+        } catch (DataConflictException exception) {
+            assert exception.getExpectedGeneration() == 1;
+            assert exception.getActualGeneration() == 2;
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        try {
+            options1.load();
+            options1.aInt = 20;
+            options1.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.getGeneration() == 3;
+
+        options1.setConflictPolicy(ConflictPolicy.OVERWRITE);
+        try {
+            options2.save();
+            options1.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.getGeneration() == 5;
+    }
+
+    /**
+     * Test merging changes saved concurrently on saving.
+     */
+    @Test
+    public void testMerging() {
+        Options options1 = new Options();
+        Options options2 = new Options();
+        options1.setConflictPolicy(ConflictPolicy.MERGE);
+        try {
+            options1.setUnknownField("removed", "1");
+            options1.setUnknownField("kept", "1");
+            options1.save();
+            options1.load();
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        options2.aInt = 10;
+        options2.aString = "Theirs";
+        options2.getUnknownFields().remove("removed");
+        options2.setUnknownField("added", "2");
+        try {
+            options2.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        options1.aLong = 20;
+        options1.aString = "Mine";
+        options1.setUnknownField("kept", "3");
+        try {
+            options1.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.aInt == 10;
+        assert options1.aLong == 20;
+        assert options1.aString.equals("Mine");
+        assert options1.getUnknownFields().size() == 2;
+        assert options1.getUnknownField("kept").equals("3");
+        assert options1.getUnknownField("added").equals("2");
+        assert options1.getGeneration() == 3;
+
+        Options options3 = new Options();
+        try {
+            options3.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options3.aInt == 10;
+        assert options3.aLong == 20;
+        assert options3.aString.equals("Mine");
+        assert options3.getUnknownFields()
+                .equals(options1.getUnknownFields()) == true;
+    }
+
+    /**
+     * Test notifying listeners of changed values on reloading.
+     */
+    @Test
+    public void testListeners() {
+        List<Set<String>> changes = new ArrayList<Set<String>>();
+        DataListener listener = (fields, unknownFields) -> {
+            changes.add(fields);
+            changes.add(unknownFields);
+        };
+
+        Options options1 = new Options();
+        Options options2 = new Options();
+        options1.addListener(listener);
+        try {
+            options1.load();
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert changes.size() == 0;
+
+        options2.aInt = 10;
+        options2.aString = "Tryout";
+        options2.setUnknownField("unknown", "1");
+        try {
+            options2.save();
+            options1.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert changes.size() == 2;
+        assert changes.get(0).size() == 2;
+        assert changes.get(0).contains("aInt");
+        assert changes.get(0).contains("aString");
+        assert changes.get(1).size() == 1;
+        assert changes.get(1).contains("unknown");
+
+        try {
+            options1.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert changes.size() == 2;
+
+        options2.getUnknownFields().remove("unknown");
+        options2.setUnknownField("other", "2");
+        try {
+            options2.save();
+            options1.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert changes.size() == 4;
+        assert changes.get(2).isEmpty();
+        assert changes.get(3).size() == 2;
+        assert changes.get(3).contains("unknown");
+        assert changes.get(3).contains("other");
+        assert options1.getUnknownField("unknown") == null;
+        assert options1.getUnknownFields().size() == 1;
+
+        options1.removeListener(listener);
+        options2.aInt = 11;
+        try {
+            options2.save();
+            options1.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.aInt == 11;
+        assert changes.size() == 4;
+    }
+
+    /**
+     * Test sharing keys and values between data instances.
+     */
+    @Test
+    public void testStringPooling() {
+        File file = new File(System.getProperty("user.dir"), "Options");
+
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            writer.write("aString=pooled\nsharedKey=sharedValue");
+            writer.close();
+        } catch (IOException exception) {
+            // Ignore
+        }
+
+        Options options1 = new Options();
+        Options options2 = new Options();
+        Options options3 = new Options();
+        options1.setValuePooling(true);
+        options2.setValuePooling(true);
+        assert options1.isValuePooling() == true;
+        assert options3.isValuePooling() == false;
+        try {
+            options1.load();
+            options2.load();
+            options3.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.getUnknownFields().keySet().iterator()
+                .next() == options2.getUnknownFields().keySet().iterator()
+                        .next();
+        assert options1.getUnknownFields().keySet().iterator()
+                .next() != options3.getUnknownFields().keySet().iterator()
+                        .next();
+        assert options1.getUnknownField("sharedKey") == options2
+                .getUnknownField("sharedKey");
+        assert options1.aString == options2.aString;
+        assert options1.aString.equals(options3.aString);
+        assert options1.aString != options3.aString;
+    }
+
+    /**
+     * Test saving and loading text which is not ASCII.
+     */
+    @Test
+    public void testUnicode() {
+        Options options1 = new Options();
+        options1.aString = "\u00e6\u00f8\u00e5 \u20ac \ud83d\ude00";
+        options1.aLong = Long.MIN_VALUE;
+        options1.setUnknownField("caf\u00e9", "cr\u00e8me");
+        try {
+            options1.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Options options2 = new Options();
+        try {
+            options2.load();
+            assert new String(Files.readAllBytes(options2.getFile().toPath()),
+                    "UTF-8").contains("aString=\u00e6\u00f8\u00e5 \u20ac");
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aString.equals(options1.aString);
+        assert options2.aLong == Long.MIN_VALUE;
+        assert options2.getUnknownField("caf\u00e9").equals("cr\u00e8me");
+    }
+
+    /**
+     * Test loading fields in schema order and out of order.
+     */
+    @Test
+    public void testPositionalLoading() {
+        Options options1 = new Options();
+        options1.aInt = 42;
+        options1.aDouble = -0.5;
+        options1.aString = "Positional";
+        options1.setUnknownField("anUnknown", "1");
+        String header = null;
+        try {
+            options1.save();
+            List<String> lines = Files
+                    .readAllLines(options1.getFile().toPath());
+            header = lines.get(1);
+            assert header.startsWith("#schema:");
+            assert lines.get(2).equals("aByte=1");
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Options options2 = new Options();
+        try {
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aInt == 42;
+        assert options2.aDouble == -0.5;
+        assert options2.aString.equals("Positional");
+        assert options2.getUnknownField("anUnknown").equals("1");
+
+        try {
+            String content = header + "\naByte=5\naInt=7\naShort=6\n"
+                    + "aLongs=8\naString=Moved\n";
+            CRC32 checksum = new CRC32();
+            checksum.update(content.getBytes("UTF-8"));
+            BufferedWriter writer = new BufferedWriter(
+                    new FileWriter(options1.getFile()));
+            writer.write(content);
+            writer.write(String.format("#crc32:%08x\n", checksum.getValue()));
+            writer.close();
+        } catch (IOException exception) {
+            // Ignore
+        }
+
+        Options options3 = new Options();
+        try {
+            options3.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options3.aByte == 5;
+        assert options3.aShort == 6;
+        assert options3.aInt == 7;
+        assert options3.aLong == 4;
+        assert options3.aString.equals("Moved");
+        assert options3.getUnknownField("aLongs").equals("8");
+    }
 }
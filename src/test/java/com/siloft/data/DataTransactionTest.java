@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies whether the <code>DataTransaction</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class DataTransactionTest {
+
+    /** The directory of the test data. */
+    private static final File DIRECTORY = new File(
+            System.getProperty("user.dir"), "transaction-unittest");
+
+    /** The file of the test journal. */
+    private static final File JOURNAL = new File(DIRECTORY, "journal");
+
+    /**
+     * A test data class.
+     */
+    public final class Options extends Data {
+
+        public Options() {
+            super(DIRECTORY.getPath());
+        }
+
+        public int aInt = 3;
+        public String aString = "Test";
+    }
+
+    /**
+     * A second test data class.
+     */
+    public final class Version extends Data {
+
+        public Version() {
+            super(DIRECTORY.getPath());
+        }
+
+        public long aLong = 1;
+    }
+
+    /**
+     * A test data class holding unknown fields only, stored under a name.
+     */
+    public final class Counter extends Data {
+
+        public Counter(String name) {
+            super(DIRECTORY.getPath(), name, null);
+        }
+    }
+
+    /**
+     * Cleanup all created files after testing.
+     */
+    @After
+    public void cleanup() {
+        File[] files = DIRECTORY.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        DIRECTORY.delete();
+    }
+
+    /**
+     * Test committing several data and failing on a conflict.
+     */
+    @Test
+    public void testCommit() {
+        Options options1 = new Options();
+        Version version1 = new Version();
+        try (DataJournal journal = new DataJournal(JOURNAL)) {
+            options1.aInt = 10;
+            version1.aLong = 2;
+            journal.begin().add(options1).add(version1).add(options1)
+                    .commit();
+
+            Options options2 = new Options();
+            Version version2 = new Version();
+            options2.load();
+            version2.load();
+            assert options2.aInt == 10;
+            assert version2.aLong == 2;
+
+            options2.setConflictPolicy(ConflictPolicy.FAIL);
+            options2.aInt = 20;
+            version2.aLong = 3;
+            options1.aInt = 30;
+            options1.save();
+            try {
+                journal.begin().add(version2).add(options2).commit();
+                assert false;
+            } catch (DataConflictException exception) {
+                // Expected
+            }
+
+            Version version3 = new Version();
+            version3.load();
+            assert version3.aLong == 2;
+
+            DataTransaction transaction = journal.begin();
+            try {
+                transaction.add(new Options());
+                transaction.add(new Options());
+                assert false;
+            } catch (IllegalArgumentException exception) {
+                // Expected
+            }
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        try {
+            new DataJournal(JOURNAL).close();
+        } catch (IOException exception) {
+            assert false;
+        }
+    }
+
+    /**
+     * Test that reopening the journal after a completed commit does not
+     * rewrite the files.
+     */
+    @Test
+    public void testReopenAfterCommit() {
+        Options options1 = new Options();
+        Version version1 = new Version();
+        try {
+            try (DataJournal journal = new DataJournal(JOURNAL)) {
+                options1.aInt = 100;
+                journal.begin().add(options1).add(version1).commit();
+                assert JOURNAL.length() == 0;
+            }
+
+            options1.getFile().delete();
+            options1.getBackupFile().delete();
+            new DataJournal(JOURNAL).close();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.getFile().exists() == false;
+        assert version1.getFile().exists() == true;
+    }
+
+    /**
+     * Test replaying a transaction which was journaled but not completed.
+     */
+    @Test
+    public void testReplay() {
+        Options options1 = new Options();
+        Version version1 = new Version();
+        try {
+            options1.save();
+            options1.aInt = 40;
+            version1.aLong = 5;
+            ByteArrayOutputStream options = new ByteArrayOutputStream();
+            options1.write(Channels.newChannel(options), 2);
+            ByteArrayOutputStream version = new ByteArrayOutputStream();
+            version1.write(Channels.newChannel(version), 1);
+
+            DataJournal journal = new DataJournal(JOURNAL);
+            try {
+                new DataJournal(JOURNAL);
+                assert false;
+            } catch (IOException exception) {
+                assert exception.getMessage().startsWith("Journal is in use");
+            }
+            journal.append(
+                    new File[] { options1.getFile(), version1.getFile() },
+                    new long[] { 2, 1 }, new byte[][] { options.toByteArray(),
+                            version.toByteArray() });
+            journal.close();
+            assert JOURNAL.length() > 0;
+
+            new DataJournal(JOURNAL).close();
+            assert JOURNAL.length() == 0;
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Options options2 = new Options();
+        Version version2 = new Version();
+        try {
+            options2.load();
+            version2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aInt == 40;
+        assert version2.aLong == 5;
+    }
+
+    /**
+     * Test replaying a transaction into the storage of the journal.
+     */
+    @Test
+    public void testReplayInStorage() {
+        MemoryDataStorage storage = new MemoryDataStorage();
+        Options options1 = new Options();
+        options1.setStorage(storage);
+        try {
+            options1.save();
+            options1.aInt = 50;
+            ByteArrayOutputStream options = new ByteArrayOutputStream();
+            options1.write(Channels.newChannel(options), 2);
+
+            DataJournal journal = new DataJournal(JOURNAL, storage);
+            assert journal.getStorage() == storage;
+            try {
+                journal.begin().add(new Options());
+                assert false;
+            } catch (IllegalArgumentException exception) {
+                assert exception.getMessage().contains("another storage");
+            }
+            journal.append(new File[] { options1.getFile() },
+                    new long[] { 2 }, new byte[][] { options.toByteArray() });
+            journal.close();
+
+            new DataJournal(JOURNAL, storage).close();
+            assert JOURNAL.length() == 0;
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.getFile().exists() == false;
+
+        Options options2 = new Options();
+        options2.setStorage(storage);
+        try {
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aInt == 50;
+    }
+
+    /**
+     * Test committing from several threads concurrently, sharing forces of
+     * the journal and emptying it on the way.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testConcurrentCommits() throws InterruptedException {
+        List<Thread> workers = new ArrayList<Thread>();
+        List<Throwable> failures = new ArrayList<Throwable>();
+        try (DataJournal journal = new DataJournal(JOURNAL)) {
+            for (int t = 0; t < 8; t++) {
+                Counter first = new Counter("First" + t);
+                Counter second = new Counter("Second" + t);
+                workers.add(new Thread(() -> {
+                    try {
+                        for (int i = 1; i <= 25; i++) {
+                            first.setUnknownField("count", "" + i);
+                            second.setUnknownField("count", "" + i);
+                            journal.begin().add(first).add(second).commit();
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }));
+            }
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert failures.isEmpty();
+        assert JOURNAL.length() == 0;
+
+        for (int t = 0; t < 8; t++) {
+            Counter data = new Counter("Second" + t);
+            try {
+                data.load();
+            } catch (IOException exception) {
+                assert false;
+            }
+            assert data.getUnknownField("count").equals("25");
+        }
+    }
+}
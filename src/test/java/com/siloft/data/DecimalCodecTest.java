@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Verifies whether the <code>DecimalCodec</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class DecimalCodecTest {
+
+    /**
+     * Test the layout of formatted values.
+     */
+    @Test
+    public void testFormat() {
+        assert DecimalCodec.toString(0.0).equals("0.0");
+        assert DecimalCodec.toString(-0.0).equals("-0.0");
+        assert DecimalCodec.toString(1.0).equals("1.0");
+        assert DecimalCodec.toString(123.456).equals("123.456");
+        assert DecimalCodec.toString(0.001).equals("0.001");
+        assert DecimalCodec.toString(1.0E-4).equals("1.0E-4");
+        assert DecimalCodec.toString(9999999.0).equals("9999999.0");
+        assert DecimalCodec.toString(1.0E7).equals("1.0E7");
+        assert DecimalCodec.toString(1.0E23).equals("1.0E23");
+        assert DecimalCodec.toString(Double.MAX_VALUE)
+                .equals("1.7976931348623157E308");
+        assert DecimalCodec.toString(Double.MIN_VALUE).equals("4.9E-324");
+        assert DecimalCodec.toString(Double.NaN).equals("NaN");
+        assert DecimalCodec.toString(Double.NEGATIVE_INFINITY)
+                .equals("-Infinity");
+        assert DecimalCodec.toString(2.3456d).equals("2.3456");
+        assert DecimalCodec.toString(1.2345f).equals("1.2345");
+        assert DecimalCodec.toString(1.0E10f).equals("1.0E10");
+        assert DecimalCodec.toString(Float.MIN_VALUE).equals("1.4E-45");
+        assert DecimalCodec.toString(Float.MAX_VALUE).equals("3.4028235E38");
+    }
+
+    /**
+     * Test formatting and parsing random values back to the same bits.
+     */
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            String text = DecimalCodec.toString(value);
+            assert text.length() <= Double.toString(value).length();
+            assert Double.doubleToRawLongBits(
+                    Double.parseDouble(text)) == Double
+                            .doubleToRawLongBits(value);
+            assert Double.doubleToRawLongBits(
+                    DecimalCodec.parseDouble(text)) == Double
+                            .doubleToRawLongBits(value);
+
+            float single = Float.intBitsToFloat(random.nextInt());
+            if (Float.isNaN(single)) {
+                continue;
+            }
+            text = DecimalCodec.toString(single);
+            assert text.length() <= Float.toString(single).length();
+            assert Float.floatToRawIntBits(Float.parseFloat(text)) == Float
+                    .floatToRawIntBits(single);
+            assert Float.floatToRawIntBits(
+                    DecimalCodec.parseFloat(text)) == Float
+                            .floatToRawIntBits(single);
+        }
+    }
+
+    /**
+     * Test parsing text as the standard parsers do.
+     */
+    @Test
+    public void testParse() {
+        String[] texts = { "1", "-1.5", "0.1", "1e5", "1E-5", "-0.0", "1e22",
+                "1e23", "9007199254740993", "123456789012345678901",
+                "2.2250738585072014E-308", " 1.5", "1.5f", "0x1p3", "NaN",
+                "+2", "Infinity" };
+        for (String text : texts) {
+            assert DecimalCodec.isNumber(text);
+            assert Double.doubleToRawLongBits(
+                    DecimalCodec.parseDouble(text)) == Double
+                            .doubleToRawLongBits(Double.parseDouble(text));
+            assert Float.floatToRawIntBits(
+                    DecimalCodec.parseFloat(text)) == Float
+                            .floatToRawIntBits(Float.parseFloat(text));
+        }
+
+        for (String text : new String[] { "", "-", ".", "1e", "abc", "1.5x",
+                "0x1", "NaNd", "- 1", "1e+", "\u0661", "Infinityf" }) {
+            assert DecimalCodec.isNumber(text) == false;
+            try {
+                DecimalCodec.parseDouble(text);
+                assert false;
+            } catch (NumberFormatException exception) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Verifies whether the <code>DynamicData</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class DynamicDataTest {
+
+    /**
+     * Cleanup all created files after testing.
+     */
+    @After
+    public void cleanup() {
+        String path = UserData.pathOf("siloft", "unittest");
+        new File(path, "Dynamic").delete();
+        new File(path, "Dynamic.bak").delete();
+        new File(path, "Dynamic.lock").delete();
+    }
+
+    /**
+     * Test saving and loading typed values.
+     */
+    @Test
+    public void testTypedValues() {
+        DynamicData data1 = DynamicData.user("siloft", "unittest", "Dynamic");
+        assert data1.getFile().getName().equals("Dynamic");
+        data1.putInt("anInt", 42);
+        data1.putLong("aLong", Long.MIN_VALUE);
+        data1.putDouble("aDouble", 2.5);
+        data1.putBoolean("aBoolean", true);
+        data1.putString("aString", "Test");
+        data1.putString("aNumberText", "007");
+        try {
+            data1.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        DynamicData data2 = DynamicData.user("siloft", "unittest", "Dynamic");
+        try {
+            data2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert data2.getInt("anInt") == 42;
+        assert data2.getLong("aLong") == Long.MIN_VALUE;
+        assert data2.getDouble("aDouble") == 2.5;
+        assert data2.getBoolean("aBoolean") == true;
+        assert data2.getString("aString").equals("Test");
+        assert data2.getString("aNumberText").equals("007");
+        assert data2.getInt("aNumberText") == 7;
+        assert data2.getDouble("anInt") == 42.0;
+        assert data2.getString("aDouble").equals("2.5");
+        assert data2.getInt("aString", -1) == -1;
+        assert data2.getInt("missing") == 0;
+        assert data2.getInt("aLong", -1) == -1;
+        assert data2.getInt("aDouble") == 2;
+        assert data2.contains("missing") == false;
+        assert data2.getUnknownFields().equals(data1.getUnknownFields());
+
+        Iterator<String> keys = data2.keys().iterator();
+        assert keys.next().equals("anInt");
+        assert keys.next().equals("aLong");
+    }
+
+    /**
+     * Test removing and adding many keys.
+     */
+    @Test
+    public void testRemove() {
+        DynamicData data = DynamicData.user("siloft", "unittest", "Dynamic");
+        for (int i = 0; i < 1000; i++) {
+            data.putInt("key" + i, i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            data.remove("key" + i);
+        }
+        for (int i = 1000; i < 2000; i++) {
+            data.putInt("key" + i, i);
+        }
+        assert data.keys().size() == 1500;
+        assert data.contains("key0") == false;
+        assert data.getInt("key1") == 1;
+        assert data.getInt("key1999") == 1999;
+        assert data.keys().iterator().next().equals("key1");
+    }
+
+    /**
+     * Test saving and loading values kept off-heap.
+     */
+    @Test
+    public void testOffHeap() {
+        DynamicData data1 = DynamicData.user("siloft", "unittest", "Dynamic",
+                true);
+        for (int i = 0; i < 10000; i++) {
+            data1.putLong("key" + i, i * 3L);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+            data1.remove("key" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            data1.putString("text", "value" + i);
+        }
+        data1.putString("sl\u00f8jd\ud83d\ude00", "\u00e6\u00f8\u00e5");
+        data1.putDouble("aDouble", -0.125);
+        data1.putBoolean("aBoolean", false);
+        assert data1.keys().size() == 5004;
+        assert data1.getLong("key9999") == 29997;
+        assert data1.contains("key9998") == false;
+        assert data1.getString("text").equals("value99");
+        assert data1.getString("sl\u00f8jd\ud83d\ude00")
+                .equals("\u00e6\u00f8\u00e5");
+        try {
+            data1.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        DynamicData data2 = DynamicData.user("siloft", "unittest", "Dynamic",
+                true);
+        try {
+            data2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert data2.getUnknownFields().equals(data1.getUnknownFields());
+        assert data2.getLong("key1") == 3;
+        assert data2.getString("sl\u00f8jd\ud83d\ude00")
+                .equals("\u00e6\u00f8\u00e5");
+        assert data2.getDouble("aDouble") == -0.125;
+        assert data2.getBoolean("aBoolean", true) == false;
+        assert data2.keys().iterator().next().equals("key1");
+    }
+
+    /**
+     * Test that keys put again after removal move to the end.
+     */
+    @Test
+    public void testInsertionOrder() {
+        checkInsertionOrder(false);
+    }
+
+    /**
+     * Test that keys put again after removal move to the end off-heap.
+     */
+    @Test
+    public void testOffHeapInsertionOrder() {
+        checkInsertionOrder(true);
+    }
+
+    /**
+     * Verify the order of keys against a <code>LinkedHashSet</code>.
+     *
+     * @param offHeap
+     *            <code>true</code> to keep the values off-heap
+     */
+    private void checkInsertionOrder(boolean offHeap) {
+        DynamicData data = DynamicData.user("siloft", "unittest", "Dynamic",
+                offHeap);
+        data.putInt("a", 1);
+        data.putInt("b", 2);
+        data.remove("a");
+        data.putInt("a", 3);
+        assert new ArrayList<String>(data.keys()).toString().equals("[b, a]");
+        assert data.getInt("a") == 3;
+
+        Set<String> expected = new LinkedHashSet<String>(data.keys());
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            String key = "key" + random.nextInt(200);
+            if (random.nextInt(3) == 0) {
+                data.remove(key);
+                expected.remove(key);
+            } else {
+                data.putInt(key, i);
+                expected.add(key);
+            }
+        }
+        assert new ArrayList<String>(data.keys())
+                .equals(new ArrayList<String>(expected));
+    }
+}
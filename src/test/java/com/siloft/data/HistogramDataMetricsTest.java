@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.Test;
+
+/**
+ * Verifies whether the <code>HistogramDataMetrics</code> class is working
+ * properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class HistogramDataMetricsTest {
+
+    /**
+     * Test recording statistics per data class.
+     */
+    @Test
+    public void testStatistics() {
+        HistogramDataMetrics metrics = new HistogramDataMetrics();
+        assert metrics.getStatistics(String.class) == null;
+
+        metrics.loaded(String.class, 1000, 100, 5, 2, 1);
+        metrics.reloaded(String.class, 3000, 100, 5, 3, 0);
+        metrics.saved(String.class, 5000, 120, 5, 3);
+        metrics.saved(Integer.class, 0, 10, 1, 0);
+        metrics.loadFailed(String.class, 2000);
+
+        HistogramDataMetrics.Statistics stats =
+                metrics.getStatistics(String.class);
+        assert stats.getLoadLatency().getCount() == 1;
+        assert stats.getReloadLatency().getCount() == 1;
+        assert stats.getSaveLatency().getCount() == 1;
+        assert stats.getSaveLatency().getTotalNanos() == 5000;
+        assert stats.getBytesRead() == 200;
+        assert stats.getBytesWritten() == 120;
+        assert stats.getParseFailures() == 1;
+        assert stats.getUnknownFields() == 3;
+        assert stats.getFields() == 5;
+        assert stats.getFailedLoadLatency().getCount() == 1;
+        assert metrics.getStatistics().size() == 2;
+    }
+
+    /**
+     * Test the histogram buckets and percentiles.
+     */
+    @Test
+    public void testHistogram() {
+        HistogramDataMetrics.Histogram histogram =
+                new HistogramDataMetrics.Histogram();
+        assert histogram.getPercentile(50) == 0;
+
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(1000);
+        histogram.record(1000);
+        assert histogram.getBucketCount(0) == 1;
+        assert histogram.getBucketCount(1) == 1;
+        assert histogram.getBucketCount(10) == 2;
+        assert histogram.getPercentile(25) == 0;
+        assert histogram.getPercentile(50) == 2;
+        assert histogram.getPercentile(100) == 1024;
+
+        histogram.record(Long.MAX_VALUE);
+        assert histogram.getBucketCount(HistogramDataMetrics.Histogram.BUCKETS
+                - 1) == 1;
+        assert histogram.getPercentile(100) == Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Verifies whether the <code>LayeredData</code> class is working properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class LayeredDataTest {
+
+    /**
+     * A test layered data class with all supported parameter types.
+     */
+    public final class Options extends LayeredData {
+        public Options() {
+            super("siloft", "unittest");
+        }
+
+        public byte aByte = 1;
+        public short aShort = 2;
+        public int aInt = 3;
+        public long aLong = 4;
+        public float aFloat = 1.2345f;
+        public double aDouble = 2.3456d;
+        public boolean aBoolean = true;
+        public String aString = "Test";
+    }
+
+    /**
+     * Cleanup all created files after testing.
+     *
+     * @throws InterruptedException
+     */
+    @After
+    public void cleanup() throws InterruptedException {
+        System.clearProperty("siloft.unittest.Options.aShort");
+        for (String path : new String[] {
+                ProgramData.pathOf("siloft", "unittest"),
+                UserData.pathOf("siloft", "unittest") }) {
+            new File(path, "Options").delete();
+            new File(path, "Options.bak").delete();
+            new File(path, "Options.lock").delete();
+        }
+    }
+
+    /**
+     * Write a layer file.
+     *
+     * @param path
+     *            the path of the layer
+     * @param data
+     *            the content of the layer
+     */
+    private static void write(String path, String data) {
+        try {
+            new File(path).mkdirs();
+            BufferedWriter writer = new BufferedWriter(
+                    new FileWriter(new File(path, "Options")));
+            writer.write(data);
+            writer.close();
+        } catch (IOException exception) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Test resolving and saving layers.
+     */
+    @Test
+    public void testLayers() {
+        String programPath = ProgramData.pathOf("siloft", "unittest");
+        String userPath = UserData.pathOf("siloft", "unittest");
+        write(programPath, "aInt=10\naLong=7\nprogramUnknown=1");
+        write(userPath, "aLong=8\nuserUnknown=2");
+
+        Options options1 = new Options();
+        assert options1.getProgramFile().getAbsolutePath()
+                .equals(new File(programPath, "Options").getAbsolutePath());
+        try {
+            options1.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.isLoaded() == true;
+        assert options1.aByte == 1;
+        assert options1.aInt == 10;
+        assert options1.aLong == 8;
+        assert options1.getUnknownFields().size() == 1;
+        assert options1.getUnknownField("userUnknown").equals("2");
+
+        System.setProperty("siloft.unittest.Options.aShort", "5");
+        options1.setEnvironmentLayer(true);
+        options1.aByte = 9;
+        try {
+            options1.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.aByte == 1;
+        assert options1.aShort == 5;
+        assert options1.aLong == 8;
+
+        options1.aString = "Tryout";
+        try {
+            options1.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        String saved = null;
+        try {
+            saved = new String(
+                    Files.readAllBytes(options1.getFile().toPath()), "UTF-8");
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert saved.contains("aLong=8");
+        assert saved.contains("aString=Tryout");
+        assert saved.contains("userUnknown=2");
+        assert !saved.contains("aInt=");
+        assert !saved.contains("aShort=");
+
+        write(programPath, "aInt=11");
+        Options options2 = new Options();
+        try {
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aShort == 2;
+        assert options2.aInt == 11;
+        assert options2.aLong == 8;
+        assert options2.aString.equals("Tryout");
+    }
+
+    /**
+     * Test that saving before loading is rejected.
+     */
+    @Test
+    public void testSaveBeforeLoad() {
+        Options options = new Options();
+        options.aString = "Tryout";
+        try {
+            options.save();
+            assert false;
+        } catch (IllegalStateException exception) {
+            // Expected
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options.getFile().exists() == false;
+
+        try {
+            options.load();
+            options.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options.getFile().exists() == true;
+    }
+}
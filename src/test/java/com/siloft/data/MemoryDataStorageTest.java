@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018 Siloft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.siloft.data;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Verifies whether the <code>MemoryDataStorage</code> class is working
+ * properly.
+ *
+ * @author Sander Veldhuis
+ */
+public class MemoryDataStorageTest {
+
+    /** The path of the test data, which is never created. */
+    private static final String PATH = new File(
+            System.getProperty("user.dir"), "memory-unittest").getPath();
+
+    /**
+     * A test data class with some supported parameter types.
+     */
+    public final class Options extends Data {
+
+        public Options() {
+            super(PATH);
+        }
+
+        public int aInt = 3;
+        public double aDouble = 2.3456d;
+        public String aString = "Test";
+    }
+
+    /**
+     * Test loading and saving without accessing the file system.
+     */
+    @Test
+    public void testLoadingSaving() {
+        MemoryDataStorage storage = new MemoryDataStorage();
+        Options options1 = new Options();
+        options1.setStorage(storage);
+        assert options1.getStorage() == storage;
+        try {
+            options1.load();
+            assert storage.exists(options1.getFile()) == true;
+            assert storage.exists(options1.getBackupFile()) == false;
+            options1.aInt = 10;
+            options1.aString = "Memory";
+            options1.setUnknownField("anUnknown", "1");
+            options1.save();
+            assert storage.exists(options1.getBackupFile()) == true;
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert new File(PATH).exists() == false;
+
+        Options options2 = new Options();
+        options2.setStorage(storage);
+        try {
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aInt == 10;
+        assert options2.aDouble == 2.3456d;
+        assert options2.aString.equals("Memory");
+        assert options2.getUnknownField("anUnknown").equals("1");
+
+        Options options3 = new Options();
+        try {
+            options3.setStorage(new MemoryDataStorage());
+            options3.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options3.aInt == 3;
+
+        options1.setStorage(null);
+        assert options1.getStorage() == DataStorage.FILE_SYSTEM;
+    }
+
+    /**
+     * Test loading a corrupt file from the last-good backup.
+     */
+    @Test
+    public void testLoadingCorrupt() {
+        MemoryDataStorage storage = new MemoryDataStorage();
+        Options options1 = new Options();
+        options1.setStorage(storage);
+        try {
+            options1.load();
+            options1.aInt = 10;
+            options1.save();
+            options1.aInt = 20;
+            options1.save();
+
+            byte[] content = storage.read(options1.getFile());
+            content[0] = 'b';
+            try (WritableByteChannel channel =
+                    storage.write(options1.getFile())) {
+                channel.write(ByteBuffer.wrap(content));
+            }
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Options options2 = new Options();
+        options2.setStorage(storage);
+        try {
+            options2.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options2.aInt == 10;
+
+        assert storage.delete(options1.getBackupFile()) == true;
+        Options options3 = new Options();
+        options3.setStorage(storage);
+        try {
+            options3.load();
+            assert false;
+        } catch (IOException exception) {
+            assert exception.getMessage().startsWith("Data file is corrupt");
+        }
+    }
+}
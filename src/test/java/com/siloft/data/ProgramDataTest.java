@@ -63,10 +63,24 @@ public class ProgramDataTest {
         new File(
                 "C:\\Documents and Settings\\All Users\\Application Data\\siloft\\unittest\\Options")
                         .delete();
+        new File(
+                "C:\\Documents and Settings\\All Users\\Application Data\\siloft\\unittest\\Options.bak")
+                        .delete();
+        new File(
+                "C:\\Documents and Settings\\All Users\\Application Data\\siloft\\unittest\\Options.lock")
+                        .delete();
         new File("C:\\ProgramData\\siloft\\unittest\\Options").delete();
+        new File("C:\\ProgramData\\siloft\\unittest\\Options.bak").delete();
+        new File("C:\\ProgramData\\siloft\\unittest\\Options.lock").delete();
         new File("/etc/siloft/unittest/Options").delete();
+        new File("/etc/siloft/unittest/Options.bak").delete();
+        new File("/etc/siloft/unittest/Options.lock").delete();
         new File("/Library/Application Support/siloft/unittest/Options")
                 .delete();
+        new File("/Library/Application Support/siloft/unittest/Options.bak")
+                .delete();
+        new File("/Library/Application Support/siloft/unittest/Options.lock")
+                .delete();
     }
 
     /**
@@ -161,4 +175,78 @@ public class ProgramDataTest {
         assert options2.aBoolean == false;
         assert options2.aString.equals("Tryout");
     }
+
+    /**
+     * Test loading read-only program data.
+     */
+    @Test
+    public void testReadOnly() {
+        MemoryDataStorage storage = new MemoryDataStorage();
+        Options options1 = new Options();
+        options1.setStorage(storage);
+        options1.setReadOnly(true);
+        assert options1.isReadOnly() == true;
+        assert options1.isFrozen() == false;
+        try {
+            options1.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options1.isLoaded() == true;
+        assert options1.isFrozen() == true;
+        assert options1.aInt == 3;
+        assert storage.stat(options1.getFile()) == null;
+
+        try {
+            options1.save();
+            assert false;
+        } catch (IllegalStateException | IOException exception) {
+            assert exception instanceof IllegalStateException;
+        }
+        try {
+            options1.load();
+            assert false;
+        } catch (IllegalStateException | IOException exception) {
+            assert exception instanceof IllegalStateException;
+        }
+        try {
+            options1.setUnknownField("anUnknown", "1");
+            assert false;
+        } catch (IllegalStateException exception) {
+            // Expected
+        }
+        try {
+            options1.setReadOnly(false);
+            assert false;
+        } catch (IllegalStateException exception) {
+            // Expected
+        }
+
+        Options options2 = new Options();
+        options2.setStorage(storage);
+        options2.aInt = 10;
+        options2.setUnknownField("anUnknown", "1");
+        try {
+            options2.save();
+        } catch (IOException exception) {
+            assert false;
+        }
+
+        Options options3 = new Options();
+        options3.setStorage(storage);
+        options3.setReadOnly(true);
+        try {
+            options3.load();
+        } catch (IOException exception) {
+            assert false;
+        }
+        assert options3.aInt == 10;
+        assert options3.getUnknownField("anUnknown").equals("1");
+        try {
+            options3.getUnknownFields().put("anUnknown", "2");
+            assert false;
+        } catch (UnsupportedOperationException exception) {
+            // Expected
+        }
+    }
 }
@@ -62,11 +62,25 @@ public class UserDataTest {
     public void cleanup() throws InterruptedException {
         new File(System.getenv("LOCALAPPDATA") + "\\siloft\\unittest\\Options")
                 .delete();
+        new File(System.getenv("LOCALAPPDATA")
+                + "\\siloft\\unittest\\Options.bak").delete();
+        new File(System.getenv("LOCALAPPDATA")
+                + "\\siloft\\unittest\\Options.lock").delete();
         new File(System.getProperty("user.home") + "/.siloft/unittest/Options")
                 .delete();
+        new File(System.getProperty("user.home")
+                + "/.siloft/unittest/Options.bak").delete();
+        new File(System.getProperty("user.home")
+                + "/.siloft/unittest/Options.lock").delete();
         new File(System.getProperty("user.home")
                 + "/Library/Application Support/siloft/unittest/Options")
                         .delete();
+        new File(System.getProperty("user.home")
+                + "/Library/Application Support/siloft/unittest/Options.bak")
+                        .delete();
+        new File(System.getProperty("user.home")
+                + "/Library/Application Support/siloft/unittest/Options.lock")
+                        .delete();
     }
 
     /**